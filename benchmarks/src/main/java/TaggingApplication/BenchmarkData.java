@@ -0,0 +1,170 @@
+package TaggingApplication;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+import com.azure.storage.blob.models.BlobItemProperties;
+
+/** Synthetic documents shared by the benchmarks, generated from a seed so every run measures the same data
+ * @author Charlene Pang
+ */
+final class BenchmarkData
+{
+    static final String[] DOC_TYPES = {"Invoice", "Purchase Order", "Bank Statement", "Delivery Note", "Payslip",
+        "Tax Form", "Contract", "Receipt"};
+    static final String[] EXTENSIONS = {"pdf", "png", "jpg", "tiff"};
+    static final String[] PROJECTS = {"Acme", "Globex", "Initech", "Umbrella"};
+    static final List<String> OUTPUT_TYPES = Collections.singletonList("json");
+
+    private static final PrintStream STDOUT = System.out;
+
+    private BenchmarkData()
+    {
+    }
+
+    /** Builds tags as entered in TaggingApplication, with DocType and Project Name left to be derived
+     * @return Map of tags applied to all documents
+     */
+    static Map<String,String> defaultTags()
+    {
+        Map<String,String> tags = new HashMap<>();
+        tags.put("DocType", "TBA");
+        tags.put("Extract Version", "v1");
+        tags.put("OCRengine", "Abbyy");
+        tags.put("Redacted", "False");
+        tags.put("Project Name", "TBA");
+        tags.put("Set", "Train");
+        return tags;
+    }
+
+    /** Builds file names of input documents, one in ten of them redacted
+     * @param count number of names
+     * @param seed long selecting names
+     * @return array of names, ie: scan-000042-redacted.pdf
+     */
+    static String[] fileNames(int count, long seed)
+    {
+        Random random = new Random(seed);
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++)
+        {
+            names[i] = String.format("scan-%06d%s.%s", i, random.nextInt(10) == 0 ? "-redacted" : "",
+                EXTENSIONS[random.nextInt(EXTENSIONS.length)]);
+        }
+        return names;
+    }
+
+    /** Builds a container listing as transferToTest and listDocTypes read it: input blobs stored as
+     * extension/file name, each followed by its json output file, with tags of a finished upload
+     * @param inputs number of input blobs
+     * @param seed long selecting names and tags
+     * @return List of blobs in listing order
+     */
+    static List<BlobRecord> listing(int inputs, long seed)
+    {
+        Random random = new Random(seed);
+        List<BlobRecord> records = new ArrayList<>(inputs * 2);
+        String[] names = fileNames(inputs, seed);
+        for (String name : names)
+        {
+            Map<String,String> tags = defaultTags();
+            tags.put("DocType", DOC_TYPES[random.nextInt(DOC_TYPES.length)]);
+            tags.put("Project Name", PROJECTS[random.nextInt(PROJECTS.length)]);
+            tags.put("Redacted", name.contains("redacted") ? "True" : "False");
+            //a third of the blobs in test already, some never assigned
+            int set = random.nextInt(10);
+            if (set < 3)
+            {
+                tags.put("Set", SetSplit.TEST);
+            }
+            else if (set == 9)
+            {
+                tags.remove("Set");
+            }
+            String extension = name.substring(name.lastIndexOf('.') + 1);
+            records.add(record(extension + "/" + name, random, tags));
+            records.add(record("json/" + name + ".json", random, new HashMap<>(tags)));
+        }
+        records.sort(Comparator.comparing(BlobRecord::getName));
+        return records;
+    }
+
+    private static BlobRecord record(String name, Random random, Map<String,String> tags)
+    {
+        return new BlobRecord(name, new BlobItemProperties()
+            .setETag(String.format("0x%016X", random.nextLong()))
+            .setLastModified(OffsetDateTime.now())
+            .setContentLength(1024L + random.nextInt(1 << 20)), tags);
+    }
+
+    /** Writes a folder as uploadFolder expects it: one subfolder per document type, holding input documents
+     * and their json output files
+     * @param root Path of folder to be written
+     * @param inputs number of input documents
+     * @param size number of bytes per file
+     * @throws IOException if a file cannot be written
+     */
+    static void writeFolder(Path root, int inputs, int size) throws IOException
+    {
+        byte[] content = new byte[size];
+        new Random(inputs).nextBytes(content);
+        String[] names = fileNames(inputs, inputs);
+        for (int i = 0; i < names.length; i++)
+        {
+            Path folder = Files.createDirectories(root.resolve(DOC_TYPES[i % DOC_TYPES.length]));
+            Files.write(folder.resolve(names[i]), content);
+            Files.write(folder.resolve(names[i] + ".json"), content);
+        }
+    }
+
+    /** Deletes a folder written by writeFolder
+     * @param root Path of folder
+     * @throws IOException if a file cannot be deleted
+     */
+    static void deleteFolder(Path root) throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(root))
+        {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+            {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /** Discards what StorageService prints per blob, which would otherwise be timed along with the work
+     */
+    static void quiet()
+    {
+        System.setOut(new PrintStream(new OutputStream()
+        {
+            @Override
+            public void write(int b)
+            {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len)
+            {
+            }
+        }));
+    }
+
+    /** Restores standard output after quiet
+     */
+    static void restore()
+    {
+        System.setOut(STDOUT);
+    }
+}
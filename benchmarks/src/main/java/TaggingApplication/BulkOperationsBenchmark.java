@@ -0,0 +1,87 @@
+package TaggingApplication;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures uploadFolder and changeTags end to end against an InMemoryBlobBackend that answers every request
+ * after a simulated service latency, at several numbers of requests in flight. Scores are per blob, so
+ * throughput shows what a higher worker count gains and sample time what one blob costs.
+ * @author Charlene Pang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BulkOperationsBenchmark
+{
+    private static final int INPUTS = 200;
+    //input documents and their json output files
+    private static final int BLOBS = INPUTS * 2;
+    private static final String CONTAINER = "en-benchmark";
+
+    //number of requests kept in flight
+    @Param({"1", "8", "64"})
+    public int workers;
+
+    //simulated service latency per request, in milliseconds
+    @Param({"5"})
+    public int latency;
+
+    private Path folder;
+    private StorageService service;
+    private int round;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        folder = Files.createTempDirectory("benchmark");
+        BenchmarkData.writeFolder(folder, INPUTS, 4096);
+        service = new StorageService(new InMemoryBlobBackend(42)
+            .setLatency(Duration.ofMillis(latency), Duration.ofMillis(latency / 2)));
+        service.setWorkerCount(workers);
+        BenchmarkData.quiet();
+        //changeTags needs the blobs in place before its first invocation
+        service.uploadFolder(folder.toString(), CONTAINER, BenchmarkData.defaultTags(), BenchmarkData.OUTPUT_TYPES);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        BenchmarkData.restore();
+        service.getMetrics().printSummary();
+        BenchmarkData.deleteFolder(folder);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOBS)
+    public TransferReport uploadFolder()
+    {
+        return service.uploadFolder(folder.toString(), CONTAINER, BenchmarkData.defaultTags(), BenchmarkData.OUTPUT_TYPES);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOBS)
+    public void changeTags()
+    {
+        //a new value every time, so every blob is written
+        service.changeTags(CONTAINER, "Extract Version", "v" + (++round));
+    }
+}
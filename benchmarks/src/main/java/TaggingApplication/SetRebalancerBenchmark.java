@@ -0,0 +1,57 @@
+package TaggingApplication;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures the selection made by transferToTest once a container has been listed: grouping blobs by document
+ * type, pairing output files with their inputs and picking the blobs that move between sets
+ * @author Charlene Pang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SetRebalancerBenchmark
+{
+    //number of input blobs in container, each with one output file
+    @Param({"1000", "100000"})
+    public int inputs;
+
+    private final SetSplit split = new SetSplit(0.3, 0);
+    private List<BlobRecord> listing;
+
+    @Setup
+    public void setUp()
+    {
+        listing = BenchmarkData.listing(inputs, 7);
+        BenchmarkData.quiet();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        BenchmarkData.restore();
+    }
+
+    @Benchmark
+    public List<SetRebalancer.Reassignment> plan()
+    {
+        SetRebalancer rebalancer = new SetRebalancer(split, BenchmarkData.OUTPUT_TYPES);
+        listing.forEach(rebalancer::add);
+        return rebalancer.plan();
+    }
+}
@@ -0,0 +1,54 @@
+package TaggingApplication;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures the aggregation behind listDocTypes and listSetFields: counting a container listing by tag values
+ * in one pass, then reading document types per container from the counts
+ * @author Charlene Pang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TagFacetsBenchmark
+{
+    //number of input blobs in container, each with one output file
+    @Param({"1000", "100000"})
+    public int inputs;
+
+    private List<BlobRecord> listing;
+
+    @Setup
+    public void setUp()
+    {
+        listing = BenchmarkData.listing(inputs, 11);
+    }
+
+    @Benchmark
+    public Map<String,Map<String,Long>> docTypes()
+    {
+        return TagFacets.of("en-invoice", listing.stream())
+            .counts(TagFacets.Dimension.CONTAINER, TagFacets.Dimension.DOC_TYPE);
+    }
+
+    @Benchmark
+    public Map<String,Long> sets()
+    {
+        return TagFacets.of("en-invoice", listing.stream()).counts(TagFacets.Dimension.SET);
+    }
+}
@@ -0,0 +1,82 @@
+package TaggingApplication;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures deriving tags and destination container of one document from its name with the default tag rules,
+ * as uploadFolder, migrate and migrateFromInbox do for every document, and the Set assignment made on ingest
+ * @author Charlene Pang
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TagParsingBenchmark
+{
+    private static final int PATHS = 4096;
+
+    private final Map<String,String> tags = BenchmarkData.defaultTags();
+    private final TagRules rules = TagRules.defaults();
+    private final SetSplit split = new SetSplit(0.3, 0);
+    private String[] localPaths;
+    private String[] inboxNames;
+    private String[] fileNames;
+    private int next;
+
+    @Setup
+    public void setUp()
+    {
+        fileNames = BenchmarkData.fileNames(PATHS, 1);
+        localPaths = new String[PATHS];
+        inboxNames = new String[PATHS];
+        for (int i = 0; i < PATHS; i++)
+        {
+            String docType = BenchmarkData.DOC_TYPES[i % BenchmarkData.DOC_TYPES.length];
+            String project = BenchmarkData.PROJECTS[i % BenchmarkData.PROJECTS.length];
+            localPaths[i] = String.format("%s/%s/%s", project, docType, fileNames[i]);
+            inboxNames[i] = String.format("%s/Batch %d/%s/%s", project, i % 16, docType, fileNames[i]);
+        }
+    }
+
+    private int nextIndex()
+    {
+        next = (next + 1) & (PATHS - 1);
+        return next;
+    }
+
+    @Benchmark
+    public Map<String,String> uploadTags()
+    {
+        return rules.derive(localPaths[nextIndex()], tags);
+    }
+
+    @Benchmark
+    public Map<String,String> inboxTags()
+    {
+        return rules.derive(inboxNames[nextIndex()], tags);
+    }
+
+    @Benchmark
+    public String container()
+    {
+        return rules.container("en", rules.derive(inboxNames[nextIndex()], tags));
+    }
+
+    @Benchmark
+    public String assignSet()
+    {
+        return split.assign(fileNames[nextIndex()]);
+    }
+}
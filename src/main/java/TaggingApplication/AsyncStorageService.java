@@ -0,0 +1,314 @@
+package TaggingApplication;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import com.azure.storage.blob.models.BlobErrorCode;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.models.TaggedBlobItem;
+import reactor.core.publisher.Flux;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+
+/** Non-blocking blob operations used by the bulk functions of StorageService, sent to a BlobBackend.
+ * Requests are sent on the HTTP client's event loop, so a few threads keep many requests in flight;
+ * execute limits how many run at once and only requests more work as requests complete.
+ * @author Charlene Pang
+ */
+public class AsyncStorageService
+{
+    private static final Duration DEFAULT_RETRY_DELAY = Duration.ofSeconds(5);
+
+    private final BlobBackend backend;
+    //containers known to exist, and creations in progress shared by everyone waiting for them
+    private final Set<String> knownContainers = ConcurrentHashMap.newKeySet();
+    private final Map<String,Mono<Void>> creating = new ConcurrentHashMap<>();
+    private volatile int concurrency;
+    private volatile int prefetch;
+    private volatile int retryRounds = 3;
+    private volatile Duration retryDelay = DEFAULT_RETRY_DELAY;
+
+    /** Constructor
+     * @param backend BlobBackend operations are sent to
+     * @param concurrency number of requests kept in flight by execute
+     * @param prefetch number of items requested from the source ahead of the requests in flight
+     */
+    public AsyncStorageService(BlobBackend backend, int concurrency, int prefetch)
+    {
+        this.backend = backend;
+        this.concurrency = concurrency;
+        this.prefetch = prefetch;
+    }
+
+    public void setConcurrency(int concurrency)
+    {
+        this.concurrency = concurrency;
+    }
+
+    public void setPrefetch(int prefetch)
+    {
+        this.prefetch = prefetch;
+    }
+
+    /** Sets how many times items that failed on throttling or a transient error are run again,
+     * after every other item of the batch is done
+     * @param retryRounds number of extra rounds, 0 to report such items as failed straight away
+     */
+    public void setRetryRounds(int retryRounds)
+    {
+        this.retryRounds = retryRounds;
+    }
+
+    /** Sets how long the service is left alone before the first retry round, doubling for every later round
+     * @param retryDelay Duration before first retry round
+     */
+    public void setRetryDelay(Duration retryDelay)
+    {
+        this.retryDelay = retryDelay;
+    }
+
+    /** Gets the backend operations are sent to
+     * @return BlobBackend of this service
+     */
+    public BlobBackend getBackend()
+    {
+        return backend;
+    }
+
+    /** Runs an operation for every item, keeping at most the configured number in flight.
+     * A failed item is recorded in the report and does not stop the others.
+     * @param items Flux of items to be processed, requested as operations complete
+     * @param key Function naming an item in the report
+     * @param operation Function starting the operation for an item
+     * @return Mono emitting the TransferReport once every item is done
+     */
+    public <T> Mono<TransferReport> execute(Flux<T> items, Function<T,String> key, Function<T,Mono<?>> operation)
+    {
+        return execute(items, key, operation, concurrency);
+    }
+
+    /** Runs an operation for every item with the given number of operations in flight.
+     * Items that fail on throttling or a transient error, once the SDK's own retries are used up, are put on
+     * a retry queue that is run again after the rest of the batch, so they are neither lost nor retried
+     * while the service is still overloaded.
+     * @param items Flux of items to be processed, requested as operations complete
+     * @param key Function naming an item in the report
+     * @param operation Function starting the operation for an item
+     * @param maxInFlight number of operations run at once
+     * @return Mono emitting the TransferReport once every item is done
+     */
+    public <T> Mono<TransferReport> execute(Flux<T> items, Function<T,String> key, Function<T,Mono<?>> operation,
+        int maxInFlight)
+    {
+        return Mono.defer(() -> {
+            TransferReport report = new TransferReport();
+            return executeRound(items, key, operation, maxInFlight, report, 0).then(Mono.just(report));
+        });
+    }
+
+    /** Runs one round of a batch, then the retry queue of that round
+     * @param items Flux of items of this round
+     * @param key Function naming an item in the report
+     * @param operation Function starting the operation for an item
+     * @param maxInFlight number of operations run at once
+     * @param report TransferReport recording outcomes
+     * @param round number of rounds already run
+     * @return Mono completing once this and later rounds are done
+     */
+    private <T> Mono<Void> executeRound(Flux<T> items, Function<T,String> key, Function<T,Mono<?>> operation,
+        int maxInFlight, TransferReport report, int round)
+    {
+        Queue<T> retries = new ConcurrentLinkedQueue<>();
+        return items.flatMap(item -> Mono.defer(() -> operation.apply(item))
+                .then(Mono.fromRunnable(() -> report.success(key.apply(item))))
+                .onErrorResume(e -> {
+                    if (round < retryRounds && isTransient(e))
+                    {
+                        retries.add(item);
+                    }
+                    else
+                    {
+                        report.failure(key.apply(item), e instanceof Exception ? (Exception) e : new RuntimeException(e));
+                    }
+                    return Mono.empty();
+                }), maxInFlight, prefetch)
+            .then(Mono.defer(() -> {
+                if (retries.isEmpty())
+                {
+                    return Mono.empty();
+                }
+                Duration delay = retryDelay.multipliedBy(1L << round);
+                System.out.println(String.format("Retrying %d items in %.1f s", retries.size(), delay.toMillis() / 1000.0));
+                return Mono.delay(delay)
+                    .then(executeRound(Flux.fromIterable(retries), key, operation, maxInFlight, report, round + 1));
+            }));
+    }
+
+    /** Checks whether an operation failed on throttling or a fault that may pass, so it is worth running again
+     * @param e Throwable raised by operation
+     * @return true if error is throttling, a server error, a timeout or a network error
+     */
+    static boolean isTransient(Throwable e)
+    {
+        Throwable cause = Exceptions.unwrap(e);
+        if (cause instanceof BlobStorageException)
+        {
+            int status = ((BlobStorageException) cause).getStatusCode();
+            return status == 429 || status == 500 || status == 503;
+        }
+        return cause instanceof TimeoutException || cause instanceof IOException
+            || cause.getCause() instanceof TimeoutException || cause.getCause() instanceof IOException;
+    }
+
+    /** Lists all blobs in container with their tags, which are returned inline by the listing
+     * @param container String representing container to be listed
+     * @return Flux of blobs, fetching the next page as the previous one is consumed
+     */
+    public Flux<BlobRecord> scanTags(String container)
+    {
+        return backend.listBlobs(container, null).concatMapIterable(BlobBackend.Page::getRecords);
+    }
+
+    /** Lists blobs in container one page at a time, with tags returned inline
+     * @param container String representing container to be listed
+     * @param continuationToken String token of page to start from, null to start from the first page
+     * @return Flux of pages
+     */
+    public Flux<BlobBackend.Page> scanPages(String container, String continuationToken)
+    {
+        return backend.listBlobs(container, continuationToken);
+    }
+
+    /** Uploads a local file with its tags, so the blob never exists untagged
+     * @param container String representing destination container's name
+     * @param blobName String representing name of blob to be written
+     * @param path String representing local path of file
+     * @param tags Map of tags to be set on blob
+     * @return Mono completing once the blob is written
+     */
+    public Mono<Void> upload(String container, String blobName, String path, Map<String,String> tags)
+    {
+        return upload(container, blobName, path, tags, null);
+    }
+
+    /** Uploads a local file with its tags and the MD5 of its content, which is kept as a property of the blob
+     * @param container String representing destination container's name
+     * @param blobName String representing name of blob to be written
+     * @param path String representing local path of file
+     * @param tags Map of tags to be set on blob
+     * @param contentMd5 byte array of MD5 of file, null to store none
+     * @return Mono completing once the blob is written
+     */
+    public Mono<Void> upload(String container, String blobName, String path, Map<String,String> tags, byte[] contentMd5)
+    {
+        return backend.upload(container, blobName, Paths.get(path), tags, contentMd5)
+            .doOnError(e -> forgetIfMissing(container, e));
+    }
+
+    /** Copies a blob on the service, with tags set on the destination by the copy request.
+     * Completes once the copy has finished on the service.
+     * @param sourceContainer String representing name of container holding source blob
+     * @param sourceBlob String representing name of source blob
+     * @param container String representing name of destination container
+     * @param blobName String representing name of destination blob
+     * @param tags Map of tags set on destination, null to leave destination untagged
+     * @return Mono completing once the copy has succeeded, failing if it did not
+     */
+    public Mono<Void> copy(String sourceContainer, String sourceBlob, String container, String blobName,
+        Map<String,String> tags)
+    {
+        return backend.copy(sourceContainer, sourceBlob, container, blobName, tags)
+            .doOnError(e -> forgetIfMissing(container, e));
+    }
+
+    /** Reads tags of a blob
+     * @param container String representing container name
+     * @param blobName String representing blob name
+     * @return Mono emitting the blob's tags
+     */
+    public Mono<Map<String,String>> getTags(String container, String blobName)
+    {
+        return backend.getTags(container, blobName);
+    }
+
+    /** Replaces tags of a blob
+     * @param container String representing container name
+     * @param blobName String representing blob name
+     * @param tags Map of tags to be set
+     * @return Mono completing once tags are written
+     */
+    public Mono<Void> setTags(String container, String blobName, Map<String,String> tags)
+    {
+        return backend.setTags(container, blobName, tags, null);
+    }
+
+    /** Deletes a blob unless it changed since it was listed
+     * @param container String representing container name
+     * @param blobName String representing blob name
+     * @param etag String ETag of blob as listed
+     * @return Mono completing once blob is deleted, failing with 412 if it changed
+     */
+    public Mono<Void> deleteIfMatch(String container, String blobName, String etag)
+    {
+        return backend.deleteIfMatch(container, blobName, etag);
+    }
+
+    /** Lists names of containers in account
+     * @param prefix String representing start of container names, null for all containers
+     * @return Flux of container names
+     */
+    public Flux<String> listContainers(String prefix)
+    {
+        return backend.listContainers(prefix);
+    }
+
+    /** Finds blobs whose tags match a filter expression
+     * @param query String representing tag filter expression
+     * @return Flux of matching blobs
+     */
+    public Flux<TaggedBlobItem> findBlobsByTags(String query)
+    {
+        return backend.findBlobsByTags(query);
+    }
+
+    /** Creates container unless it is known to exist. The first call for a container sends a single create request,
+     * treating "already exists" as success; concurrent calls for the same container wait for that request.
+     * @param container String representing container name
+     * @return Mono completing once container exists
+     */
+    public Mono<Void> ensureContainer(String container)
+    {
+        if (knownContainers.contains(container))
+        {
+            return Mono.empty();
+        }
+        return creating.computeIfAbsent(container, name -> backend.createContainer(name)
+            .doOnSuccess(v -> System.out.println("Created container " + name))
+            .onErrorResume(e -> e instanceof BlobStorageException
+                && BlobErrorCode.CONTAINER_ALREADY_EXISTS.equals(((BlobStorageException) e).getErrorCode()), e -> Mono.empty())
+            .doOnSuccess(v -> knownContainers.add(name))
+            .doFinally(signal -> creating.remove(name))
+            .cache());
+    }
+
+    /** Forgets that a container exists if a request found it missing, ie: deleted by another job,
+     * so the next ensureContainer creates it again
+     * @param container String representing container name
+     * @param e Throwable raised by request
+     */
+    private void forgetIfMissing(String container, Throwable e)
+    {
+        if (e instanceof BlobStorageException && ((BlobStorageException) e).getStatusCode() == 404
+            && BlobErrorCode.CONTAINER_NOT_FOUND.equals(((BlobStorageException) e).getErrorCode()))
+        {
+            knownContainers.remove(container);
+        }
+    }
+}
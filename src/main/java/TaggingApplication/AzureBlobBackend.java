@@ -0,0 +1,306 @@
+package TaggingApplication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import com.azure.core.util.polling.LongRunningOperationStatus;
+import com.azure.storage.blob.BlobAsyncClient;
+import com.azure.storage.blob.BlobContainerAsyncClient;
+import com.azure.storage.blob.BlobServiceAsyncClient;
+import com.azure.storage.blob.models.BlobContainerItem;
+import com.azure.storage.blob.models.BlobHttpHeaders;
+import com.azure.storage.blob.models.BlobListDetails;
+import com.azure.storage.blob.models.BlobRequestConditions;
+import com.azure.storage.blob.models.CopyStatusType;
+import com.azure.storage.blob.models.ListBlobContainersOptions;
+import com.azure.storage.blob.models.ListBlobsOptions;
+import com.azure.storage.blob.models.ParallelTransferOptions;
+import com.azure.storage.blob.models.TaggedBlobItem;
+import com.azure.storage.blob.options.BlobBeginCopyOptions;
+import com.azure.storage.blob.options.BlobSetTagsOptions;
+import com.azure.storage.blob.options.BlobUploadFromFileOptions;
+import com.azure.storage.blob.options.BlockBlobCommitBlockListOptions;
+import com.azure.storage.blob.specialized.BlockBlobAsyncClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/** Blob operations on an Azure storage account, sent through the account's async client
+ * @author Charlene Pang
+ */
+public class AzureBlobBackend implements BlobBackend
+{
+    private static final Duration MIN_COPY_POLL_INTERVAL = Duration.ofMillis(200);
+    private static final Duration MAX_COPY_POLL_INTERVAL = Duration.ofSeconds(5);
+    private static final long DEFAULT_BLOCK_SIZE = 8L * 1024 * 1024;
+    private static final long DEFAULT_MAX_SINGLE_UPLOAD_SIZE = 32L * 1024 * 1024;
+    private static final int DEFAULT_MAX_CONCURRENCY_PER_BLOB = 8;
+
+    private final BlobServiceAsyncClient serviceClient;
+    private final Map<String,BlobContainerAsyncClient> containerClients = new ConcurrentHashMap<>();
+    private volatile long blockSize = DEFAULT_BLOCK_SIZE;
+    private volatile long maxSingleUploadSize = DEFAULT_MAX_SINGLE_UPLOAD_SIZE;
+    private volatile int maxConcurrencyPerBlob = DEFAULT_MAX_CONCURRENCY_PER_BLOB;
+    //connections that staged blocks of large files may use between them
+    private volatile ConnectionBudget connectionBudget;
+
+    /** Constructor
+     * @param serviceClient BlobServiceAsyncClient of storage account
+     * @param connectionBudget number of connections the blocks of large files share, ie: size of the connection pool
+     */
+    public AzureBlobBackend(BlobServiceAsyncClient serviceClient, int connectionBudget)
+    {
+        this.serviceClient = serviceClient;
+        this.connectionBudget = new ConnectionBudget(connectionBudget);
+    }
+
+    /** Sets how large files are uploaded
+     * @param blockSize long number of bytes per staged block
+     * @param maxConcurrencyPerBlob number of blocks of one file staged at once, when connections allow
+     * @param maxSingleUploadSize long size up to which a file is sent in a single request
+     */
+    public void setLargeFileTransfer(long blockSize, int maxConcurrencyPerBlob, long maxSingleUploadSize)
+    {
+        this.blockSize = blockSize;
+        this.maxConcurrencyPerBlob = maxConcurrencyPerBlob;
+        this.maxSingleUploadSize = maxSingleUploadSize;
+    }
+
+    /** Sets number of connections the blocks of large files share. Every block takes a connection from the
+     * budget while it is staged, so a single large file still uses up to its maximum while many large files
+     * in flight together stay within the budget as uploads start and finish. Uploads already started keep
+     * the budget they started with.
+     * @param connectionBudget number of connections, ie: size of the connection pool
+     */
+    public void setConnectionBudget(int connectionBudget)
+    {
+        this.connectionBudget = new ConnectionBudget(connectionBudget);
+    }
+
+    /** Gets client of container, built once per container from the service client's pipeline
+     * @param container String representing container name
+     * @return BlobContainerAsyncClient of container
+     */
+    public BlobContainerAsyncClient getContainerClient(String container)
+    {
+        return containerClients.computeIfAbsent(container, serviceClient::getBlobContainerAsyncClient);
+    }
+
+    @Override
+    public Flux<String> listContainers(String prefix)
+    {
+        return serviceClient.listBlobContainers(new ListBlobContainersOptions().setPrefix(prefix))
+            .map(BlobContainerItem::getName);
+    }
+
+    @Override
+    public Mono<Boolean> containerExists(String container)
+    {
+        return getContainerClient(container).exists();
+    }
+
+    @Override
+    public Mono<Void> createContainer(String container)
+    {
+        return getContainerClient(container).create();
+    }
+
+    @Override
+    public Flux<Page> listBlobs(String container, String continuationToken)
+    {
+        ListBlobsOptions options = new ListBlobsOptions().setDetails(new BlobListDetails().setRetrieveTags(true));
+        return getContainerClient(container).listBlobs(options).byPage(continuationToken)
+            .map(page -> {
+                List<BlobRecord> records = new ArrayList<>(page.getValue().size());
+                page.getValue().forEach(b -> records.add(new BlobRecord(b.getName(), b.getProperties(), b.getTags())));
+                return new Page(records, page.getContinuationToken());
+            });
+    }
+
+    @Override
+    public Mono<Map<String,String>> getTags(String container, String blobName)
+    {
+        return getContainerClient(container).getBlobAsyncClient(blobName).getTags();
+    }
+
+    @Override
+    public Mono<Void> setTags(String container, String blobName, Map<String,String> tags, String ifTags)
+    {
+        BlobSetTagsOptions options = new BlobSetTagsOptions(tags);
+        if (ifTags != null)
+        {
+            options.setRequestConditions(new BlobRequestConditions().setTagsConditions(ifTags));
+        }
+        return getContainerClient(container).getBlobAsyncClient(blobName).setTagsWithResponse(options).then();
+    }
+
+    /** Uploads a file with one request up to the single-shot size, or else as memory-mapped blocks staged
+     * in parallel. The service stores the MD5 of a blob written by one Put Blob itself; for a blob written
+     * as blocks without a given MD5, the MD5 is digested from the mapped blocks as they are staged and sent
+     * with the block list.
+     */
+    @Override
+    public Mono<Void> upload(String container, String blobName, Path file, Map<String,String> tags, byte[] contentMd5)
+    {
+        BlobAsyncClient blobClient = getContainerClient(container).getBlobAsyncClient(blobName);
+        return Mono.defer(() -> {
+            long size;
+            try
+            {
+                size = Files.size(file);
+            }
+            catch (IOException e)
+            {
+                return Mono.error(e);
+            }
+            if (size <= maxSingleUploadSize)
+            {
+                //one Put Blob request
+                return blobClient.uploadFromFileWithResponse(new BlobUploadFromFileOptions(file.toString()).setTags(tags)
+                    .setHeaders(contentMd5 == null ? null : new BlobHttpHeaders().setContentMd5(contentMd5))
+                    .setParallelTransferOptions(new ParallelTransferOptions().setMaxSingleUploadSizeLong(maxSingleUploadSize)));
+            }
+            //blocks staged in parallel from mapped file, each taking a connection shared with other uploads in flight
+            ConnectionBudget budget = connectionBudget;
+            BlockBlobAsyncClient blockClient = blobClient.getBlockBlobAsyncClient();
+            BlobHttpHeaders headers = new BlobHttpHeaders().setContentMd5(contentMd5);
+            Flux<ByteBuffer> blocks = MappedFile.blocks(file, size, blockSize);
+            if (contentMd5 == null)
+            {
+                //blocks are emitted in file order before being staged, the block list is committed after the last
+                MessageDigest digest = md5();
+                blocks = blocks.doOnNext(block -> digest.update(block.duplicate()))
+                    .doOnComplete(() -> headers.setContentMd5(digest.digest()));
+            }
+            List<String> blockIds = new ArrayList<>();
+            for (long position = 0; position < size; position += blockSize)
+            {
+                blockIds.add(blockId(blockIds.size()));
+            }
+            return blocks.index()
+                .flatMap(block -> budget.use(() -> blockClient.stageBlock(blockIds.get(block.getT1().intValue()),
+                    //a retried request reads the block again from the start
+                    Flux.defer(() -> Flux.just(block.getT2().duplicate())), block.getT2().remaining())),
+                    maxConcurrencyPerBlob)
+                .then(Mono.defer(() -> blockClient.commitBlockListWithResponse(
+                    new BlockBlobCommitBlockListOptions(blockIds).setHeaders(headers).setTags(tags))));
+        })
+            .then();
+    }
+
+    /** Gets ID of a block, the same length for every block of a blob as the service requires
+     * @param index int position of block in blob
+     * @return String representing base64 block ID
+     */
+    private static String blockId(int index)
+    {
+        return Base64.getEncoder().encodeToString(String.format("%08d", index).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static MessageDigest md5()
+    {
+        try
+        {
+            return MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Starts a server-side copy and polls it until it has finished on the service. Small copies finish
+     * by the first poll; a copy still pending is polled at an interval that doubles up to 5 s,
+     * so long copies do not keep sending requests every 200 ms.
+     */
+    @Override
+    public Mono<Void> copy(String sourceContainer, String sourceBlob, String container, String blobName,
+        Map<String,String> tags)
+    {
+        String sourceUrl = getContainerClient(sourceContainer).getBlobAsyncClient(sourceBlob).getBlobUrl();
+        BlobAsyncClient destination = getContainerClient(container).getBlobAsyncClient(blobName);
+        return destination.beginCopy(new BlobBeginCopyOptions(sourceUrl).setTags(tags).setPollInterval(MIN_COPY_POLL_INTERVAL))
+            .next()
+            .flatMap(response -> {
+                if (response.getStatus() == LongRunningOperationStatus.SUCCESSFULLY_COMPLETED)
+                {
+                    return Mono.<Void>empty();
+                }
+                if (response.getStatus() == LongRunningOperationStatus.IN_PROGRESS)
+                {
+                    return awaitCopy(destination, response.getValue().getCopyId(), MIN_COPY_POLL_INTERVAL.multipliedBy(2));
+                }
+                return Mono.<Void>error(new IllegalStateException("Copy ended with status "
+                    + response.getValue().getCopyStatus() + " " + response.getValue().getError()));
+            });
+    }
+
+    /** Polls a pending copy by reading the destination's properties, doubling the interval after every poll
+     * @param destination BlobAsyncClient of destination blob
+     * @param copyId String identifying the copy, to notice a later copy replacing it
+     * @param interval Duration before next poll
+     * @return Mono completing once the copy has succeeded, failing if it did not
+     */
+    private Mono<Void> awaitCopy(BlobAsyncClient destination, String copyId, Duration interval)
+    {
+        return Mono.delay(interval)
+            .then(destination.getProperties())
+            .flatMap(properties -> {
+                if (copyId != null && !copyId.equals(properties.getCopyId()))
+                {
+                    return Mono.<Void>error(new IllegalStateException("Copy " + copyId + " was replaced by copy "
+                        + properties.getCopyId()));
+                }
+                if (properties.getCopyStatus() == CopyStatusType.SUCCESS)
+                {
+                    return Mono.<Void>empty();
+                }
+                if (properties.getCopyStatus() == CopyStatusType.PENDING)
+                {
+                    Duration next = interval.multipliedBy(2);
+                    return awaitCopy(destination, copyId, next.compareTo(MAX_COPY_POLL_INTERVAL) > 0 ? MAX_COPY_POLL_INTERVAL : next);
+                }
+                return Mono.<Void>error(new IllegalStateException("Copy ended with status "
+                    + properties.getCopyStatus() + " " + properties.getCopyStatusDescription()));
+            });
+    }
+
+    @Override
+    public Mono<Void> deleteIfMatch(String container, String blobName, String etag)
+    {
+        return getContainerClient(container).getBlobAsyncClient(blobName)
+            .deleteWithResponse(null, new BlobRequestConditions().setIfMatch(etag))
+            .then();
+    }
+
+    /** One Put Blob request up to the single-shot size, else one request per block and one to commit them
+     */
+    @Override
+    public int uploadRequests(long size)
+    {
+        return size <= maxSingleUploadSize ? 1 : (int) ((size + blockSize - 1) / blockSize) + 1;
+    }
+
+    /** Request starting the copy and at least one poll of its status
+     */
+    @Override
+    public int copyRequests()
+    {
+        return 2;
+    }
+
+    @Override
+    public Flux<TaggedBlobItem> findBlobsByTags(String query)
+    {
+        return serviceClient.findBlobsByTags(query);
+    }
+}
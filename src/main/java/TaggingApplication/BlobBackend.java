@@ -0,0 +1,136 @@
+package TaggingApplication;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import com.azure.storage.blob.models.TaggedBlobItem;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/** Blob operations the bulk functions of StorageService are built on. AzureBlobBackend sends them to a storage
+ * account; InMemoryBlobBackend keeps blobs in memory, to measure migrations and concurrency settings offline.
+ * Failures are reported as BlobStorageException with the status and error code the service would return,
+ * so retries, throttling and conflicts are handled the same whichever backend is in use.
+ * @author Charlene Pang
+ */
+public interface BlobBackend
+{
+    /** One page of a container listing */
+    class Page
+    {
+        private final List<BlobRecord> records;
+        private final String continuationToken;
+
+        public Page(List<BlobRecord> records, String continuationToken)
+        {
+            this.records = records;
+            this.continuationToken = continuationToken;
+        }
+
+        public List<BlobRecord> getRecords()
+        {
+            return records;
+        }
+
+        /** @return continuation token of the next page, null if this is the last page
+         */
+        public String getContinuationToken()
+        {
+            return continuationToken;
+        }
+    }
+
+    /** Lists names of containers in account
+     * @param prefix String representing start of container names, null for all containers
+     * @return Flux of container names
+     */
+    Flux<String> listContainers(String prefix);
+
+    /** Checks whether a container exists
+     * @param container String representing container name
+     * @return Mono emitting true if container exists
+     */
+    Mono<Boolean> containerExists(String container);
+
+    /** Creates a container
+     * @param container String representing container name
+     * @return Mono completing once created, failing with 409 CONTAINER_ALREADY_EXISTS if it exists
+     */
+    Mono<Void> createContainer(String container);
+
+    /** Lists blobs in container one page at a time, with their properties and tags
+     * @param container String representing container to be listed
+     * @param continuationToken String token of page to start from, null to start from the first page
+     * @return Flux of pages, fetching the next page as the previous one is consumed
+     */
+    Flux<Page> listBlobs(String container, String continuationToken);
+
+    /** Reads tags of a blob
+     * @param container String representing container name
+     * @param blobName String representing blob name
+     * @return Mono emitting the blob's tags
+     */
+    Mono<Map<String,String>> getTags(String container, String blobName);
+
+    /** Replaces tags of a blob
+     * @param container String representing container name
+     * @param blobName String representing blob name
+     * @param tags Map of tags to be set
+     * @param ifTags String tag condition the blob's current tags must match, null to write unconditionally
+     * @return Mono completing once tags are written, failing with 412 if the condition is not met
+     */
+    Mono<Void> setTags(String container, String blobName, Map<String,String> tags, String ifTags);
+
+    /** Uploads a local file with its tags, so the blob never exists untagged
+     * @param container String representing destination container's name
+     * @param blobName String representing name of blob to be written
+     * @param file Path of local file
+     * @param tags Map of tags to be set on blob
+     * @param contentMd5 byte array of MD5 of file, null to have it worked out as the file is sent,
+     * so every uploaded blob carries the MD5 a later sync compares against
+     * @return Mono completing once the blob is written
+     */
+    Mono<Void> upload(String container, String blobName, Path file, Map<String,String> tags, byte[] contentMd5);
+
+    /** Copies a blob within the account, with tags set on the destination by the copy
+     * @param sourceContainer String representing name of container holding source blob
+     * @param sourceBlob String representing name of source blob
+     * @param container String representing name of destination container
+     * @param blobName String representing name of destination blob
+     * @param tags Map of tags set on destination, null to leave destination untagged
+     * @return Mono completing once the copy has succeeded, failing if it did not
+     */
+    Mono<Void> copy(String sourceContainer, String sourceBlob, String container, String blobName,
+        Map<String,String> tags);
+
+    /** Deletes a blob unless it changed since it was listed
+     * @param container String representing container name
+     * @param blobName String representing blob name
+     * @param etag String ETag of blob as listed
+     * @return Mono completing once blob is deleted, failing with 412 if it changed
+     */
+    Mono<Void> deleteIfMatch(String container, String blobName, String etag);
+
+    /** Estimates number of requests an upload takes, for plans of jobs
+     * @param size long size of file
+     * @return number of requests, without retries
+     */
+    default int uploadRequests(long size)
+    {
+        return 1;
+    }
+
+    /** Estimates number of requests a copy takes, for plans of jobs
+     * @return number of requests, without retries
+     */
+    default int copyRequests()
+    {
+        return 1;
+    }
+
+    /** Finds blobs whose tags match a filter expression across the account
+     * @param query String representing tag filter expression, ie: "DocType" = 'Invoice' AND @container = 'en-x'
+     * @return Flux of matching blobs
+     */
+    Flux<TaggedBlobItem> findBlobsByTags(String query);
+}
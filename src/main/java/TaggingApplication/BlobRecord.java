@@ -0,0 +1,44 @@
+package TaggingApplication;
+
+import java.util.Collections;
+import java.util.Map;
+import com.azure.storage.blob.models.BlobItemProperties;
+
+/** Represents a blob returned by a listing, together with its properties and tags
+ * @author Charlene Pang
+ */
+public class BlobRecord
+{
+    private final String name;
+    private final BlobItemProperties properties;
+    private final Map<String,String> tags;
+
+    /** Constructor
+     * @param name String representing name of blob within container
+     * @param properties BlobItemProperties returned by listing
+     * @param tags Map of tags returned by listing, null if blob has no tags
+     */
+    public BlobRecord(String name, BlobItemProperties properties, Map<String,String> tags)
+    {
+        this.name = name;
+        this.properties = properties;
+        this.tags = tags == null ? Collections.emptyMap() : Collections.unmodifiableMap(tags);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public BlobItemProperties getProperties()
+    {
+        return properties;
+    }
+
+    /** @return read-only Map of tags on blob, empty if blob has no tags
+     */
+    public Map<String,String> getTags()
+    {
+        return tags;
+    }
+}
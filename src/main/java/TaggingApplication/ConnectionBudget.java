@@ -0,0 +1,109 @@
+package TaggingApplication;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+/** Fixed number of connections shared by requests from many transfers. A request waits, without holding
+ * a thread, until a connection is free, and gives it back once it completes, fails or is cancelled, so
+ * however many transfers are in flight, together they never use more than the budget.
+ * @author Charlene Pang
+ */
+public class ConnectionBudget
+{
+    private final int connections;
+    private int available;
+    private final Deque<MonoSink<Boolean>> waiting = new ArrayDeque<>();
+
+    /** Constructor
+     * @param connections number of requests allowed in flight at once, at least 1
+     */
+    public ConnectionBudget(int connections)
+    {
+        if (connections < 1)
+        {
+            throw new IllegalArgumentException("connections must be at least 1");
+        }
+        this.connections = connections;
+        this.available = connections;
+    }
+
+    public int getConnections()
+    {
+        return connections;
+    }
+
+    /** Sends a request once a connection is free
+     * @param request Supplier of Mono sending the request, subscribed once a connection is taken
+     * @param <T> type of response
+     * @return Mono of response of request
+     */
+    public <T> Mono<T> use(Supplier<Mono<T>> request)
+    {
+        return Mono.defer(() -> {
+            //set once by whichever comes first of sending the request and giving back an unused connection
+            AtomicBoolean settled = new AtomicBoolean();
+            return Mono.<Boolean>create(sink -> {
+                boolean taken;
+                synchronized (this)
+                {
+                    taken = available > 0;
+                    if (taken)
+                    {
+                        available--;
+                    }
+                    else
+                    {
+                        waiting.add(sink);
+                    }
+                }
+                sink.onCancel(() -> {
+                    boolean queued;
+                    synchronized (this)
+                    {
+                        queued = waiting.remove(sink);
+                    }
+                    //cancelled after being handed a connection but before sending
+                    if (!queued && !settled.getAndSet(true))
+                    {
+                        release();
+                    }
+                });
+                if (taken)
+                {
+                    sink.success(true);
+                }
+            })
+                .flatMap(taken -> settled.getAndSet(true) ? Mono.<T>empty() : Mono.defer(request).doFinally(signal -> release()));
+        });
+    }
+
+    /** Hands a connection to the longest waiting request, or else returns it to the budget
+     */
+    private void release()
+    {
+        MonoSink<Boolean> next;
+        synchronized (this)
+        {
+            next = waiting.poll();
+            if (next == null)
+            {
+                available++;
+            }
+        }
+        if (next != null)
+        {
+            next.success(true);
+        }
+    }
+
+    /** @return number of connections not in use
+     */
+    public synchronized int getAvailable()
+    {
+        return available;
+    }
+}
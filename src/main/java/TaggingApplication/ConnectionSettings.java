@@ -0,0 +1,131 @@
+package TaggingApplication;
+
+import java.time.Duration;
+import com.azure.core.http.HttpClient;
+import com.azure.core.http.netty.NettyAsyncHttpClientBuilder;
+import reactor.netty.resources.ConnectionProvider;
+
+/** Settings of the HTTP client shared by every request a StorageService sends.
+ * Setters return this, so settings can be chained.
+ * @author Charlene Pang
+ */
+public class ConnectionSettings
+{
+    private int maxConnections = 128;
+    private Duration maxIdleTime = Duration.ofSeconds(60);
+    private Duration maxLifeTime = Duration.ofMinutes(10);
+    private Duration pendingAcquireTimeout = Duration.ofSeconds(60);
+    private Duration readTimeout = Duration.ofSeconds(60);
+    private Duration writeTimeout = Duration.ofSeconds(60);
+    private Duration responseTimeout = Duration.ofSeconds(60);
+    private boolean bufferCopy = false;
+
+    /** Sets number of connections kept open to the storage account. Requests beyond it wait for a free connection.
+     * @param maxConnections number of pooled connections
+     * @return this ConnectionSettings
+     */
+    public ConnectionSettings setMaxConnections(int maxConnections)
+    {
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    /** Sets how long an unused connection is kept alive for the next request. Should stay below the
+     * idle timeout of the service's load balancer, so a closed connection is never picked from the pool.
+     * @param maxIdleTime Duration an idle connection is kept
+     * @return this ConnectionSettings
+     */
+    public ConnectionSettings setMaxIdleTime(Duration maxIdleTime)
+    {
+        this.maxIdleTime = maxIdleTime;
+        return this;
+    }
+
+    /** Sets how long a connection is reused before it is replaced, so requests spread over the service's front ends
+     * @param maxLifeTime Duration a connection is reused
+     * @return this ConnectionSettings
+     */
+    public ConnectionSettings setMaxLifeTime(Duration maxLifeTime)
+    {
+        this.maxLifeTime = maxLifeTime;
+        return this;
+    }
+
+    /** Sets how long a request waits for a free connection before it fails
+     * @param pendingAcquireTimeout Duration a request may wait for a connection
+     * @return this ConnectionSettings
+     */
+    public ConnectionSettings setPendingAcquireTimeout(Duration pendingAcquireTimeout)
+    {
+        this.pendingAcquireTimeout = pendingAcquireTimeout;
+        return this;
+    }
+
+    /** Sets how long a request may go without receiving data from the service
+     * @param readTimeout Duration between reads
+     * @return this ConnectionSettings
+     */
+    public ConnectionSettings setReadTimeout(Duration readTimeout)
+    {
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    /** Sets how long a request body may go without being written to the connection
+     * @param writeTimeout Duration between writes
+     * @return this ConnectionSettings
+     */
+    public ConnectionSettings setWriteTimeout(Duration writeTimeout)
+    {
+        this.writeTimeout = writeTimeout;
+        return this;
+    }
+
+    /** Sets how long the service may take to start responding after a request is sent
+     * @param responseTimeout Duration until response headers arrive
+     * @return this ConnectionSettings
+     */
+    public ConnectionSettings setResponseTimeout(Duration responseTimeout)
+    {
+        this.responseTimeout = responseTimeout;
+        return this;
+    }
+
+    /** Sets whether response bodies are copied out of the network buffers before they are handed on.
+     * Off by default: listing and tag responses are parsed as they arrive, so the copy only adds garbage.
+     * @param bufferCopy true to copy every response buffer
+     * @return this ConnectionSettings
+     */
+    public ConnectionSettings setBufferCopy(boolean bufferCopy)
+    {
+        this.bufferCopy = bufferCopy;
+        return this;
+    }
+
+    public int getMaxConnections()
+    {
+        return maxConnections;
+    }
+
+    /** Builds the HTTP client with its own connection pool. Connections are kept alive between requests.
+     * @return HttpClient to be shared by all clients of a storage account
+     */
+    public HttpClient buildHttpClient()
+    {
+        ConnectionProvider pool = ConnectionProvider.builder("storage")
+            .maxConnections(maxConnections)
+            //no limit on waiting requests, bulk operations bound them by their own concurrency
+            .pendingAcquireMaxCount(-1)
+            .pendingAcquireTimeout(pendingAcquireTimeout)
+            .maxIdleTime(maxIdleTime)
+            .maxLifeTime(maxLifeTime)
+            .evictInBackground(maxIdleTime)
+            .build();
+        return new NettyAsyncHttpClientBuilder(reactor.netty.http.client.HttpClient.create(pool).keepAlive(true))
+            .readTimeout(readTimeout)
+            .writeTimeout(writeTimeout)
+            .responseTimeout(responseTimeout)
+            .disableBufferCopy(!bufferCopy)
+            .build();
+    }
+}
@@ -0,0 +1,151 @@
+package TaggingApplication;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import com.azure.storage.blob.models.BlobItemProperties;
+
+/** Decides which local files differ from the blobs already in a container, from a single listing of it.
+ * Size and last-modified time settle most files; the content MD5 is only compared when a file has the
+ * blob's size but was modified after the blob was written.
+ * @author Charlene Pang
+ */
+public class DeltaSync
+{
+    private static final long MAP_BLOCK_BYTES = 64L * 1024 * 1024;
+
+    /** What a file needs */
+    public enum Decision
+    {
+        /** No blob, or a blob of a different size */
+        UPLOAD,
+        /** Blob written after the file last changed, with the same size */
+        UNCHANGED,
+        /** Same size but file changed after the blob was written, content MD5 has to be compared */
+        CHECK_CONTENT
+    }
+
+    private final Map<String,BlobRecord> blobs = new HashMap<>();
+    private final AtomicInteger uploaded = new AtomicInteger();
+    private final AtomicInteger retagged = new AtomicInteger();
+    private final AtomicInteger unchanged = new AtomicInteger();
+
+    /** Constructor
+     * @param listing Stream of blobs in container with their properties and tags
+     */
+    public DeltaSync(Stream<BlobRecord> listing)
+    {
+        listing.forEach(b -> blobs.put(b.getName(), b));
+    }
+
+    /** Gets blob with name from the listing
+     * @param blobName String representing blob name
+     * @return BlobRecord, null if the container has no such blob
+     */
+    public BlobRecord get(String blobName)
+    {
+        return blobs.get(blobName);
+    }
+
+    /** Compares a local file with its blob by size and time
+     * @param file Path of local file
+     * @param blob BlobRecord of blob from listing, null if there is none
+     * @return Decision for file
+     */
+    public Decision compare(Path file, BlobRecord blob)
+    {
+        if (blob == null)
+        {
+            return Decision.UPLOAD;
+        }
+        BlobItemProperties properties = blob.getProperties();
+        try
+        {
+            Long length = properties.getContentLength();
+            if (length == null || length != Files.size(file))
+            {
+                return Decision.UPLOAD;
+            }
+            OffsetDateTime written = properties.getLastModified();
+            if (written != null && Files.getLastModifiedTime(file).toMillis() <= written.toInstant().toEpochMilli())
+            {
+                return Decision.UNCHANGED;
+            }
+        }
+        catch (IOException e)
+        {
+            return Decision.UPLOAD;
+        }
+        return properties.getContentMd5() == null ? Decision.UPLOAD : Decision.CHECK_CONTENT;
+    }
+
+    /** Compares content of a local file with its blob
+     * @param md5 byte array of MD5 of local file
+     * @param blob BlobRecord of blob from listing
+     * @return true if file's MD5 equals the blob's
+     */
+    public boolean sameContent(byte[] md5, BlobRecord blob)
+    {
+        return Arrays.equals(md5, blob.getProperties().getContentMd5());
+    }
+
+    /** Computes MD5 of a file, to be stored with its blob so later syncs can compare contents
+     * @param file Path of local file
+     * @return byte array of MD5 digest
+     * @throws IOException if the file cannot be read
+     */
+    public static byte[] md5(Path file) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAP_BLOCK_BYTES)
+            {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_BLOCK_BYTES, size - position)));
+            }
+        }
+        return digest.digest();
+    }
+
+    public void uploaded()
+    {
+        uploaded.incrementAndGet();
+    }
+
+    public void retagged()
+    {
+        retagged.incrementAndGet();
+    }
+
+    public void unchanged()
+    {
+        unchanged.incrementAndGet();
+    }
+
+    /** Prints number of files uploaded, blobs whose tags only were updated and files left as they were
+     */
+    public void printSummary()
+    {
+        System.out.println(String.format("Sync: %d uploaded, %d tags updated, %d unchanged",
+            uploaded.get(), retagged.get(), unchanged.get()));
+    }
+}
@@ -0,0 +1,176 @@
+package TaggingApplication;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.stream.Stream;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Schedulers;
+
+/** Streams the files of a folder tree as they are found, so that uploads start while the tree is still being
+ * walked. Files are read from the directory on demand, only as fast as the uploads take them, so memory holds
+ * the open directories and a few queued paths rather than the whole tree. On network filesystems, where each
+ * directory read is a round trip, the subfolders of the top folder can be walked in parallel.
+ * A folder or file that cannot be read is recorded as a failure and skipped, and the walk carries on.
+ * Walking blocks on the filesystem, so it runs on a scheduler meant for blocking work.
+ * @author Charlene Pang
+ */
+public class FolderWalker
+{
+    //paths read ahead from each subfolder walked in parallel
+    private static final int PREFETCH = 32;
+
+    private final int parallelism;
+
+    /** Creates a walker reading one directory at a time
+     */
+    public FolderWalker()
+    {
+        this(1);
+    }
+
+    /** Constructor
+     * @param parallelism number of subfolders of the top folder walked at once
+     */
+    public FolderWalker(int parallelism)
+    {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /** Gets the files within a folder and its subfolders, leaving out hidden files
+     * @param folder Path of folder, or of a single file
+     * @param report TransferReport recording every folder or file that could not be read
+     * @return Flux of paths of regular files, emitted as they are found
+     */
+    public Flux<Path> files(Path folder, TransferReport report)
+    {
+        if (parallelism == 1 || !Files.isDirectory(folder))
+        {
+            return walk(folder, report);
+        }
+        return Flux.using(() -> Files.list(folder), Flux::fromStream, Stream::close)
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(p -> Files.isDirectory(p) ? walk(p, report) : (isWanted(p) ? Flux.just(p) : Flux.<Path>empty()),
+                parallelism, PREFETCH)
+            .onErrorResume(e -> {
+                unreadable(report, folder, e);
+                return Flux.empty();
+            });
+    }
+
+    /** Walks a tree depth first on one thread, going on to the next file only once it is requested
+     * @param root Path of folder or file
+     * @param report TransferReport recording folders and files that could not be read
+     * @return Flux of paths of regular files in tree
+     */
+    private static Flux<Path> walk(Path root, TransferReport report)
+    {
+        return Flux.<Path>create(sink -> {
+            Object demand = new Object();
+            sink.onRequest(n -> {
+                synchronized (demand)
+                {
+                    demand.notifyAll();
+                }
+            });
+            sink.onCancel(() -> {
+                synchronized (demand)
+                {
+                    demand.notifyAll();
+                }
+            });
+            try
+            {
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>()
+                {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException
+                    {
+                        if (isWanted(file) && !emit(sink, demand, file))
+                        {
+                            return FileVisitResult.TERMINATE;
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    //a folder that cannot be read is skipped, its siblings are still walked
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e)
+                    {
+                        unreadable(report, file, e);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path dir, IOException e)
+                    {
+                        if (e != null)
+                        {
+                            unreadable(report, dir, e);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+                sink.complete();
+            }
+            catch (InterruptedIOException e)
+            {
+                sink.error(e);
+            }
+            catch (IOException e)
+            {
+                unreadable(report, root, e);
+                sink.complete();
+            }
+        //requests are passed on from the requesting thread, as the walking thread is waiting for them
+        }).subscribeOn(Schedulers.boundedElastic(), false);
+    }
+
+    /** Emits a file once downstream has asked for one, waiting on the walking thread until it does
+     * @param sink FluxSink of the walk
+     * @param demand Object notified when more files are requested or the walk is cancelled
+     * @param file Path of file
+     * @return false if the walk was cancelled
+     * @throws InterruptedIOException if the walking thread is interrupted while waiting
+     */
+    private static boolean emit(FluxSink<Path> sink, Object demand, Path file) throws InterruptedIOException
+    {
+        synchronized (demand)
+        {
+            while (sink.requestedFromDownstream() == 0 && !sink.isCancelled())
+            {
+                try
+                {
+                    demand.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Walk interrupted at " + file);
+                }
+            }
+        }
+        if (sink.isCancelled())
+        {
+            return false;
+        }
+        sink.next(file);
+        return true;
+    }
+
+    private static void unreadable(TransferReport report, Path path, Throwable e)
+    {
+        System.out.println("Could not read folder " + path + " : " + e);
+        report.failure(path.toString(), e instanceof Exception ? (Exception) e : new RuntimeException(e));
+    }
+
+    private static boolean isWanted(Path p)
+    {
+        return !p.toFile().isHidden() && Files.isRegularFile(p);
+    }
+}
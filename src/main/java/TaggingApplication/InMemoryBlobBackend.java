@@ -0,0 +1,752 @@
+package TaggingApplication;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import com.azure.core.http.HttpHeaders;
+import com.azure.core.http.HttpMethod;
+import com.azure.core.http.HttpPipeline;
+import com.azure.core.http.HttpPipelineBuilder;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import com.azure.storage.blob.models.BlobErrorCode;
+import com.azure.storage.blob.models.BlobItemProperties;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.models.TaggedBlobItem;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/** Storage account held in memory, for load-testing migrations and concurrency settings without Azure.
+ * Blobs keep their size, MD5, ETag and tags but not their content. Every request can be given a latency,
+ * the account a request rate above which requests fail with 503 Server Busy, a bandwidth shared by uploads
+ * and copies, and a rate of random 500 errors. Throttled requests carry Retry-After and x-ms-retry-after-ms
+ * like the service's. Requests are sent as HTTP requests through a pipeline, so the policies of an Azure client,
+ * ie: RateGovernor and MetricsPolicy, can be put in front of them.
+ * The rate limit and bandwidth are measured on a simulated clock, which moves on as requests complete by the
+ * time they took, and as throttled requests complete by the wait they asked for. Faults are drawn from a seeded
+ * generator, so a run with the same seed and the same sequence of requests is throttled and fails the same way,
+ * however fast the machine running it.
+ * @author Charlene Pang
+ */
+public class InMemoryBlobBackend implements BlobBackend
+{
+    private static final int DEFAULT_PAGE_SIZE = 5000;
+    //account of the storage emulator, named in the path of its URLs
+    private static final String ACCOUNT_URL = "http://127.0.0.1:10000/devstoreaccount1/";
+    //one clause of a tag filter expression: "key" = 'value' or @container = 'value'
+    //a value is quoted in single quotes, a single quote inside it doubled; clauses are joined by AND
+    private static final Pattern CLAUSE = Pattern.compile("\\s*(?:\"([^\"]*)\"|(@container))\\s*=\\s*'((?:[^']|'')*)'\\s*(?:AND\\s|$)");
+    private static final String CONTAINER_KEY = "@container";
+
+    /** Blob held in memory */
+    private static final class Blob
+    {
+        final long length;
+        final byte[] contentMd5;
+        final String etag;
+        final OffsetDateTime lastModified;
+        volatile Map<String,String> tags;
+
+        Blob(long length, byte[] contentMd5, String etag, Map<String,String> tags)
+        {
+            this.length = length;
+            this.contentMd5 = contentMd5;
+            this.etag = etag;
+            this.lastModified = OffsetDateTime.now();
+            this.tags = tags == null ? new HashMap<>() : new HashMap<>(tags);
+        }
+    }
+
+    /** What happens to a request: when it arrived on the simulated clock, how long it takes, the status it fails
+     * with, 0 if it succeeds, and the wait asked for when throttled */
+    private static final class Admission
+    {
+        final long arrivedNanos;
+        final long delayNanos;
+        final int status;
+        final long retryAfterNanos;
+
+        Admission(long arrivedNanos, long delayNanos, int status, long retryAfterNanos)
+        {
+            this.arrivedNanos = arrivedNanos;
+            this.delayNanos = delayNanos;
+            this.status = status;
+            this.retryAfterNanos = retryAfterNanos;
+        }
+    }
+
+    /** Operation of a request in flight, with its outcome once run */
+    private static final class Exchange
+    {
+        final long bytes;
+        final Supplier<? extends Mono<?>> operation;
+        volatile Object result;
+        volatile Throwable error;
+
+        Exchange(long bytes, Supplier<? extends Mono<?>> operation)
+        {
+            this.bytes = bytes;
+            this.operation = operation;
+        }
+    }
+
+    private final Map<String,ConcurrentSkipListMap<String,Blob>> containers = new ConcurrentHashMap<>();
+    private final AtomicLong etags = new AtomicLong();
+    private final Random random;
+    private long latencyNanos;
+    private long jitterNanos;
+    private double requestRate;
+    private double requestTokens;
+    //simulated time, in nanoseconds from the creation of the account
+    private long clock;
+    private long refilledAt;
+    private long bytesPerSecond;
+    //simulated time the shared bandwidth is taken until by transfers already admitted
+    private long bandwidthFreeAt;
+    private double failureRate;
+    private volatile int pageSize = DEFAULT_PAGE_SIZE;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger throttled = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    //requests in flight by x-ms-client-request-id
+    private final Map<String,Exchange> exchanges = new ConcurrentHashMap<>();
+    private final AtomicLong requestIds = new AtomicLong();
+    private volatile HttpPipeline pipeline = new HttpPipelineBuilder().httpClient(this::respond).build();
+
+    /** Creates an account answering at once, without limits or faults
+     */
+    public InMemoryBlobBackend()
+    {
+        this(0);
+    }
+
+    /** Constructor
+     * @param seed long seeding latency jitter and injected faults
+     */
+    public InMemoryBlobBackend(long seed)
+    {
+        this.random = new Random(seed);
+    }
+
+    /** Sets time every request takes
+     * @param latency Duration every request takes at least
+     * @param jitter Duration of random extra time, up to which is added to each request
+     * @return this backend
+     */
+    public synchronized InMemoryBlobBackend setLatency(Duration latency, Duration jitter)
+    {
+        this.latencyNanos = latency.toNanos();
+        this.jitterNanos = jitter.toNanos();
+        return this;
+    }
+
+    /** Sets request rate of the account, above which requests fail with 503 Server Busy
+     * @param requestsPerSecond requests accepted per second, 0 for no limit
+     * @return this backend
+     */
+    public synchronized InMemoryBlobBackend setRequestRateLimit(double requestsPerSecond)
+    {
+        this.requestRate = requestsPerSecond;
+        this.requestTokens = requestsPerSecond;
+        return this;
+    }
+
+    /** Sets bandwidth shared by uploads and copies; a transfer takes its share of it on top of its latency
+     * @param bytesPerSecond bytes transferred per second, 0 for no limit
+     * @return this backend
+     */
+    public synchronized InMemoryBlobBackend setBandwidth(long bytesPerSecond)
+    {
+        this.bytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    /** Sets share of requests failing with 500 Internal Error
+     * @param failureRate double between 0 and 1
+     * @return this backend
+     */
+    public synchronized InMemoryBlobBackend setFailureRate(double failureRate)
+    {
+        this.failureRate = failureRate;
+        return this;
+    }
+
+    /** Sets policies every request passes through before reaching the account, in the order given,
+     * as they would in the pipeline of an Azure client
+     * @param policies HttpPipelinePolicy instances, ie: a RateGovernor and a MetricsPolicy
+     * @return this backend
+     */
+    public InMemoryBlobBackend setPolicies(HttpPipelinePolicy... policies)
+    {
+        this.pipeline = new HttpPipelineBuilder().httpClient(this::respond).policies(policies).build();
+        return this;
+    }
+
+    /** @return simulated time elapsed since the account was created
+     */
+    public synchronized Duration getElapsed()
+    {
+        return Duration.ofNanos(clock);
+    }
+
+    /** Sets number of blobs per listing page
+     * @param pageSize number of blobs
+     * @return this backend
+     */
+    public InMemoryBlobBackend setPageSize(int pageSize)
+    {
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    /** @return number of requests received
+     */
+    public int getRequests()
+    {
+        return requests.get();
+    }
+
+    /** @return number of requests refused with 503 Server Busy
+     */
+    public int getThrottled()
+    {
+        return throttled.get();
+    }
+
+    /** @return number of requests failed with an injected 500 error
+     */
+    public int getFailed()
+    {
+        return failed.get();
+    }
+
+    /** Counts blobs in a container
+     * @param container String representing container name
+     * @return number of blobs, 0 if container does not exist
+     */
+    public int size(String container)
+    {
+        Map<String,Blob> blobs = containers.get(container);
+        return blobs == null ? 0 : blobs.size();
+    }
+
+    @Override
+    public Flux<String> listContainers(String prefix)
+    {
+        return request(HttpMethod.GET, null, null, "comp=list", 0, null, () -> {
+            List<String> names = new ArrayList<>();
+            containers.keySet().stream().filter(c -> prefix == null || c.startsWith(prefix)).sorted().forEach(names::add);
+            return Mono.just(names);
+        }).flatMapIterable(names -> names);
+    }
+
+    @Override
+    public Mono<Boolean> containerExists(String container)
+    {
+        return request(HttpMethod.GET, container, null, "restype=container", 0, null,
+            () -> Mono.just(containers.containsKey(container)));
+    }
+
+    @Override
+    public Mono<Void> createContainer(String container)
+    {
+        return request(HttpMethod.PUT, container, null, "restype=container", 0, null,
+            () -> containers.putIfAbsent(container, new ConcurrentSkipListMap<>()) == null
+            ? Mono.<Void>empty()
+            : Mono.<Void>error(error(409, BlobErrorCode.CONTAINER_ALREADY_EXISTS, "The specified container already exists.")));
+    }
+
+    @Override
+    public Flux<Page> listBlobs(String container, String continuationToken)
+    {
+        return page(container, continuationToken)
+            .expand(page -> page.getContinuationToken() == null ? Mono.empty() : page(container, page.getContinuationToken()));
+    }
+
+    /** Lists one page of blobs, in name order like the service
+     * @param container String representing container name
+     * @param from String name of first blob of page, null to start from the first blob
+     * @return Mono emitting page, whose continuation token is the name of the first blob of the next page
+     */
+    private Mono<Page> page(String container, String from)
+    {
+        return request(HttpMethod.GET, container, null, "restype=container&comp=list", 0, null, () -> {
+            ConcurrentSkipListMap<String,Blob> blobs = containers.get(container);
+            if (blobs == null)
+            {
+                return Mono.error(containerNotFound());
+            }
+            List<BlobRecord> records = new ArrayList<>();
+            String next = null;
+            for (Map.Entry<String,Blob> e : (from == null ? blobs : blobs.tailMap(from, true)).entrySet())
+            {
+                if (records.size() == pageSize)
+                {
+                    next = e.getKey();
+                    break;
+                }
+                Blob blob = e.getValue();
+                records.add(new BlobRecord(e.getKey(), new BlobItemProperties()
+                    .setETag(blob.etag)
+                    .setLastModified(blob.lastModified)
+                    .setContentLength(blob.length)
+                    .setContentMd5(blob.contentMd5), new HashMap<>(blob.tags)));
+            }
+            return Mono.just(new Page(records, next));
+        });
+    }
+
+    @Override
+    public Mono<Map<String,String>> getTags(String container, String blobName)
+    {
+        return request(HttpMethod.GET, container, blobName, "comp=tags", 0, null,
+            () -> blob(container, blobName).map(blob -> new HashMap<>(blob.tags)));
+    }
+
+    @Override
+    public Mono<Void> setTags(String container, String blobName, Map<String,String> tags, String ifTags)
+    {
+        return request(HttpMethod.PUT, container, blobName, "comp=tags", 0, headers("x-ms-if-tags", ifTags),
+            () -> blob(container, blobName).flatMap(blob -> {
+                Map<String,String> conditions = ifTags == null ? null : parse(ifTags);
+                synchronized (blob)
+                {
+                    if (conditions != null && !matches(conditions, container, blob.tags))
+                    {
+                        return Mono.error(error(412, BlobErrorCode.CONDITION_NOT_MET,
+                            "The condition specified using HTTP conditional header(s) is not met."));
+                    }
+                    blob.tags = new HashMap<>(tags);
+                }
+                return Mono.<Void>empty();
+            }));
+    }
+
+    @Override
+    public Mono<Void> upload(String container, String blobName, Path file, Map<String,String> tags, byte[] contentMd5)
+    {
+        return Mono.defer(() -> {
+            long size;
+            try
+            {
+                size = Files.size(file);
+            }
+            catch (IOException e)
+            {
+                return Mono.error(e);
+            }
+            //like the service, stores the MD5 of the content when none is given
+            byte[] md5 = contentMd5;
+            if (md5 == null)
+            {
+                try
+                {
+                    md5 = DeltaSync.md5(file);
+                }
+                catch (IOException e)
+                {
+                    return Mono.error(e);
+                }
+            }
+            byte[] stored = md5;
+            return request(HttpMethod.PUT, container, blobName, null, size, null,
+                () -> put(container, blobName, new Blob(size, stored, nextEtag(), tags)));
+        });
+    }
+
+    @Override
+    public Mono<Void> copy(String sourceContainer, String sourceBlob, String container, String blobName,
+        Map<String,String> tags)
+    {
+        return blob(sourceContainer, sourceBlob)
+            .flatMap(source -> request(HttpMethod.PUT, container, blobName, null, source.length,
+                headers("x-ms-copy-source", url(sourceContainer, sourceBlob, null)),
+                () -> put(container, blobName, new Blob(source.length, source.contentMd5, nextEtag(), tags))));
+    }
+
+    @Override
+    public Mono<Void> deleteIfMatch(String container, String blobName, String etag)
+    {
+        return request(HttpMethod.DELETE, container, blobName, null, 0, headers("If-Match", etag),
+            () -> blob(container, blobName).flatMap(blob -> {
+                if (etag != null && !etag.equals(blob.etag))
+                {
+                    return Mono.error(error(412, BlobErrorCode.CONDITION_NOT_MET,
+                        "The condition specified using HTTP conditional header(s) is not met."));
+                }
+                containers.get(container).remove(blobName, blob);
+                return Mono.<Void>empty();
+            }));
+    }
+
+    @Override
+    public Flux<TaggedBlobItem> findBlobsByTags(String query)
+    {
+        return request(HttpMethod.GET, null, null, "comp=blobs", 0, null, () -> {
+            Map<String,String> conditions = parse(query);
+            List<TaggedBlobItem> found = new ArrayList<>();
+            containers.forEach((container, blobs) -> blobs.forEach((name, blob) -> {
+                if (matches(conditions, container, blob.tags))
+                {
+                    found.add(new TaggedBlobItem(container, name, new HashMap<>(blob.tags)));
+                }
+            }));
+            return Mono.just(found);
+        }).flatMapIterable(found -> found);
+    }
+
+    private Mono<Void> put(String container, String blobName, Blob blob)
+    {
+        Map<String,Blob> blobs = containers.get(container);
+        if (blobs == null)
+        {
+            return Mono.error(containerNotFound());
+        }
+        blobs.put(blobName, blob);
+        return Mono.empty();
+    }
+
+    private Mono<Blob> blob(String container, String blobName)
+    {
+        return Mono.defer(() -> {
+            Map<String,Blob> blobs = containers.get(container);
+            if (blobs == null)
+            {
+                return Mono.error(containerNotFound());
+            }
+            Blob blob = blobs.get(blobName);
+            return blob == null
+                ? Mono.error(error(404, BlobErrorCode.BLOB_NOT_FOUND, "The specified blob does not exist."))
+                : Mono.just(blob);
+        });
+    }
+
+    private String nextEtag()
+    {
+        return String.format("\"0x%X\"", etags.incrementAndGet());
+    }
+
+    /** Sends the request of an operation through the pipeline; the operation runs once the request reaches the
+     * account and has waited out its latency and transfer time, unless the request is throttled or picked to fail
+     * @param method HttpMethod of the service's request for the operation
+     * @param container String representing container name, null for account operations
+     * @param blobName String representing blob name, null for account and container operations
+     * @param query String representing query of the service's request, null if none
+     * @param bytes number of bytes transferred by request
+     * @param headers HttpHeaders of the service's request, null if none
+     * @param operation Supplier of the operation's result
+     * @return Mono of operation's result
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Mono<T> request(HttpMethod method, String container, String blobName, String query, long bytes,
+        HttpHeaders headers, Supplier<Mono<T>> operation)
+    {
+        return Mono.defer(() -> {
+            String id = Long.toString(requestIds.incrementAndGet());
+            HttpRequest request = new HttpRequest(method, url(container, blobName, query))
+                .setHeaders(headers == null ? new HttpHeaders() : headers);
+            request.setHeader("x-ms-client-request-id", id);
+            if (bytes > 0)
+            {
+                request.setHeader("Content-Length", Long.toString(bytes));
+            }
+            Exchange exchange = new Exchange(bytes, operation);
+            exchanges.put(id, exchange);
+            return pipeline.send(request)
+                .flatMap(response -> {
+                    if (exchange.error != null)
+                    {
+                        return Mono.error(exchange.error);
+                    }
+                    if (response.getStatusCode() >= 400)
+                    {
+                        return Mono.error(error(response));
+                    }
+                    return Mono.justOrEmpty((T) exchange.result);
+                })
+                .doFinally(signal -> exchanges.remove(id));
+        });
+    }
+
+    /** Answers a request as the account would, running its operation unless it is throttled or picked to fail
+     * @param request HttpRequest sent through the pipeline
+     * @return Mono emitting the response once the request's latency and transfer time have passed
+     */
+    private Mono<HttpResponse> respond(HttpRequest request)
+    {
+        return Mono.defer(() -> {
+            requests.incrementAndGet();
+            Exchange exchange = exchanges.get(request.getHeaders().getValue("x-ms-client-request-id"));
+            Admission admission = admit(exchange.bytes);
+            Mono<HttpResponse> response;
+            if (admission.status == 503)
+            {
+                throttled.incrementAndGet();
+                response = Mono.just(throttledResponse(request, admission.retryAfterNanos));
+            }
+            else if (admission.status == 500)
+            {
+                failed.incrementAndGet();
+                response = Mono.just(new Response(request, 500, BlobErrorCode.INTERNAL_ERROR));
+            }
+            else
+            {
+                response = Mono.defer(exchange.operation)
+                    .doOnNext(result -> exchange.result = result)
+                    .then(Mono.<HttpResponse>fromCallable(() -> new Response(request, 200, null)))
+                    .onErrorResume(BlobStorageException.class, e -> {
+                        exchange.error = e;
+                        return Mono.just(new Response(request, e.getStatusCode(), e.getErrorCode()));
+                    });
+            }
+            //a throttled client is expected to wait for as long as it was asked to before sending again
+            long took = Math.max(admission.delayNanos, admission.retryAfterNanos);
+            Mono<HttpResponse> answered = response.doOnNext(r -> advance(admission.arrivedNanos + took));
+            return admission.delayNanos <= 0 ? answered : Mono.delay(Duration.ofNanos(admission.delayNanos)).then(answered);
+        });
+    }
+
+    /** Moves the simulated clock on to a time, unless it is already past it
+     * @param nanos long simulated time
+     */
+    private synchronized void advance(long nanos)
+    {
+        clock = Math.max(clock, nanos);
+    }
+
+    /** Decides latency and outcome of a request arriving now on the simulated clock
+     * @param bytes number of bytes transferred by request
+     * @return Admission of request
+     */
+    private synchronized Admission admit(long bytes)
+    {
+        long now = clock;
+        long delay = latencyNanos + (jitterNanos > 0 ? (long) (random.nextDouble() * jitterNanos) : 0);
+        if (requestRate > 0)
+        {
+            //one second of requests may build up while idle
+            requestTokens = Math.min(requestRate, requestTokens + (now - refilledAt) / 1e9 * requestRate);
+            refilledAt = now;
+            if (requestTokens < 1)
+            {
+                return new Admission(now, delay, 503, (long) Math.ceil((1 - requestTokens) / requestRate * 1e9));
+            }
+            requestTokens--;
+        }
+        if (failureRate > 0 && random.nextDouble() < failureRate)
+        {
+            return new Admission(now, delay, 500, 0);
+        }
+        if (bytesPerSecond > 0 && bytes > 0)
+        {
+            bandwidthFreeAt = Math.max(bandwidthFreeAt, now) + (long) (bytes * 1e9 / bytesPerSecond);
+            delay = Math.max(delay, bandwidthFreeAt - now);
+        }
+        return new Admission(now, delay, 0, 0);
+    }
+
+    /** Builds the 503 Server Busy response of a throttled request, with the wait the account asks for
+     * @param request HttpRequest throttled
+     * @param retryAfterNanos long nanoseconds until the account accepts another request
+     * @return HttpResponse
+     */
+    private static HttpResponse throttledResponse(HttpRequest request, long retryAfterNanos)
+    {
+        Response response = new Response(request, 503, BlobErrorCode.SERVER_BUSY);
+        long millis = Math.max(1, (retryAfterNanos + 999_999) / 1_000_000);
+        response.getHeaders().set("x-ms-retry-after-ms", Long.toString(millis));
+        response.getHeaders().set("Retry-After", Long.toString((millis + 999) / 1000));
+        return response;
+    }
+
+    private static HttpHeaders headers(String name, String value)
+    {
+        HttpHeaders headers = new HttpHeaders();
+        if (value != null)
+        {
+            headers.set(name, value);
+        }
+        return headers;
+    }
+
+    /** Builds the path-style URL the emulator's request for an operation is sent to,
+     * ie: http://127.0.0.1:10000/devstoreaccount1/container/blob?comp=tags
+     * @param container String representing container name, null for account operations
+     * @param blobName String representing blob name, null for account and container operations
+     * @param query String representing query, null if none
+     * @return String representing URL
+     */
+    private static String url(String container, String blobName, String query)
+    {
+        StringBuilder url = new StringBuilder(ACCOUNT_URL);
+        if (container != null)
+        {
+            url.append(encode(container));
+        }
+        if (blobName != null)
+        {
+            url.append('/').append(encode(blobName).replace("%2F", "/"));
+        }
+        if (query != null)
+        {
+            url.append('?').append(query);
+        }
+        return url.toString();
+    }
+
+    private static String encode(String name)
+    {
+        try
+        {
+            return URLEncoder.encode(name, "UTF-8").replace("+", "%20");
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Parses a tag filter expression made of equality clauses joined by AND, the form StorageService builds
+     * @param query String representing tag filter expression
+     * @return Map of tag name, or @container, to value required
+     */
+    static Map<String,String> parse(String query)
+    {
+        Map<String,String> conditions = new LinkedHashMap<>();
+        Matcher m = CLAUSE.matcher(query);
+        int at = 0;
+        //clauses are matched one after the other, as a quoted value may itself hold " AND "
+        do
+        {
+            m.region(at, query.length());
+            if (!m.lookingAt())
+            {
+                throw error(400, BlobErrorCode.INVALID_QUERY_PARAMETER_VALUE, "Unsupported tag condition: " + query.substring(at));
+            }
+            conditions.put(m.group(1) != null ? m.group(1) : CONTAINER_KEY, m.group(3).replace("''", "'"));
+            at = m.end();
+        }
+        while (at < query.length());
+        return conditions;
+    }
+
+    private static boolean matches(Map<String,String> conditions, String container, Map<String,String> tags)
+    {
+        for (Map.Entry<String,String> c : conditions.entrySet())
+        {
+            String actual = CONTAINER_KEY.equals(c.getKey()) ? container : tags.get(c.getKey());
+            if (!c.getValue().equals(actual))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static BlobStorageException containerNotFound()
+    {
+        return error(404, BlobErrorCode.CONTAINER_NOT_FOUND, "The specified container does not exist.");
+    }
+
+    /** Builds the exception the service's client raises for an error response
+     * @param status int HTTP status code
+     * @param code BlobErrorCode sent in x-ms-error-code
+     * @param message String describing error
+     * @return BlobStorageException
+     */
+    private static BlobStorageException error(int status, BlobErrorCode code, String message)
+    {
+        return new BlobStorageException(message, new Response(new HttpRequest(HttpMethod.GET, ACCOUNT_URL),
+            status, code), null);
+    }
+
+    /** Builds the exception the service's client raises for a response the account failed a request with
+     * @param response HttpResponse with error status
+     * @return BlobStorageException
+     */
+    private static BlobStorageException error(HttpResponse response)
+    {
+        String message = response.getStatusCode() == 503 ? "The server is busy."
+            : "The server encountered an internal error.";
+        return new BlobStorageException(message, response, null);
+    }
+
+    /** Response of the account, carrying its status and the error code read by BlobStorageException */
+    private static final class Response extends HttpResponse
+    {
+        private final int status;
+        private final HttpHeaders headers = new HttpHeaders();
+
+        Response(HttpRequest request, int status, BlobErrorCode code)
+        {
+            super(request);
+            this.status = status;
+            if (code != null)
+            {
+                headers.set("x-ms-error-code", code.toString());
+            }
+        }
+
+        @Override
+        public int getStatusCode()
+        {
+            return status;
+        }
+
+        @Override
+        public String getHeaderValue(String name)
+        {
+            return headers.getValue(name);
+        }
+
+        @Override
+        public HttpHeaders getHeaders()
+        {
+            return headers;
+        }
+
+        @Override
+        public Flux<ByteBuffer> getBody()
+        {
+            return Flux.empty();
+        }
+
+        @Override
+        public Mono<byte[]> getBodyAsByteArray()
+        {
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<String> getBodyAsString()
+        {
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<String> getBodyAsString(Charset charset)
+        {
+            return Mono.empty();
+        }
+    }
+}
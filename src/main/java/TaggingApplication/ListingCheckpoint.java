@@ -0,0 +1,76 @@
+package TaggingApplication;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/** Continuation token of the last listing page fully processed by an operation, kept in a local file
+ * so an interrupted operation resumes from the next page instead of the start of the container
+ * @author Charlene Pang
+ */
+public class ListingCheckpoint
+{
+    private final Path file;
+
+    /** Constructor
+     * @param file Path of file holding the continuation token
+     */
+    public ListingCheckpoint(Path file)
+    {
+        this.file = file;
+    }
+
+    /** @return continuation token saved by an interrupted run, null to start from the first page
+     */
+    public String load()
+    {
+        try
+        {
+            if (Files.exists(file))
+            {
+                String token = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+                System.out.println("Resuming listing from checkpoint " + file);
+                return token.isEmpty() ? null : token;
+            }
+        }
+        catch (IOException e)
+        {
+            System.out.println("Could not read checkpoint " + file + " : " + e);
+        }
+        return null;
+    }
+
+    /** Records that all pages up to the given token have been processed
+     * @param token String continuation token of next page to be processed
+     */
+    public void save(String token)
+    {
+        try
+        {
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, token.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            System.out.println("Could not write checkpoint " + file + " : " + e);
+        }
+    }
+
+    /** Removes checkpoint once operation has processed every page
+     */
+    public void clear()
+    {
+        try
+        {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException e)
+        {
+            System.out.println("Could not remove checkpoint " + file + " : " + e);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package TaggingApplication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import reactor.core.publisher.Flux;
+
+/** Reads local files as memory-mapped blocks. The blocks are views of the page cache, so file contents
+ * reach a digest, or the HTTP client's own send buffers, without first being read into heap buffers.
+ * @author Charlene Pang
+ */
+public final class MappedFile
+{
+    private MappedFile()
+    {
+    }
+
+    /** Maps a file one block at a time, as blocks are requested. Mapping per block keeps every mapping
+     * below the 2 GB limit of a single buffer and leaves unread parts of the file unmapped.
+     * @param file Path of local file
+     * @param size long number of bytes of file to be read
+     * @param blockSize long number of bytes per block
+     * @return Flux of read-only buffers covering the file in order
+     */
+    public static Flux<ByteBuffer> blocks(Path file, long size, long blockSize)
+    {
+        return Flux.using(() -> FileChannel.open(file, StandardOpenOption.READ),
+            channel -> Flux.<ByteBuffer,Long>generate(() -> 0L, (position, sink) -> {
+                if (position >= size)
+                {
+                    sink.complete();
+                    return position;
+                }
+                long length = Math.min(blockSize, size - position);
+                try
+                {
+                    sink.next(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+                }
+                catch (IOException e)
+                {
+                    sink.error(e);
+                }
+                return position + length;
+            }),
+            //mappings stay valid once the channel is closed
+            channel -> {
+                try
+                {
+                    channel.close();
+                }
+                catch (IOException e)
+                {
+                    System.out.println("Could not close " + file + " : " + e);
+                }
+            });
+    }
+}
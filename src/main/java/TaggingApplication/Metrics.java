@@ -0,0 +1,407 @@
+package TaggingApplication;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+/** Counts and latencies of storage requests by operation and container, and durations of the jobs that sent them.
+ * Recording is lock-free: counters are striped adders and latencies go into fixed log-scaled buckets,
+ * so it costs a few atomic increments per request and can be left on for every job.
+ * Percentiles are read from the buckets and are accurate to within about 10%.
+ * @author Charlene Pang
+ */
+public class Metrics
+{
+    /** Format of a metrics dump */
+    public enum Format
+    {
+        JSON, PROMETHEUS
+    }
+
+    /** Counters of one operation on one container */
+    public static final class Stats
+    {
+        private final String operation;
+        private final String container;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private final Map<Integer,LongAdder> statusCodes = new ConcurrentHashMap<>();
+        private final Histogram latency = new Histogram();
+
+        Stats(String operation, String container)
+        {
+            this.operation = operation;
+            this.container = container;
+        }
+
+        /** Records a request that got a response
+         * @param status HTTP status code of response
+         * @param nanos latency in nanoseconds
+         * @param sent number of bytes in request body
+         * @param received number of bytes in response body
+         * @param retry true if the request was a retry of an earlier attempt
+         */
+        void response(int status, long nanos, long sent, long received, boolean retry)
+        {
+            count.increment();
+            statusCodes.computeIfAbsent(status, s -> new LongAdder()).increment();
+            bytesSent.add(sent);
+            bytesReceived.add(received);
+            if (retry)
+            {
+                retries.increment();
+            }
+            latency.record(nanos);
+        }
+
+        /** Records a request that failed without a response, ie: a timeout or a broken connection
+         * @param nanos time until failure in nanoseconds
+         * @param retry true if the request was a retry of an earlier attempt
+         */
+        void error(long nanos, boolean retry)
+        {
+            count.increment();
+            errors.increment();
+            if (retry)
+            {
+                retries.increment();
+            }
+            latency.record(nanos);
+        }
+
+        /** Records duration of a job
+         * @param nanos duration in nanoseconds
+         */
+        void duration(long nanos)
+        {
+            count.increment();
+            latency.record(nanos);
+        }
+
+        public String getOperation()
+        {
+            return operation;
+        }
+
+        public String getContainer()
+        {
+            return container;
+        }
+
+        public long getCount()
+        {
+            return count.sum();
+        }
+
+        /** Gets latency at a quantile
+         * @param quantile double between 0 and 1, ie: 0.99
+         * @return latency in milliseconds
+         */
+        public double getLatencyMillis(double quantile)
+        {
+            return latency.quantile(quantile) / 1e6;
+        }
+
+        public double getMaxLatencyMillis()
+        {
+            return latency.max.get() / 1e6;
+        }
+
+        /** Gets latencies of all requests added together, to work out a mean over any interval
+         * @return total latency in milliseconds
+         */
+        public double getTotalLatencyMillis()
+        {
+            return latency.sum.sum() / 1e6;
+        }
+    }
+
+    /** Timer of a job, recorded when closed */
+    public final class Timer implements AutoCloseable
+    {
+        private final Stats stats;
+        private final long start = System.nanoTime();
+
+        private Timer(Stats stats)
+        {
+            this.stats = stats;
+        }
+
+        @Override
+        public void close()
+        {
+            stats.duration(System.nanoTime() - start);
+            printSummary();
+        }
+    }
+
+    /** Latencies counted in buckets that double in width every 4 buckets */
+    private static final class Histogram
+    {
+        private static final int SUB_BUCKETS = 4;
+        private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+        private final LongAdder total = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+
+        void record(long nanos)
+        {
+            long value = Math.max(1, nanos);
+            buckets.incrementAndGet(bucket(value));
+            max.accumulate(value);
+            total.increment();
+            sum.add(value);
+        }
+
+        private static int bucket(long value)
+        {
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            if (exponent < 2)
+            {
+                return (int) value;
+            }
+            return exponent * SUB_BUCKETS + (int) ((value >> (exponent - 2)) & (SUB_BUCKETS - 1));
+        }
+
+        /** Upper bound of values in a bucket
+         * @param bucket int index of bucket
+         * @return long largest value counted in bucket
+         */
+        private static long upperBound(int bucket)
+        {
+            int exponent = bucket / SUB_BUCKETS;
+            if (exponent < 2)
+            {
+                return bucket;
+            }
+            long width = 1L << (exponent - 2);
+            return ((long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - 2)) + width - 1;
+        }
+
+        long quantile(double quantile)
+        {
+            long n = total.sum();
+            if (n == 0)
+            {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * n));
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++)
+            {
+                seen += buckets.get(i);
+                if (seen >= rank)
+                {
+                    return Math.min(upperBound(i), max.get());
+                }
+            }
+            return max.get();
+        }
+    }
+
+    private final Map<String,Stats> requests = new ConcurrentHashMap<>();
+    private final Map<String,Stats> jobs = new ConcurrentHashMap<>();
+    private final Instant started = Instant.now();
+
+    /** Gets counters of an operation on a container
+     * @param operation String naming operation, ie: setTags
+     * @param container String representing container name, empty for account operations
+     * @return Stats of operation on container
+     */
+    public Stats request(String operation, String container)
+    {
+        return requests.computeIfAbsent(operation + "/" + container, k -> new Stats(operation, container));
+    }
+
+    /** Starts timing a job. Closing the timer records its duration and prints a summary of all requests so far,
+     * of earlier jobs as well as this one.
+     * @param job String naming job, ie: uploadFolder
+     * @param container String representing container the job works on, empty if several
+     * @return Timer to be closed when job ends
+     */
+    public Timer time(String job, String container)
+    {
+        String name = container == null ? "" : container;
+        return new Timer(jobs.computeIfAbsent(job + "/" + name, k -> new Stats(job, name)));
+    }
+
+    /** Prints requests, retries, failures, bytes and latencies of every operation, counted over all jobs
+     * since these Metrics were created
+     */
+    public void printSummary()
+    {
+        System.out.println("Storage requests of all jobs since " + started + ":");
+        for (Stats s : sorted(requests).values())
+        {
+            long failed = s.errors.sum();
+            for (Map.Entry<Integer,LongAdder> e : s.statusCodes.entrySet())
+            {
+                failed += e.getKey() >= 400 ? e.getValue().sum() : 0;
+            }
+            System.out.println(String.format("  %-16s %-24s %8d requests %6d retries %6d failed %10d B sent %10d B received"
+                + "  p50 %.1f ms  p99 %.1f ms  max %.1f ms",
+                s.operation, s.container, s.getCount(), s.retries.sum(), failed, s.bytesSent.sum(), s.bytesReceived.sum(),
+                s.getLatencyMillis(0.5), s.getLatencyMillis(0.99), s.getMaxLatencyMillis()));
+        }
+        for (Stats s : sorted(jobs).values())
+        {
+            System.out.println(String.format("  job %-12s %-24s %8d runs, longest %.1f s",
+                s.operation, s.container, s.getCount(), s.getMaxLatencyMillis() / 1000));
+        }
+    }
+
+    /** Writes all metrics to a file, replacing it in one step so readers never see a partial dump
+     * @param file Path of file to be written
+     * @param format Format of dump
+     * @throws IOException if file cannot be written
+     */
+    public void dump(Path file, Format format) throws IOException
+    {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8))
+        {
+            if (format == Format.JSON)
+            {
+                writeJson(out);
+            }
+            else
+            {
+                writePrometheus(out);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Dumps metrics to a file at a fixed interval, ie: for a node exporter's textfile collector to pick up
+     * @param file Path of file to be written
+     * @param format Format of dump
+     * @param interval Duration between dumps
+     * @return Disposable stopping the dumps
+     */
+    public Disposable dumpEvery(Path file, Format format, Duration interval)
+    {
+        return Flux.interval(interval, interval, Schedulers.boundedElastic())
+            .subscribe(tick -> {
+                try
+                {
+                    dump(file, format);
+                }
+                catch (IOException e)
+                {
+                    System.out.println("Could not write metrics to " + file + " : " + e);
+                }
+            });
+    }
+
+    private void writeJson(Writer out) throws IOException
+    {
+        //counts are cumulative since the start time, across jobs
+        out.write("{\"since\": \"" + started + "\",\n\"requests\": [");
+        writeJson(out, sorted(requests));
+        out.write("],\n\"jobs\": [");
+        writeJson(out, sorted(jobs));
+        out.write("]}\n");
+    }
+
+    private static void writeJson(Writer out, Map<String,Stats> stats) throws IOException
+    {
+        String separator = "\n";
+        for (Stats s : stats.values())
+        {
+            StringBuilder codes = new StringBuilder();
+            new TreeMap<>(s.statusCodes).forEach((code, n) ->
+                codes.append(codes.length() == 0 ? "" : ", ").append('"').append(code).append("\": ").append(n.sum()));
+            out.write(separator);
+            out.write(String.format(Locale.ROOT, "  {\"operation\": \"%s\", \"container\": \"%s\", \"count\": %d, \"errors\": %d, "
+                + "\"retries\": %d, \"bytesSent\": %d, \"bytesReceived\": %d, \"status\": {%s}, "
+                + "\"p50Ms\": %.3f, \"p99Ms\": %.3f, \"maxMs\": %.3f}",
+                s.operation, s.container, s.getCount(), s.errors.sum(), s.retries.sum(), s.bytesSent.sum(),
+                s.bytesReceived.sum(), codes, s.getLatencyMillis(0.5), s.getLatencyMillis(0.99), s.getMaxLatencyMillis()));
+            separator = ",\n";
+        }
+        out.write("\n");
+    }
+
+    private void writePrometheus(Writer out) throws IOException
+    {
+        Map<String,Stats> sortedRequests = sorted(requests);
+        //counters and summaries are cumulative since the start time, across jobs
+        out.write("# TYPE storage_metrics_start_time_seconds gauge\n");
+        out.write(String.format(Locale.ROOT, "storage_metrics_start_time_seconds %.3f\n", started.toEpochMilli() / 1000.0));
+        out.write("# TYPE storage_requests_total counter\n");
+        for (Stats s : sortedRequests.values())
+        {
+            for (Map.Entry<Integer,LongAdder> e : new TreeMap<>(s.statusCodes).entrySet())
+            {
+                out.write(String.format(Locale.ROOT, "storage_requests_total{%s,status=\"%d\"} %d\n", labels(s), e.getKey(), e.getValue().sum()));
+            }
+            if (s.errors.sum() > 0)
+            {
+                out.write(String.format(Locale.ROOT, "storage_requests_total{%s,status=\"error\"} %d\n", labels(s), s.errors.sum()));
+            }
+        }
+        counter(out, "storage_request_retries_total", sortedRequests, s -> s.retries.sum());
+        counter(out, "storage_request_sent_bytes_total", sortedRequests, s -> s.bytesSent.sum());
+        counter(out, "storage_request_received_bytes_total", sortedRequests, s -> s.bytesReceived.sum());
+        summary(out, "storage_request_duration_seconds", sortedRequests, "operation");
+        summary(out, "storage_job_duration_seconds", sorted(jobs), "job");
+    }
+
+    private static void counter(Writer out, String name, Map<String,Stats> stats,
+        ToLongFunction<Stats> value) throws IOException
+    {
+        out.write("# TYPE " + name + " counter\n");
+        for (Stats s : stats.values())
+        {
+            out.write(String.format(Locale.ROOT, "%s{%s} %d\n", name, labels(s), value.applyAsLong(s)));
+        }
+    }
+
+    private static void summary(Writer out, String name, Map<String,Stats> stats, String label) throws IOException
+    {
+        out.write("# TYPE " + name + " summary\n");
+        for (Stats s : stats.values())
+        {
+            String labels = String.format(Locale.ROOT, "%s=\"%s\",container=\"%s\"", label, escape(s.operation), escape(s.container));
+            out.write(String.format(Locale.ROOT, "%s{%s,quantile=\"0.5\"} %.6f\n", name, labels, s.getLatencyMillis(0.5) / 1000));
+            out.write(String.format(Locale.ROOT, "%s{%s,quantile=\"0.99\"} %.6f\n", name, labels, s.getLatencyMillis(0.99) / 1000));
+            out.write(String.format(Locale.ROOT, "%s{%s,quantile=\"1\"} %.6f\n", name, labels, s.getMaxLatencyMillis() / 1000));
+            out.write(String.format(Locale.ROOT, "%s_sum{%s} %.6f\n", name, labels, s.getTotalLatencyMillis() / 1000));
+            out.write(String.format(Locale.ROOT, "%s_count{%s} %d\n", name, labels, s.getCount()));
+        }
+    }
+
+    private static String labels(Stats s)
+    {
+        return String.format(Locale.ROOT, "operation=\"%s\",container=\"%s\"", escape(s.operation), escape(s.container));
+    }
+
+    private static String escape(String value)
+    {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static Map<String,Stats> sorted(Map<String,Stats> stats)
+    {
+        return new TreeMap<>(stats);
+    }
+}
@@ -0,0 +1,168 @@
+package TaggingApplication;
+
+import com.azure.core.http.HttpMethod;
+import com.azure.core.http.HttpPipelineCallContext;
+import com.azure.core.http.HttpPipelineNextPolicy;
+import com.azure.core.http.HttpPipelinePosition;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import reactor.core.publisher.Mono;
+
+/** Records every request sent to the storage account in Metrics: its operation, container, status code, bytes
+ * and latency. Runs once per attempt, after the rate governor, so latencies are those of the service and
+ * retries of the SDK's retry policy are counted as such.
+ * @author Charlene Pang
+ */
+public class MetricsPolicy implements HttpPipelinePolicy
+{
+    //number of attempts of a call so far, kept in the call's context across retries
+    private static final String ATTEMPT = "metrics-attempt";
+
+    private final Metrics metrics;
+
+    /** Constructor
+     * @param metrics Metrics requests are recorded in
+     */
+    public MetricsPolicy(Metrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public HttpPipelinePosition getPipelinePosition()
+    {
+        return HttpPipelinePosition.PER_RETRY;
+    }
+
+    @Override
+    public Mono<HttpResponse> process(HttpPipelineCallContext context, HttpPipelineNextPolicy next)
+    {
+        int attempt = (Integer) context.getData(ATTEMPT).orElse(0) + 1;
+        context.setData(ATTEMPT, attempt);
+        HttpRequest request = context.getHttpRequest();
+        Metrics.Stats stats = metrics.request(operation(request), container(request));
+        long sent = length(request.getHeaders().getValue("Content-Length"));
+        boolean retry = attempt > 1;
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return next.process()
+                .doOnNext(response -> stats.response(response.getStatusCode(), System.nanoTime() - start, sent,
+                    length(response.getHeaderValue("Content-Length")), retry))
+                .doOnError(e -> stats.error(System.nanoTime() - start, retry));
+        });
+    }
+
+    /** Names the storage operation of a request from its method, query and headers
+     * @param request HttpRequest sent
+     * @return String naming operation, ie: setTags
+     */
+    static String operation(HttpRequest request)
+    {
+        String query = request.getUrl().getQuery();
+        String comp = parameter(query, "comp");
+        boolean container = "container".equals(parameter(query, "restype"));
+        HttpMethod method = request.getHttpMethod();
+        if ("tags".equals(comp))
+        {
+            return method == HttpMethod.PUT ? "setTags" : "getTags";
+        }
+        if ("list".equals(comp))
+        {
+            return container ? "listBlobs" : "listContainers";
+        }
+        if ("blobs".equals(comp))
+        {
+            return "findBlobsByTags";
+        }
+        if ("block".equals(comp))
+        {
+            return "putBlock";
+        }
+        if ("blocklist".equals(comp))
+        {
+            return "putBlockList";
+        }
+        switch (method)
+        {
+            case PUT:
+                if (container)
+                {
+                    return "createContainer";
+                }
+                return request.getHeaders().getValue("x-ms-copy-source") != null ? "copy" : "upload";
+            case HEAD:
+            case GET:
+                if (container)
+                {
+                    return "getContainerProperties";
+                }
+                return method == HttpMethod.HEAD ? "getProperties" : "download";
+            case DELETE:
+                return container ? "deleteContainer" : "delete";
+            default:
+                return method + (comp == null ? "" : " " + comp);
+        }
+    }
+
+    /** Gets container a request is sent to, from the first segment of its path, or from the second for
+     * path-style URLs such as the emulator's, whose host has no account subdomain and whose path starts
+     * with the account, ie: http://127.0.0.1:10000/devstoreaccount1/container/blob
+     * @param request HttpRequest sent
+     * @return String representing container name, empty for account operations
+     */
+    static String container(HttpRequest request)
+    {
+        String path = request.getUrl().getPath();
+        int start = path.startsWith("/") ? 1 : 0;
+        if (isPathStyle(request.getUrl().getHost()))
+        {
+            int account = path.indexOf('/', start);
+            if (account < 0)
+            {
+                return "";
+            }
+            start = account + 1;
+        }
+        int end = path.indexOf('/', start);
+        return end < 0 ? path.substring(start) : path.substring(start, end);
+    }
+
+    /** Checks whether the account is named in the path rather than the host, as it is for hosts given by
+     * IP address or as localhost
+     * @param host String representing host of URL
+     * @return true if first segment of path is the account
+     */
+    private static boolean isPathStyle(String host)
+    {
+        return "localhost".equalsIgnoreCase(host) || host.startsWith("[") || host.matches("[0-9.]+");
+    }
+
+    private static String parameter(String query, String name)
+    {
+        if (query == null)
+        {
+            return null;
+        }
+        for (String pair : query.split("&"))
+        {
+            if (pair.startsWith(name + "="))
+            {
+                return pair.substring(name.length() + 1);
+            }
+        }
+        return null;
+    }
+
+    private static long length(String value)
+    {
+        try
+        {
+            return value == null ? 0 : Long.parseLong(value);
+        }
+        catch (NumberFormatException e)
+        {
+            return 0;
+        }
+    }
+}
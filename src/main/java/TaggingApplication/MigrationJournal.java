@@ -0,0 +1,339 @@
+package TaggingApplication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Append-only local record of the work a job has completed: uploads and copies, each with a
+ * fingerprint of its source (size and modification time of a file, ETag of a blob). A rerun of the same job
+ * replays the journal and skips every step whose source is unchanged, so restarting costs only the work left.
+ * The file is compacted when superseded records outnumber live ones. A record cut short by a crash is dropped.
+ * A journal opened read-only, ie: to plan a job, only replays the file and never changes it.
+ * @author Charlene Pang
+ */
+public class MigrationJournal implements AutoCloseable
+{
+    private static final int MAGIC = 0x4a524e4c;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int MIN_COMPACTION_RECORDS = 1024;
+
+    /** Kind of step recorded */
+    public enum Step
+    {
+        UPLOAD, COPY
+    }
+
+    private final Path file;
+    private final boolean writable;
+    //fingerprint of last completed run of every step, keyed by step and source
+    private final Map<String,String> done = new ConcurrentHashMap<>();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private DataOutputStream out;
+    private int records;
+
+    /** Creates a journal that records nothing, for jobs run without one
+     */
+    private MigrationJournal()
+    {
+        this.file = null;
+        this.writable = false;
+    }
+
+    /** Opens journal, replaying records of earlier runs
+     * @param file Path of journal file, created if it does not exist
+     */
+    public MigrationJournal(Path file)
+    {
+        this(file, true);
+    }
+
+    /** Opens journal, replaying records of earlier runs
+     * @param file Path of journal file
+     * @param writable boolean, false to leave the file as it is and keep records in memory only
+     */
+    private MigrationJournal(Path file, boolean writable)
+    {
+        this.file = file;
+        this.writable = writable;
+        boolean readable = replay();
+        if (!writable)
+        {
+            return;
+        }
+        try
+        {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            if (!readable)
+            {
+                rewrite();
+            }
+            else
+            {
+                out = append();
+            }
+        }
+        catch (IOException e)
+        {
+            System.out.println("Could not open journal " + file + ", progress will not be kept : " + e);
+        }
+        if (!done.isEmpty())
+        {
+            System.out.println(String.format("Journal %s: %d completed steps from earlier runs", file, done.size()));
+        }
+    }
+
+    /** @return MigrationJournal that remembers nothing
+     */
+    public static MigrationJournal disabled()
+    {
+        return new MigrationJournal();
+    }
+
+    /** Opens journal to look up completed steps without repairing, compacting or appending to its file
+     * @param file Path of journal file, which need not exist
+     * @return MigrationJournal of earlier runs
+     */
+    public static MigrationJournal readOnly(Path file)
+    {
+        return new MigrationJournal(file, false);
+    }
+
+    /** Checks whether step was completed by an earlier run for an unchanged source, counting it as skipped if so
+     * @param step Step to be run
+     * @param key String identifying source, ie: local path or container/blob name
+     * @param fingerprint String identifying state of source, null if it cannot be read
+     * @return true if the step can be skipped
+     */
+    public boolean isDone(Step step, String key, String fingerprint)
+    {
+        if (fingerprint != null && fingerprint.equals(done.get(step + ":" + key)))
+        {
+            skipped.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /** Records completion of a step. The record reaches the file before this returns.
+     * @param step Step completed
+     * @param key String identifying source
+     * @param fingerprint String identifying state of source, null if it cannot be read, ie: the file was
+     * deleted after its upload, in which case nothing is recorded and a rerun does the step again
+     */
+    public void record(Step step, String key, String fingerprint)
+    {
+        if (file == null || fingerprint == null)
+        {
+            return;
+        }
+        done.put(step + ":" + key, fingerprint);
+        synchronized (this)
+        {
+            if (out == null)
+            {
+                return;
+            }
+            try
+            {
+                out.writeByte(step.ordinal());
+                out.writeUTF(key);
+                out.writeUTF(fingerprint);
+                out.flush();
+                records++;
+                if (records >= MIN_COMPACTION_RECORDS && records > 2 * done.size())
+                {
+                    out.close();
+                    rewrite();
+                }
+            }
+            catch (IOException e)
+            {
+                System.out.println("Could not write journal " + file + ", progress will not be kept : " + e);
+                out = null;
+            }
+        }
+    }
+
+    /** @return number of steps skipped because an earlier run completed them
+     */
+    public int getSkipped()
+    {
+        return skipped.get();
+    }
+
+    /** Fingerprint of a local file
+     * @param path Path of file
+     * @return String made of size and last modification time, null if file cannot be read
+     */
+    public static String fingerprint(Path path)
+    {
+        try
+        {
+            return Files.size(path) + "-" + Files.getLastModifiedTime(path).toMillis();
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+    /** Reads records of earlier runs; a later record of a step replaces an earlier one
+     * @return false if there is no journal file in a known format to append to
+     */
+    private boolean replay()
+    {
+        if (!Files.exists(file))
+        {
+            return false;
+        }
+        Step[] steps = Step.values();
+        long valid = HEADER_BYTES;
+        boolean header = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            {
+                System.out.println("Ignoring journal in unknown format: " + file);
+                return false;
+            }
+            header = true;
+            while (true)
+            {
+                int step;
+                try
+                {
+                    step = in.readUnsignedByte();
+                }
+                catch (EOFException e)
+                {
+                    break;
+                }
+                String key = in.readUTF();
+                String fingerprint = in.readUTF();
+                done.put(steps[step] + ":" + key, fingerprint);
+                records++;
+                valid += 1 + utfLength(key) + utfLength(fingerprint);
+            }
+        }
+        catch (EOFException e)
+        {
+            if (!header)
+            {
+                return false;
+            }
+            //last record was cut short, drop it so new records follow the last whole one
+            if (writable)
+            {
+                truncate(valid);
+            }
+        }
+        catch (IOException | ArrayIndexOutOfBoundsException e)
+        {
+            System.out.println("Could not read journal " + file + " : " + e);
+            return false;
+        }
+        return true;
+    }
+
+    /** Cuts file after its last whole record
+     * @param length long number of bytes to keep
+     */
+    private void truncate(long length)
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+        {
+            channel.truncate(length);
+        }
+        catch (IOException e)
+        {
+            System.out.println("Could not repair journal " + file + " : " + e);
+        }
+    }
+
+    /** Writes live records to a new file replacing the journal in one step, then appends to it
+     * @throws IOException if the file cannot be written
+     */
+    private void rewrite() throws IOException
+    {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream compacted = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp))))
+        {
+            compacted.writeInt(MAGIC);
+            compacted.writeInt(VERSION);
+            for (Map.Entry<String,String> e : done.entrySet())
+            {
+                String key = e.getKey();
+                int colon = key.indexOf(':');
+                compacted.writeByte(Step.valueOf(key.substring(0, colon)).ordinal());
+                compacted.writeUTF(key.substring(colon + 1));
+                compacted.writeUTF(e.getValue());
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        records = done.size();
+        out = append();
+    }
+
+    private DataOutputStream append() throws IOException
+    {
+        OutputStream stream = Files.newOutputStream(file, StandardOpenOption.APPEND);
+        return new DataOutputStream(new BufferedOutputStream(stream));
+    }
+
+    /** Number of bytes writeUTF uses for a string
+     * @param s String written
+     * @return int length including its 2 byte prefix
+     */
+    private static int utfLength(String s)
+    {
+        int length = 2;
+        for (int i = 0; i < s.length(); i++)
+        {
+            char c = s.charAt(i);
+            length += (c >= 0x0001 && c <= 0x007f) ? 1 : (c <= 0x07ff ? 2 : 3);
+        }
+        return length;
+    }
+
+    /** Compacts and closes journal file
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (file == null || out == null)
+        {
+            return;
+        }
+        try
+        {
+            out.close();
+            if (records > done.size())
+            {
+                rewrite();
+                out.close();
+            }
+        }
+        catch (IOException e)
+        {
+            System.out.println("Could not compact journal " + file + " : " + e);
+        }
+        out = null;
+        if (skipped.get() > 0)
+        {
+            System.out.println(String.format("%d steps skipped, already completed by an earlier run", skipped.get()));
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package TaggingApplication;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.azure.core.http.HttpPipelineCallContext;
+import com.azure.core.http.HttpPipelineNextPolicy;
+import com.azure.core.http.HttpPipelinePosition;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import reactor.core.publisher.Mono;
+
+/** Paces every request sent to the storage account, including retries of the SDK's retry policy.
+ * Requests and uploaded bytes are drawn from token buckets. The request rate backs off multiplicatively
+ * when the service answers 503 Server Busy or 429, and creeps back up by a fixed amount per second of
+ * successful requests, so throughput settles just below the account's limit instead of oscillating into
+ * retry storms. A Retry-After sent by the service pauses all requests until it has passed.
+ * Requests wait on a timer, never on a thread.
+ * @author Charlene Pang
+ */
+public class RateGovernor implements HttpPipelinePolicy
+{
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final double MIN_RATE = 1;
+    //the rate is lowered at most once per interval, as responses to requests sent at the old rate keep arriving
+    private static final long DECREASE_INTERVAL_NANOS = Duration.ofSeconds(2).toNanos();
+
+    private volatile double maxRequestRate;
+    private volatile double increasePerSecond;
+    private double requestRate;
+    private double requestTokens;
+    private long bytesPerSecond;
+    private double byteTokens;
+    private long refilledAt = System.nanoTime();
+    private long pausedUntil = System.nanoTime();
+    private long decreasedAt = System.nanoTime() - DECREASE_INTERVAL_NANOS;
+    //requests let through in the current second, to know the rate actually reached when throttled
+    private long windowStart = System.nanoTime();
+    private int windowCount;
+    private double observedRate;
+    private final AtomicInteger throttled = new AtomicInteger();
+
+    /** Constructor
+     * @param maxRequestRate requests per second never exceeded, ie: the account's scalability target
+     * @param increasePerSecond requests per second added to the rate for every second without throttling
+     */
+    public RateGovernor(double maxRequestRate, double increasePerSecond)
+    {
+        this.maxRequestRate = maxRequestRate;
+        this.increasePerSecond = increasePerSecond;
+        this.requestRate = maxRequestRate;
+        this.requestTokens = maxRequestRate;
+    }
+
+    /** Sets ceiling of request rate. The current rate is lowered to it if above.
+     * @param maxRequestRate requests per second
+     */
+    public synchronized void setMaxRequestRate(double maxRequestRate)
+    {
+        this.maxRequestRate = maxRequestRate;
+        this.requestRate = Math.min(requestRate, maxRequestRate);
+    }
+
+    /** Limits bytes uploaded per second across all requests
+     * @param bytesPerSecond bytes per second, 0 for no limit
+     */
+    public synchronized void setBandwidthLimit(long bytesPerSecond)
+    {
+        this.bytesPerSecond = bytesPerSecond;
+        this.byteTokens = bytesPerSecond;
+    }
+
+    /** Sets how fast the rate recovers after throttling
+     * @param increasePerSecond requests per second added for every second without throttling
+     */
+    public void setIncreasePerSecond(double increasePerSecond)
+    {
+        this.increasePerSecond = increasePerSecond;
+    }
+
+    public synchronized double getRequestRate()
+    {
+        return requestRate;
+    }
+
+    /** @return number of throttling responses received
+     */
+    public int getThrottled()
+    {
+        return throttled.get();
+    }
+
+    @Override
+    public HttpPipelinePosition getPipelinePosition()
+    {
+        return HttpPipelinePosition.PER_RETRY;
+    }
+
+    @Override
+    public Mono<HttpResponse> process(HttpPipelineCallContext context, HttpPipelineNextPolicy next)
+    {
+        String length = context.getHttpRequest().getHeaders().getValue("Content-Length");
+        long wait = reserve(length == null ? 0 : Long.parseLong(length));
+        Mono<HttpResponse> send = Mono.defer(next::process).doOnNext(this::observe);
+        return wait <= 0 ? send : Mono.delay(Duration.ofNanos(wait)).then(send);
+    }
+
+    /** Takes a request and its bytes from the buckets. Buckets may go into debt, the debt is the time to wait.
+     * @param bytes number of bytes in request body
+     * @return nanoseconds to wait before sending the request
+     */
+    private synchronized long reserve(long bytes)
+    {
+        long now = System.nanoTime();
+        double elapsed = (now - refilledAt) / 1e9;
+        refilledAt = now;
+        //one second of tokens may build up while idle
+        requestTokens = Math.min(requestRate, requestTokens + elapsed * requestRate) - 1;
+        long wait = requestTokens >= 0 ? 0 : (long) (-requestTokens / requestRate * 1e9);
+        if (bytesPerSecond > 0)
+        {
+            byteTokens = Math.min(bytesPerSecond, byteTokens + elapsed * bytesPerSecond) - bytes;
+            if (byteTokens < 0)
+            {
+                wait = Math.max(wait, (long) (-byteTokens / bytesPerSecond * 1e9));
+            }
+        }
+        if (now - windowStart >= 1_000_000_000L)
+        {
+            //a window stretched by an idle spell says nothing about the rate of a burst
+            observedRate = now - windowStart < 2_000_000_000L ? windowCount * 1e9 / (now - windowStart) : 0;
+            windowStart = now;
+            windowCount = 0;
+        }
+        windowCount++;
+        return Math.max(wait, pausedUntil - now);
+    }
+
+    /** Adjusts rate from a response
+     * @param response HttpResponse received from service
+     */
+    private void observe(HttpResponse response)
+    {
+        int status = response.getStatusCode();
+        if (status == 503 || status == 429)
+        {
+            throttled.incrementAndGet();
+            throttle(retryAfter(response));
+        }
+        else
+        {
+            recover();
+        }
+    }
+
+    /** Lowers the rate to a fraction of the rate reached when the service pushed back
+     * @param retryAfter Duration the service asked to wait, null if it did not say
+     */
+    private synchronized void throttle(Duration retryAfter)
+    {
+        long now = System.nanoTime();
+        if (retryAfter != null)
+        {
+            pausedUntil = Math.max(pausedUntil, now + retryAfter.toNanos());
+        }
+        if (now - decreasedAt < DECREASE_INTERVAL_NANOS)
+        {
+            return;
+        }
+        decreasedAt = now;
+        double reached = observedRate > 0 ? Math.min(requestRate, observedRate) : requestRate;
+        requestRate = Math.max(MIN_RATE, reached * DECREASE_FACTOR);
+        requestTokens = Math.min(requestTokens, 0);
+        System.out.println(String.format("Storage account is throttling, request rate lowered to %.0f/s", requestRate));
+    }
+
+    /** Raises the rate so that it grows by increasePerSecond for every second of successful requests
+     */
+    private synchronized void recover()
+    {
+        if (requestRate < maxRequestRate)
+        {
+            requestRate = Math.min(maxRequestRate, requestRate + increasePerSecond / requestRate);
+        }
+    }
+
+    /** Reads the wait requested by the service
+     * @param response HttpResponse with throttling status
+     * @return Duration to wait, null if response does not say
+     */
+    private static Duration retryAfter(HttpResponse response)
+    {
+        try
+        {
+            String millis = response.getHeaderValue("x-ms-retry-after-ms");
+            if (millis == null)
+            {
+                millis = response.getHeaderValue("retry-after-ms");
+            }
+            if (millis != null)
+            {
+                return Duration.ofMillis(Long.parseLong(millis.trim()));
+            }
+            String seconds = response.getHeaderValue("Retry-After");
+            if (seconds != null)
+            {
+                return Duration.ofSeconds(Long.parseLong(seconds.trim()));
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            //Retry-After given as an HTTP date, fall back to the rate alone
+        }
+        return null;
+    }
+}
@@ -0,0 +1,207 @@
+package TaggingApplication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Works out which input blobs must change set so that every document type reaches the test ratio of a SetSplit.
+ * Blobs are fed in from a single listing; input and output files are paired by name instead of probing the service.
+ * Which blobs move is decided by their SetSplit position, so the result is the same for the same seed and listing.
+ * @author Charlene Pang
+ */
+public class SetRebalancer
+{
+    /** Input blob whose Set tag changes, with the output files that follow it */
+    public static class Reassignment
+    {
+        private final BlobRecord input;
+        private final Map<String,String> tags;
+        private final List<BlobRecord> outputs;
+
+        Reassignment(BlobRecord input, String set, List<BlobRecord> outputs)
+        {
+            this.input = input;
+            this.tags = new HashMap<>(input.getTags());
+            this.tags.put("Set", set);
+            this.outputs = outputs;
+        }
+
+        public BlobRecord getInput()
+        {
+            return input;
+        }
+
+        /** @return Map of tags to be written on input and its output files
+         */
+        public Map<String,String> getTags()
+        {
+            return tags;
+        }
+
+        public List<BlobRecord> getOutputs()
+        {
+            return outputs;
+        }
+    }
+
+    /** Input blob with its position in the split */
+    private static class Candidate
+    {
+        final BlobRecord blob;
+        final double position;
+
+        Candidate(BlobRecord blob, double position)
+        {
+            this.blob = blob;
+            this.position = position;
+        }
+
+        boolean isTest()
+        {
+            return SetSplit.TEST.equals(blob.getTags().get("Set"));
+        }
+    }
+
+    private final SetSplit split;
+    private final List<String> outputTypes;
+    private final Map<String,List<Candidate>> strata = new HashMap<>();
+    private final Map<String,List<BlobRecord>> outputsByInput = new HashMap<>();
+
+    /** Constructor
+     * @param split SetSplit giving test ratio and seed
+     * @param outputTypes List of strings representing output types, which follow their input file's set
+     */
+    public SetRebalancer(SetSplit split, List<String> outputTypes)
+    {
+        this.split = split;
+        this.outputTypes = outputTypes;
+    }
+
+    /** Adds a blob from the container listing
+     * @param blob BlobRecord with the blob's current tags
+     */
+    public void add(BlobRecord blob)
+    {
+        String name = blob.getName();
+        String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+        //blobs are stored as <extension>/<file name>, output files as <output type>/<input file name>.<output type>
+        String fileName = name.substring(name.indexOf('/') + 1);
+
+        if (outputTypes.contains(extension))
+        {
+            String inputFileName = fileName.substring(0, fileName.length() - extension.length() - 1);
+            outputsByInput.computeIfAbsent(inputFileName, k -> new ArrayList<>(1)).add(blob);
+            return;
+        }
+        strata.computeIfAbsent(blob.getTags().get("DocType"), k -> new ArrayList<>())
+            .add(new Candidate(blob, split.position(fileName)));
+    }
+
+    /** Works out changes needed to reach the test ratio within every document type. Only as many blobs as needed
+     * move: train blobs with the lowest positions are moved to test, picked in time linear in the number of
+     * blobs. Test blobs are never moved back to train,
+     * and blobs whose Set is missing or neither Train nor Test are left as they are and reported.
+     * @return List of input blobs whose set changes
+     */
+    public List<Reassignment> plan()
+    {
+        List<Reassignment> changes = new ArrayList<>();
+        strata.forEach((docType, candidates) -> {
+            int target = (int) Math.round(candidates.size() * split.getTestRatio());
+            int tests = 0;
+            List<Candidate> trains = new ArrayList<>();
+            List<Candidate> others = new ArrayList<>();
+            for (Candidate c : candidates)
+            {
+                if (c.isTest())
+                {
+                    tests++;
+                }
+                else
+                {
+                    (SetSplit.TRAIN.equals(c.blob.getTags().get("Set")) ? trains : others).add(c);
+                }
+            }
+
+            List<Candidate> toTest = lowest(trains, target - tests);
+            for (Candidate c : toTest)
+            {
+                changes.add(reassign(c, SetSplit.TEST));
+            }
+            System.out.println(String.format("%s : %d/%d input documents in test set, %d moved to test",
+                docType, tests + toTest.size(), candidates.size(), toTest.size()));
+            if (tests > target)
+            {
+                System.out.println(String.format("%s : %d input documents in test set above target of %d, left in test",
+                    docType, tests - target, target));
+            }
+            for (Candidate c : others)
+            {
+                System.out.println(String.format("%s : %s has Set '%s', left unchanged",
+                    docType, c.blob.getName(), c.blob.getTags().get("Set")));
+            }
+        });
+        return changes;
+    }
+
+    /** Picks the candidates with the lowest positions without sorting them all. Positions are uniform hashes,
+     * so bucketing them by value spreads them evenly: one pass finds the bucket holding the threshold position
+     * below which the lowest count lie, and only that bucket, of a few candidates, is ordered.
+     * @param candidates List of candidates in listing order
+     * @param count number of candidates wanted
+     * @return List of at most count candidates with the lowest positions
+     */
+    private static List<Candidate> lowest(List<Candidate> candidates, int count)
+    {
+        if (count <= 0)
+        {
+            return Collections.emptyList();
+        }
+        if (count >= candidates.size())
+        {
+            return candidates;
+        }
+        int buckets = candidates.size();
+        List<List<Candidate>> byPosition = new ArrayList<>(Collections.<List<Candidate>>nCopies(buckets, null));
+        for (Candidate c : candidates)
+        {
+            //position is below 1, so the bucket is below buckets
+            int bucket = (int) (c.position * buckets);
+            if (byPosition.get(bucket) == null)
+            {
+                byPosition.set(bucket, new ArrayList<>(2));
+            }
+            byPosition.get(bucket).add(c);
+        }
+        List<Candidate> lowest = new ArrayList<>(count);
+        for (int b = 0; lowest.size() < count; b++)
+        {
+            List<Candidate> bucket = byPosition.get(b);
+            if (bucket == null)
+            {
+                continue;
+            }
+            if (lowest.size() + bucket.size() <= count)
+            {
+                lowest.addAll(bucket);
+            }
+            else
+            {
+                bucket.sort(Comparator.comparingDouble(c -> c.position));
+                lowest.addAll(bucket.subList(0, count - lowest.size()));
+            }
+        }
+        return lowest;
+    }
+
+    private Reassignment reassign(Candidate c, String set)
+    {
+        String name = c.blob.getName();
+        List<BlobRecord> outputs = outputsByInput.getOrDefault(name.substring(name.indexOf('/') + 1),
+            Collections.emptyList());
+        return new Reassignment(c.blob, set, outputs);
+    }
+}
@@ -0,0 +1,65 @@
+package TaggingApplication;
+
+import java.nio.charset.StandardCharsets;
+
+/** Deterministic Train/Test split of blob names. Every name is hashed with a seed to a fixed position in [0,1),
+ * so the same name always lands in the same set for the same seed, on any machine and in any run.
+ * @author Charlene Pang
+ */
+public class SetSplit
+{
+    public static final String TRAIN = "Train";
+    public static final String TEST = "Test";
+
+    private final double testRatio;
+    private final long seed;
+
+    /** Constructor
+     * @param testRatio fraction of documents assigned to test set, ie: 0.3 for 70 train : 30 test
+     * @param seed long selecting one of many reproducible splits
+     */
+    public SetSplit(double testRatio, long seed)
+    {
+        if (testRatio < 0 || testRatio > 1)
+        {
+            throw new IllegalArgumentException("testRatio must be between 0 and 1");
+        }
+        this.testRatio = testRatio;
+        this.seed = seed;
+    }
+
+    public double getTestRatio()
+    {
+        return testRatio;
+    }
+
+    /** Gets position of name in the split
+     * @param name String representing name of input blob
+     * @return double in [0,1), names below testRatio belong to test set
+     */
+    public double position(String name)
+    {
+        //64-bit FNV-1a over UTF-8 bytes, seeded, followed by a splitmix64 finaliser
+        long h = 0xcbf29ce484222325L ^ seed;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8))
+        {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 30;
+        h *= 0xbf58476d1ce4e5b9L;
+        h ^= h >>> 27;
+        h *= 0x94d049bb133111ebL;
+        h ^= h >>> 31;
+        return (h >>> 11) * 0x1.0p-53;
+    }
+
+    /** Gets set a name is assigned to
+     * @param name String representing name of input blob
+     * @return "Test" or "Train"
+     */
+    public String assign(String name)
+    {
+        return position(name) < testRatio ? TEST : TRAIN;
+    }
+}
@@ -3,190 +3,715 @@ package TaggingApplication;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import com.azure.core.http.rest.PagedIterable;
 import com.azure.storage.blob.*;
 import com.azure.storage.blob.models.*;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 /** Represents azure storage service
  * @author Charlene Pang
  */
 
 public class StorageService {
+    private static final int DEFAULT_WORKER_COUNT = 8;
+    private static final int DEFAULT_SCAN_PARALLELISM = 8;
+    //requests per second a standard storage account accepts
+    private static final double DEFAULT_REQUEST_RATE = 20000;
+    private static final double DEFAULT_RATE_INCREASE = 20;
+
+    //null unless blobs are in an Azure storage account
     private BlobServiceClient blobServiceClient;
-    private String connectStr;
+    private AsyncStorageService async;
+    //null unless blobs are in an Azure storage account
+    private AzureBlobBackend azure;
+    private final Metrics metrics = new Metrics();
+    private final RateGovernor governor = new RateGovernor(DEFAULT_REQUEST_RATE, DEFAULT_RATE_INCREASE);
+    private final Map<String,BlobContainerClient> containerClients = new ConcurrentHashMap<>();
+    private int workerCount = DEFAULT_WORKER_COUNT;
+    private int queueCapacity = DEFAULT_WORKER_COUNT * 4;
+    private TagIndex tagIndex;
+    private Path checkpointDirectory;
+    private Path journalDirectory;
+    private SetSplit ingestSplit;
+    private FolderWalker walker = new FolderWalker();
+    private TagRules tagRules = TagRules.defaults();
+    private TagRules inboxRules = TagRules.inboxDefaults();
+    private int scanParallelism = DEFAULT_SCAN_PARALLELISM;
 
     /** Constructor, initialises connection string and serviceClient to perform actions on blobs
      * @param connectStr Connection String to Azure storage account
      */
     public StorageService(String connectStr)
     {
-        this.blobServiceClient = new BlobServiceClientBuilder().connectionString(connectStr).buildClient();
-        this.connectStr = connectStr;
+        this(connectStr, new ConnectionSettings());
     }
 
-    /** Uploads a single file to container from Google Drive/local device
-     * @param path String that represents local path of file
-     * @param container String that represents destination container's name
-     * @param tags Map that stores specified tagged values for file
-     * @param outputTypes List that stores all output types in container
+    /** Constructor, initialises serviceClient with a tuned HTTP client.
+     * Sync and async clients share one HTTP pipeline and connection pool, and every container and blob client
+     * is derived from them, so credentials are parsed once and connections are reused across calls.
+     * @param connectStr Connection String to Azure storage account
+     * @param settings ConnectionSettings of the shared HTTP client
      */
-    private void uploadFiles(String path ,String container, Map<String,String> tags)
+    public StorageService(String connectStr, ConnectionSettings settings)
     {
-        BlobContainerClient containerClient = new BlobContainerClientBuilder()
-        .connectionString(connectStr).containerName(container).buildClient();
-        System.out.println("Uploading files to storage");
+        BlobServiceAsyncClient asyncClient = new BlobServiceClientBuilder()
+            .connectionString(connectStr)
+            .httpClient(settings.buildHttpClient())
+            .addPolicy(governor)
+            .addPolicy(new MetricsPolicy(metrics))
+            .buildAsyncClient();
+        this.blobServiceClient = new BlobServiceClientBuilder()
+            .endpoint(asyncClient.getAccountUrl())
+            .pipeline(asyncClient.getHttpPipeline())
+            .buildClient();
+        this.azure = new AzureBlobBackend(asyncClient, settings.getMaxConnections());
+        this.async = new AsyncStorageService(azure, workerCount, queueCapacity);
+    }
 
-        //creates container if not exist
-        if (!containerClient.exists()){
-            containerClient = createContainer(container);
+    /** Constructor for blobs kept elsewhere than an Azure storage account, ie: an InMemoryBlobBackend
+     * to measure a migration or concurrency settings offline. Requests to an InMemoryBlobBackend pass through
+     * the same rate governor and request metrics as Azure requests.
+     * @param backend BlobBackend blob operations are sent to
+     */
+    public StorageService(BlobBackend backend)
+    {
+        if (backend instanceof InMemoryBlobBackend)
+        {
+            ((InMemoryBlobBackend) backend).setPolicies(governor, new MetricsPolicy(metrics));
         }
+        this.async = new AsyncStorageService(backend, workerCount, queueCapacity);
+    }
 
-        //parsing path string to obtain document type
-        String extension = path.substring(path.lastIndexOf('.') + 1).toLowerCase();
-        String fileName = path.substring(path.lastIndexOf('/')+1);
-        String truncate = path.substring(0, path.lastIndexOf('/'));
-        String docType = truncate.substring(truncate.lastIndexOf('/')+1);
+    /** Gets the non-blocking service that bulk operations of this class run on
+     * @return AsyncStorageService sharing this service's settings
+     */
+    public AsyncStorageService getAsync()
+    {
+        return async;
+    }
 
-        try
+    /** Gets request counts, latencies and job durations recorded since this service was created
+     * @return Metrics of this service
+     */
+    public Metrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /** Writes metrics to a file at a fixed interval while jobs run, in Prometheus text format,
+     * or as JSON if the file name ends in .json
+     * @param file String representing path of file, replaced on every dump
+     * @param interval Duration between dumps
+     * @return Disposable stopping the dumps, to be disposed when jobs are done
+     */
+    public Disposable dumpMetrics(String file, Duration interval)
+    {
+        Metrics.Format format = file.endsWith(".json") ? Metrics.Format.JSON : Metrics.Format.PROMETHEUS;
+        return metrics.dumpEvery(Paths.get(file), format, interval);
+    }
+
+    /** Sets number of requests bulk operations keep in flight at once. Requests do not hold a thread
+     * while they wait for the service, so this can be far higher than the number of cores.
+     * @param workerCount number of concurrent requests
+     */
+    public void setWorkerCount(int workerCount)
+    {
+        this.workerCount = workerCount;
+        async.setConcurrency(workerCount);
+    }
+
+    /** Sets number of files/blobs taken from a folder walk or listing ahead of the requests in flight
+     * @param queueCapacity number of items requested ahead
+     */
+    public void setQueueCapacity(int queueCapacity)
+    {
+        this.queueCapacity = queueCapacity;
+        async.setPrefetch(queueCapacity);
+    }
+
+    /** Sets number of subfolders of a folder being uploaded that are walked at once. Uploads start as soon as
+     * the first files are found either way; walking in parallel helps on network drives, where every directory
+     * read waits on the network.
+     * @param parallelism number of subfolders walked at once, 1 to walk one directory at a time
+     */
+    public void setWalkParallelism(int parallelism)
+    {
+        this.walker = new FolderWalker(parallelism);
+    }
+
+    /** Sets number of containers scanned at once by account-wide reports, ie: listDocTypesAll/facetsAll
+     * @param scanParallelism number of containers listed at once
+     */
+    public void setScanParallelism(int scanParallelism)
+    {
+        this.scanParallelism = Math.max(1, scanParallelism);
+    }
+
+    /** Sets how large files are uploaded. Files above the single-shot threshold are read as memory-mapped blocks
+     * and staged in parallel; the blocks of one file use up to maxConcurrencyPerBlob connections, fewer when
+     * several large files are in flight, so their total stays within the connection pool.
+     * @param blockSize long number of bytes per block
+     * @param maxConcurrencyPerBlob number of blocks of one file uploaded at once
+     * @param singleShotThreshold long size up to which a file is sent in one request
+     */
+    public void setLargeFileTransfer(long blockSize, int maxConcurrencyPerBlob, long singleShotThreshold)
+    {
+        if (azure != null)
         {
-            HashMap<String,String> newtags = new HashMap<>();
-            newtags.putAll(tags);
+            azure.setLargeFileTransfer(blockSize, maxConcurrencyPerBlob, singleShotThreshold);
+        }
+    }
 
-            //categorising files into docTypes (ie pdf, png, ppt)
-            BlobClient blobClient = containerClient.getBlobClient(String.format("%s/%s",extension,fileName));
-            blobClient.uploadFromFile(path);
+    /** Caps requests per second sent by all operations of this service. The rate is lowered automatically
+     * while the account is throttling and recovers up to this cap.
+     * @param requestsPerSecond maximum request rate
+     */
+    public void setRequestRateLimit(double requestsPerSecond)
+    {
+        governor.setMaxRequestRate(requestsPerSecond);
+    }
 
-            //automatically assign tags if not assigned yet
-            if (tags.get("DocType").equals("TBA"))
-            {
-                newtags.replace("DocType", docType);
-            }
+    /** Caps bytes per second uploaded by all operations of this service
+     * @param bytesPerSecond maximum upload bandwidth, 0 for no limit
+     */
+    public void setBandwidthLimit(long bytesPerSecond)
+    {
+        governor.setBandwidthLimit(bytesPerSecond);
+    }
 
-            if (fileName.contains("redacted"))
-            {
-                newtags.replace("Redacted","True");
-            }
-            blobClient.setTags(newtags);
-            System.out.println(String.format("%s uploaded ",fileName));
+    /** Answers findDocType, listDocTypes, listDocTypesAll and listSetFields from a local index of tags
+     * instead of listing containers on every call
+     * @param directory String representing local folder where index files are kept
+     * @param maxAge Duration for which an index may be used before it is refreshed from storage
+     */
+    public void useTagIndex(String directory, Duration maxAge)
+    {
+        this.tagIndex = new TagIndex(Paths.get(directory), maxAge);
+    }
+
+    /** Keeps the listing position of changeTags, migrateFromInbox and relocate in local checkpoint files,
+     * so a rerun after an interruption continues from the last completed page
+     * @param directory String representing local folder where checkpoints are kept
+     */
+    public void useCheckpoints(String directory)
+    {
+        this.checkpointDirectory = Paths.get(directory);
+    }
+
+    /** Keeps a journal of every upload and copy completed by uploadFolder, migrate and migrateFromInbox,
+     * so a rerun of the same call after an interruption skips the work already done for unchanged sources
+     * @param directory String representing local folder where journals are kept
+     */
+    public void useJournal(String directory)
+    {
+        this.journalDirectory = Paths.get(directory);
+    }
+
+    /** Opens the journal of an operation
+     * @param operation String identifying operation and its arguments, to keep journals of different jobs apart
+     * @return MigrationJournal of operation, one that records nothing if journals are not in use
+     */
+    private MigrationJournal openJournal(String operation)
+    {
+        return journalDirectory == null ? MigrationJournal.disabled()
+            : new MigrationJournal(journalDirectory.resolve(operation + ".journal"));
+    }
+
+    /** Opens the journal of an operation for planning, leaving its file as it is
+     * @param operation String identifying operation and its arguments
+     * @return MigrationJournal of operation, one that records nothing if journals are not in use
+     */
+    private MigrationJournal readJournal(String operation)
+    {
+        return journalDirectory == null ? MigrationJournal.disabled()
+            : MigrationJournal.readOnly(journalDirectory.resolve(operation + ".journal"));
+    }
+
+    /** Assigns the Set tag of every input document as it is uploaded or migrated, from a stable hash of its
+     * file name, so containers stay at the given ratio without running transferToTest afterwards.
+     * Output files take the set of their input file. Uses the same positions as transferToTest with the same seed.
+     * @param testRatio fraction of input documents to be assigned to test set
+     * @param seed long selecting a reproducible split
+     */
+    public void assignSetOnIngest(double testRatio, long seed)
+    {
+        this.ingestSplit = new SetSplit(testRatio, seed);
+    }
+
+    /** Sets rules deriving DocType, Project Name, Redacted and destination container of documents from their
+     * folders and file names, in place of the default rules. The same rules then apply to local files and to 'inbox'.
+     * @param tagRules TagRules applied by uploadFolder, migrate and migrateFromInbox, ie: TagRules.load(path)
+     */
+    public void useTagRules(TagRules tagRules)
+    {
+        this.tagRules = tagRules;
+        this.inboxRules = tagRules;
+    }
+
+    /** Sets Set tag from the ingest split, if one is configured
+     * @param tags Map of tags of input document to be updated
+     * @param fileName String representing file name of input document, without extension folder
+     */
+    private void assignIngestSet(Map<String,String> tags, String fileName)
+    {
+        if (ingestSplit != null)
+        {
+            tags.put("Set", ingestSplit.assign(fileName));
         }
+    }
+
+    /** Uploads a single file to container from Google Drive/local device.
+     * Tags are sent with the upload, so the blob never exists untagged.
+     * @param path String that represents local path of file
+     * @param container String that represents destination container's name
+     * @param newtags Map of tags derived for file, completed with its set
+     * @param run UploadRun recording tags of uploaded files for their output files
+     * @return Mono completing once file is uploaded
+     */
+    private Mono<Void> uploadFiles(String path ,String container, Map<String,String> newtags, UploadRun run)
+    {
+        System.out.println("Uploading files to storage");
+
+        String fileName = path.substring(path.lastIndexOf('/')+1);
+        assignIngestSet(newtags, fileName);
 
-        catch (Exception e)
+        //categorising files into docTypes (ie pdf, png, ppt)
+        String blobName = blobName(fileName);
+        String fingerprint = MigrationJournal.fingerprint(Paths.get(path));
+        if (fingerprint != null && run.journal.isDone(MigrationJournal.Step.UPLOAD, path, fingerprint))
         {
-            System.out.println(e);
+            //uploaded by an earlier run, its tags are still needed for its output files
+            run.inputTags.put(container + "/" + blobName, newtags);
+            return Mono.empty();
         }
+        return transfer(run, container, blobName, Paths.get(path), newtags)
+            .doOnSuccess(v -> {
+                run.inputTags.put(container + "/" + blobName, newtags);
+                run.journal.record(MigrationJournal.Step.UPLOAD, path, fingerprint);
+                tagsChanged(container);
+                System.out.println(String.format("%s uploaded ",fileName));
+            });
+    }
+
+    /** Names blob of a local file, in a folder named after its extension, ie: pdf/scan.pdf
+     * @param fileName String representing name of file
+     * @return String representing blob name
+     */
+    private static String blobName(String fileName)
+    {
+        return String.format("%s/%s", fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase(), fileName);
     }
 
-    /** Uploads a folder to a destination container from Google Drive/local device
+    /** Uploads a folder to a destination container from Google Drive/local device.
+     * Input files are uploaded in parallel first, then output files copy tags from their input file.
      * @param path String representing local path of folder
      * @param container String representing destination container's name
      * @param tags Map of tag values to be applied on all documents in folder
+     * @param outputTypes List that stores all output types in container
+     * @return TransferReport listing files that failed to upload
      */
-    public void uploadFolder(String path,String container, Map<String,String> tags,List<String> outputTypes)
-    {  
-        //get all files/folders in path
-        List<Path> files = getFiles(path);
-        String projectName = path.substring(path.lastIndexOf('/')+ 1);
-        List<Path> outputPaths = new ArrayList<>();
+    public TransferReport uploadFolder(String path,String container, Map<String,String> tags,List<String> outputTypes)
+    {
+        return uploadFolder(path, container, tags, outputTypes, false);
+    }
 
-        //automatically assign Project Name if it is TBA
-        if (tags.get("Project Name").equals("TBA"))
-        {
-            tags.replace("Project Name", projectName);
-        }
-        for (Path p : files)
+    /** Uploads a folder to a destination container, optionally syncing it with the blobs already there.
+     * In sync mode the container is listed once, and each file is compared with its blob by size and
+     * last-modified time, then by content MD5 if those cannot tell. Only new or changed files are uploaded;
+     * blobs whose content is unchanged only get their tags updated, if those differ.
+     * @param path String representing local path of folder
+     * @param container String representing destination container's name
+     * @param tags Map of tag values to be applied on all documents in folder
+     * @param outputTypes List that stores all output types in container
+     * @param sync true to transfer only what differs from the container
+     * @return TransferReport listing files that failed to upload
+     */
+    public TransferReport uploadFolder(String path,String container, Map<String,String> tags,List<String> outputTypes,
+        boolean sync)
+    {
+        String operation = String.format("uploadFolder-%08x", Objects.hash(path, container, tags, outputTypes));
+        Metrics.Timer timer = metrics.time("uploadFolder", container);
+        try (MigrationJournal journal = openJournal(operation))
         {
-            String extension = p.toString().substring(p.toString().lastIndexOf('.') + 1).toLowerCase();
-            
-            if (outputTypes.contains(extension)){
-                outputPaths.add(p);
-                continue;
-            }
-            //if there are unlinked documents within folder, project name is parent folder
-            if (Files.isRegularFile(p))
+            UploadRun run = new UploadRun(journal, sync);
+            TransferReport report = uploadAll(run, enqueueFolder(path, tags, outputTypes, run, t -> container)).block();
+            if (sync)
             {
-                uploadFiles(p.toFile().toString(), container, tags);
+                run.syncs.values().forEach(DeltaSync::printSummary);
             }
-            else
-            {
-                uploadFolder(p.toFile().getPath(),container,tags,outputTypes);
-                System.out.println("folder has other folder");
-            }       
+            report.printSummary();
+            return report;
         }
+        finally
+        {
+            timer.close();
+        }
+    }
 
-        //copying tags from input file to corresponding output file
-        for (Path p : outputPaths){
-            //parsing file names
-            String fileName = p.toString().substring(0,p.toString().lastIndexOf("."));
-            String truncate = fileName.substring(fileName.lastIndexOf("/"));
-            String extension = truncate.substring(truncate.lastIndexOf(".")+1);
-            String inputBlobName = String.format("%s%s",extension,truncate);
-            String outputBlobName = p.toString().substring(p.toString().lastIndexOf("/"));
-            String outputBlobExtension = outputBlobName.substring(outputBlobName.lastIndexOf(".")+1);
-            String blobName = String.format("%s%s",outputBlobExtension,outputBlobName);
+    /** Input file queued for upload, with the tags in effect when its folder was queued */
+    private static class FileUpload
+    {
+        final String path;
+        final String container;
+        final Map<String,String> tags;
 
-            BlobContainerClient containerClient = blobServiceClient.getBlobContainerClient(container);
-            BlobClient inputBlobClient = containerClient.getBlobClient(inputBlobName);
-            BlobClient outputBlobClient = containerClient.getBlobClient(blobName);
-            outputBlobClient.uploadFromFile(p.toFile().toString());
-            outputBlobClient.setTags(inputBlobClient.getTags());
+        FileUpload(String path, String container, Map<String,String> tags)
+        {
+            this.path = path;
+            this.container = container;
+            this.tags = tags;
         }
     }
 
-    /** Gets the files from specified location on Google Drive/local device
-     * @param sourceFolder String representing local path of folder
-     * @return List of paths of all files within sourceFolder
-     */
-    private List<Path> getFiles(String sourceFolder)
+    /** State shared by the uploads of one uploadFolder/migrate call */
+    private static class UploadRun
     {
-        Path path = Paths.get(sourceFolder);
+        final MigrationJournal journal;
+        //output files waiting for their input files, with their destination container
+        final Map<Path,String> outputPaths = Collections.synchronizedMap(new LinkedHashMap<>());
+        //tags sent with each uploaded input file, keyed by container/blob name
+        final Map<String,Map<String,String>> inputTags = new ConcurrentHashMap<>();
+        //destination containers being created, and listed when syncing, each prepared once per run
+        final Map<String,Mono<Void>> containers = new ConcurrentHashMap<>();
+        //blobs already in each destination container, null unless syncing
+        final Map<String,DeltaSync> syncs;
+        final Map<String,TagWriter> writers = new ConcurrentHashMap<>();
+        //folders and files the walk could not read
+        final TransferReport unreadable = new TransferReport();
 
-        try{
-            //add all files without hidden attributes 
-            Stream<Path> subPaths = Files.walk(path);
-            List<Path> fileList = subPaths.filter(a -> !a.toFile().isHidden() 
-                && Files.isRegularFile(a)).collect(Collectors.toList());
-            subPaths.close();
-            return fileList;
+        UploadRun(MigrationJournal journal)
+        {
+            this(journal, false);
+        }
+
+        UploadRun(MigrationJournal journal, boolean sync)
+        {
+            this.journal = journal;
+            this.syncs = sync ? new ConcurrentHashMap<>() : null;
+        }
+    }
+
+    /** Writes a local file to its blob. When syncing, the file is only uploaded if it differs from the blob
+     * listed in the container, and an unchanged blob only has its tags updated.
+     * Only a file with the blob's size that changed after the blob was written is read for its MD5,
+     * on a scheduler meant for blocking work, off the HTTP event loop.
+     * @param run UploadRun the file belongs to
+     * @param container String representing destination container's name
+     * @param blobName String representing name of blob to be written
+     * @param file Path of local file
+     * @param tags Map of tags blob should have
+     * @return Mono completing once blob holds file and tags
+     */
+    private Mono<Void> transfer(UploadRun run, String container, String blobName, Path file, Map<String,String> tags)
+    {
+        DeltaSync sync = run.syncs == null ? null : run.syncs.get(container);
+        if (sync == null)
+        {
+            return async.upload(container, blobName, file.toString(), tags);
+        }
+        BlobRecord blob = sync.get(blobName);
+        DeltaSync.Decision decision = sync.compare(file, blob);
+        TagWriter writer = run.writers.computeIfAbsent(container, c -> new TagWriter(async.getBackend(), c));
+        Mono<Void> retag = Mono.defer(() -> writer.write(blob, tags))
+            .doOnNext(written -> {
+                if (written)
+                {
+                    sync.retagged();
+                }
+                else
+                {
+                    sync.unchanged();
+                }
+            })
+            .then();
+        if (decision == DeltaSync.Decision.UNCHANGED)
+        {
+            return retag;
         }
-        catch (Exception e)
+        if (decision == DeltaSync.Decision.UPLOAD)
         {
-            System.out.println(e);
+            return async.upload(container, blobName, file.toString(), tags).doOnSuccess(v -> sync.uploaded());
         }
-        return null;
+        return Mono.fromCallable(() -> DeltaSync.md5(file)).subscribeOn(Schedulers.boundedElastic())
+            .flatMap(md5 -> sync.sameContent(md5, blob) ? retag
+                : async.upload(container, blobName, file.toString(), tags, md5).doOnSuccess(v -> sync.uploaded()));
+    }
+
+    /** Uploads input files as they are found, then the output files set aside while finding them
+     * @param run UploadRun collecting output files
+     * @param inputs Flux of input files, walked as uploads take them
+     * @return Mono emitting TransferReport of both phases, with the folders that could not be read
+     */
+    private Mono<TransferReport> uploadAll(UploadRun run, Flux<FileUpload> inputs)
+    {
+        return async.execute(inputs, u -> u.path, u -> uploadFiles(u.path, u.container, u.tags, run))
+            .flatMap(report -> uploadOutputs(run).map(report::merge))
+            .map(report -> report.merge(run.unreadable));
+    }
+
+    /** Queues upload of all input files in folder; output files are set aside in run to be uploaded
+     * once their input files are done. Tags of each file are derived from its name from the folder down,
+     * ie: Project/Invoice/scan.pdf, by the tag rules.
+     * @param path String representing local path of folder
+     * @param tags Map of tag values to be applied on all documents in folder
+     * @param outputTypes List that stores all output types in container
+     * @param run UploadRun collecting output files
+     * @param destination Function naming destination container of a file from its derived tags
+     * @return Flux of input files, emitted as the folder is walked
+     */
+    private Flux<FileUpload> enqueueFolder(String path, Map<String,String> tags, List<String> outputTypes,
+        UploadRun run, Function<Map<String,String>,String> destination)
+    {
+        Path root = Paths.get(path);
+        //names start at the folder being uploaded, or the folder holding a single file
+        Path top = Files.isDirectory(root) ? root : root.getParent();
+        Path base = top == null ? null : top.getParent();
+        //snapshot of tags, as the caller may change them for later folders
+        Map<String,String> folderTags = new HashMap<>(tags);
+        return walker.files(root, run.unreadable)
+            //files wait for their container in order, without blocking the thread the walk or a response runs on
+            .concatMap(p -> {
+                String name = base == null ? p.toString() : base.relativize(p).toString();
+                Map<String,String> fileTags = tagRules.derive(name, folderTags);
+                String container = destination.apply(fileTags);
+                Mono<Void> prepared = prepare(container, run);
+
+                String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+                if (outputTypes.contains(extension))
+                {
+                    return prepared.then(Mono.fromRunnable(() -> run.outputPaths.put(p, container)));
+                }
+                return prepared.thenReturn(new FileUpload(p.toString(), container, fileTags));
+            });
     }
 
-    /** Finds files with specified document type within specified container
+    /** Creates destination container on first use in a run, and lists it if the run syncs.
+     * The work is started once per container and cached, so later files of the container wait on the same Mono.
+     * @param container String representing destination container's name
+     * @param run UploadRun the container is used by
+     * @return Mono completing once container exists, and is listed when syncing
+     */
+    private Mono<Void> prepare(String container, UploadRun run)
+    {
+        return run.containers.computeIfAbsent(container, c -> {
+            //creates container if not exist, known containers are not checked again
+            Mono<Void> created = async.ensureContainer(c);
+            if (run.syncs == null)
+            {
+                return created.cache();
+            }
+            return created.then(async.scanTags(c).collectList())
+                .doOnNext(blobs -> run.syncs.put(c, new DeltaSync(blobs.stream())))
+                .then()
+                .cache();
+        });
+    }
+
+    /** Uploads output files, copying tags from input file to corresponding output file.
+     * Tags computed for the input file in this run are reused; the input blob's tags are only read
+     * if it was uploaded by an earlier run.
+     * @param run UploadRun holding output files and tags of uploaded input files
+     * @return Mono emitting TransferReport of output files
+     */
+    private Mono<TransferReport> uploadOutputs(UploadRun run)
+    {
+        return async.execute(Flux.fromIterable(run.outputPaths.entrySet()), entry -> entry.getKey().toString(), entry -> {
+            Path p = entry.getKey();
+            String outputName = p.toString().substring(p.toString().lastIndexOf('/')+1);
+            String inputBlobName = blobName(outputName.substring(0, outputName.lastIndexOf('.')));
+            String blobName = blobName(outputName);
+
+            String fingerprint = MigrationJournal.fingerprint(p);
+            if (fingerprint != null && run.journal.isDone(MigrationJournal.Step.UPLOAD, p.toString(), fingerprint))
+            {
+                return Mono.empty();
+            }
+            Map<String,String> inputTags = run.inputTags.get(entry.getValue() + "/" + inputBlobName);
+            return (inputTags != null ? Mono.just(inputTags) : async.getTags(entry.getValue(), inputBlobName))
+                .flatMap(t -> transfer(run, entry.getValue(), blobName, p, t))
+                .doOnSuccess(v -> {
+                    run.journal.record(MigrationJournal.Step.UPLOAD, p.toString(), fingerprint);
+                    tagsChanged(entry.getValue());
+                });
+        });
+    }
+
+    /** Finds files with specified document type within specified container.
+     * Uses the account's blob index, falling back to a parallel scan of the container if the index is unavailable
      * @param value String representing document type to be found
      * @param containerName String representing container to be searched
      * @return List of blobs with specified document type within container
      */
     public List<BlobItem> findDocType(String value, String containerName)
     {
-        BlobContainerClient containerClient = blobServiceClient.getBlobContainerClient(containerName);
-        List<BlobItem> blobs = containerClient.listBlobs().stream().collect(Collectors.toList());
         List<BlobItem> foundItems = new ArrayList<>();
-
-        for (BlobItem blobItem : blobs)
+        try
         {
-            BlobClient blobClient = containerClient.getBlobClient(blobItem.getName());
-            Map<String,String> dic = blobClient.getTags(); 
-
-            if (dic.get("DocType") != null && dic.get("DocType").equals(value)){
-                foundItems.add(blobItem);    
+            if (tagIndex != null)
+            {
+                foundItems = scanDocType(value, containerName);
+                System.out.println("All matching documents in index found ");
+                foundItems.forEach(a -> System.out.println(a.getName()));
+                return foundItems;
             }
+            for (TaggedBlobItem item : findBlobsByTags(tagEquals("DocType", value), containerName))
+            {
+                foundItems.add(new BlobItem().setName(item.getName()).setTags(item.getTags()));
+            }
+        }
+        catch (BlobStorageException e)
+        {
+            //index not supported by account (ie: hierarchical namespace, emulator) or not permitted
+            System.out.println("Blob index unavailable, scanning container: " + e.getErrorCode());
+            foundItems = scanDocType(value, containerName);
         }
         System.out.println("All matching documents in blob found ");
         foundItems.forEach(a -> System.out.println(a.getName()));
         return foundItems;
     }
 
+    /** Finds blobs matching a tag filter expression using the storage account's blob index.
+     * Results are fetched lazily, one page per request.
+     * @param query String representing tag filter expression, ie: "DocType" = 'Invoice' AND "Set" = 'Test'
+     * @param containerName String representing container to be searched, null to search all containers
+     * @return Iterable of blobs matching the expression
+     */
+    public Iterable<TaggedBlobItem> findBlobsByTags(String query, String containerName)
+    {
+        if (containerName != null)
+        {
+            query = "@container = " + literal(containerName) + " AND " + query;
+        }
+        return async.findBlobsByTags(query).toIterable();
+    }
+
+    /** Builds tag filter expression matching a single tag value. Values may hold single quotes, ie: a project
+     * named after a folder such as O'Brien; they are doubled as the filter syntax requires.
+     * @param key String representing key in map of tags
+     * @param value String representing value of key to be matched
+     * @return String tag filter expression usable with findBlobsByTags and as a tag condition
+     * @throws IllegalArgumentException if key holds a double quote, which no tag name may contain
+     */
+    public static String tagEquals(String key, String value)
+    {
+        if (key.indexOf('"') >= 0)
+        {
+            throw new IllegalArgumentException("Tag name cannot contain '\"': " + key);
+        }
+        return "\"" + key + "\" = " + literal(value);
+    }
+
+    /** Quotes a value for a tag filter expression
+     * @param value String to be quoted
+     * @return String in single quotes, with single quotes inside doubled
+     */
+    private static String literal(String value)
+    {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+    /** Finds files with specified document type by scanning tags of every blob in container
+     * @param value String representing document type to be found
+     * @param containerName String representing container to be searched
+     * @return List of blobs with specified document type within container
+     */
+    private List<BlobItem> scanDocType(String value, String containerName)
+    {
+        try (Stream<BlobRecord> records = readTags(containerName))
+        {
+            return records.filter(r -> value.equals(r.getTags().get("DocType")))
+                .map(r -> new BlobItem().setName(r.getName()).setProperties(r.getProperties()).setTags(r.getTags()))
+                .collect(Collectors.toList());
+        }
+    }
+
+    /** Lists all blobs in container with their tags, from the tag index if one is in use and fresh
+     * @param container String representing container to be listed
+     * @return Stream of blobs with their properties and tags
+     */
+    private Stream<BlobRecord> readTags(String container)
+    {
+        if (tagIndex == null)
+        {
+            return scanTags(container);
+        }
+        if (!tagIndex.isFresh(container))
+        {
+            try (Stream<BlobRecord> records = scanTags(container))
+            {
+                tagIndex.refresh(container, records);
+            }
+        }
+        return tagIndex.records(container).stream();
+    }
+
+    /** Marks tag index of container as stale after blobs or tags in it have been written
+     * @param container String representing container name
+     */
+    private void tagsChanged(String container)
+    {
+        if (tagIndex != null)
+        {
+            tagIndex.invalidate(container);
+        }
+    }
+
+    /** Lists all blobs in container with their tags, which are returned inline by the listing
+     * so each page of up to 5000 blobs costs a single request
+     * @param container String representing container to be listed
+     * @return Stream of blobs with their properties and tags, fetched lazily page by page
+     */
+    public Stream<BlobRecord> scanTags(String container)
+    {
+        return async.scanTags(container).toStream();
+    }
+
+    /** Processes all blobs in container one listing page at a time, with tags returned inline, so at most
+     * one page is held in memory. If checkpoints are in use, the continuation token is saved after each page
+     * and a rerun of the same operation resumes after the last completed page.
+     * @param container String representing container to be listed
+     * @param operation String identifying operation and its arguments, to keep checkpoints of operations apart
+     * @param handler Consumer called with each page, which must complete the page's work before returning
+     */
+    private void scanPages(String container, String operation, Consumer<List<BlobRecord>> handler)
+    {
+        ListingCheckpoint checkpoint = checkpointDirectory == null ? null
+            : new ListingCheckpoint(checkpointDirectory.resolve(operation + "-" + container + ".token"));
+        String token = checkpoint == null ? null : checkpoint.load();
+
+        //next page is fetched while the handler works on the current one
+        for (BlobBackend.Page page : async.scanPages(container, token).toIterable(1))
+        {
+            handler.accept(page.getRecords());
+            if (checkpoint != null && page.getContinuationToken() != null)
+            {
+                checkpoint.save(page.getContinuationToken());
+            }
+        }
+        if (checkpoint != null)
+        {
+            checkpoint.clear();
+        }
+    }
+
     /**
      * Finds blobs with particular document type for all blobs in a container and
      * moves blobs to specified container for organising purposes
@@ -196,53 +721,61 @@ public class StorageService {
      */
     public List<BlobItem> regroup(String value,String destContainerName,String sourceContainerName)
     {
-        BlobContainerClient destContainerClient = blobServiceClient
-            .getBlobContainerClient(destContainerName);
-        List<BlobItem> foundItems = new ArrayList<BlobItem>();
-        BlobContainerClient containerClient = blobServiceClient
-            .getBlobContainerClient(sourceContainerName);
-        System.out.println("in container " + sourceContainerName);
-        List<BlobItem> blobs = findDocType(value, sourceContainerName);
-        for (BlobItem blob : blobs)
-        {
-            if (blob != null)
-                foundItems.add(blob);
-                BlobClient destblobClient = destContainerClient.getBlobClient(blob.getName());
-                BlobClient startblobClient = containerClient.getBlobClient(blob.getName());
-                destblobClient.beginCopy(startblobClient.getBlobUrl(), null);
-                destblobClient.setTags(startblobClient.getTags());                  
-            
+        Metrics.Timer timer = metrics.time("regroup", destContainerName);
+        try
+        {
+            System.out.println("in container " + sourceContainerName);
+            List<BlobItem> foundItems = new ArrayList<BlobItem>();
+            for (BlobItem blob : findDocType(value, sourceContainerName))
+            {
+                if (blob != null)
+                {
+                    foundItems.add(blob);
+                }
+            }
+            //blobs found by listing carry their properties and all their tags, blobs found through the
+            //index query carry only the matched tag, so only those have their tags read before the copy
+            async.execute(Flux.fromIterable(foundItems), BlobItem::getName,
+                blob -> (blob.getProperties() != null && blob.getTags() != null ? Mono.just(blob.getTags())
+                    : async.getTags(sourceContainerName, blob.getName()))
+                    .flatMap(tags -> async.copy(sourceContainerName, blob.getName(), destContainerName, blob.getName(), tags)),
+                copyConcurrency())
+                .block().printSummary();
+            tagsChanged(destContainerName);
+            return foundItems;
+        }
+        finally
+        {
+            timer.close();
         }
-        return foundItems;
     }
 
-    /** Migrates files from path provided to different containers based on the folder name 
-     * that file is stored in.
+    /** Migrates files from path provided to the container named by the container rule, by default
+     * {language}-{DocType}. DocType is derived from the folder a file is stored in unless a DocType is given in tags,
+     * in which case every file goes to the container of that DocType.
      * @param path String representing path to files on local desktop
      * @param tags Map representing tags to be added to files
      * @param language String representing language code to be used as container's prefix
+     * @param outputTypes List that stores all output types in container
+     * @return TransferReport listing files that failed to upload
      */
-    public void migrate(String path,Map<String,String> tags,String language,List<String> outputTypes)
+    public TransferReport migrate(String path,Map<String,String> tags,String language,List<String> outputTypes)
     {
-        List<Path> files = getFiles(path);
-        for (Path p : files)
+        String operation = String.format("migrate-%08x", Objects.hash(path, tags, language, outputTypes));
+        Metrics.Timer timer = metrics.time("migrate", language);
+        try (MigrationJournal journal = openJournal(operation))
         {
-            String name = p.toString();
-            if (Files.isRegularFile(p))
-            {
-                String file = name.substring(name.lastIndexOf('/')+1);
-                String fileName = name.substring(0,name.lastIndexOf('/')+1);
-                String truncate = fileName.substring(0, fileName.lastIndexOf('/'));
-                String docType = truncate.substring(truncate.lastIndexOf('/')+1);
-                String container = language + "-" + docType.toLowerCase().replaceAll(" ", "");
-                uploadFolder(p.toFile().getPath(),container,tags,outputTypes);
-                System.out.println(file + " uploaded to " + container);         
-            }
-            else 
-            { 
-                //file is not a folder
-                System.out.println("Action failed.Please organise all files into folder.");
-            }
+            UploadRun run = new UploadRun(journal);
+            //files are queued as the walk finds them, containers are created on first use
+            Flux<FileUpload> inputs = enqueueFolder(path, tags, outputTypes, run, t -> tagRules.container(language, t))
+                .doOnNext(u -> System.out.println(u.path.substring(u.path.lastIndexOf('/')+1) + " queued for " + u.container));
+            TransferReport report = uploadAll(run, inputs).block();
+            report.printSummary();
+            return report;
+        }
+        finally
+        {
+            timer.close();
         }
     }
 
@@ -252,86 +785,440 @@ public class StorageService {
      * @tags Map representing the tags to be applied to all documents in 
      * @language String representing the language code to be used as the container's prefix
      * @ocrOutputType String representing the documents types that are produced from OCR (ie: "html"/"txt");
+     * @return TransferReport listing blobs that failed to copy
      */
-    public void migrateFromInbox(Map<String,String> tags,String language,String ocrOutputType)
+    public TransferReport migrateFromInbox(Map<String,String> tags,String language,String ocrOutputType)
     {
-        BlobContainerClient containerClient = blobServiceClient.getBlobContainerClient("inbox");
-        List<BlobItem> blobList = containerClient.listBlobs().stream().collect(Collectors.toList());
-        List<BlobItem> outputFiles = new ArrayList<>();
+        TransferReport report = new TransferReport();
+        //tags computed for input blobs of current and previous page, reused for their output files.
+        //an output blob name extends its input's, so it is listed shortly after it
+        Map<String,Map<String,String>> inputTags = new ConcurrentHashMap<>();
+        Map<String,Map<String,String>> previousTags = new HashMap<>();
+
+        String operation = String.format("migrateFromInbox-%08x", Objects.hash(tags, language, ocrOutputType));
 
-        //adding tags to every blob
-        for (BlobItem blob: blobList)
+        Metrics.Timer timer = metrics.time("migrateFromInbox", "inbox");
+        try (MigrationJournal journal = openJournal(operation))
         {
-            String blobName = blob.getName();
-            System.out.println("Adding tags for " +blobName);
-            String extension = blobName.substring(blobName.lastIndexOf('.') + 1).toLowerCase();
-            String fileName = blobName.substring(blobName.lastIndexOf('/')+1);
-            String truncate = blobName.substring(0, blobName.lastIndexOf('/'));
-            String docType = truncate.substring(truncate.lastIndexOf('/')+1);
-            String containerFromDoc = docType.toLowerCase().replaceAll(" ", "");
+            scanPages("inbox", operation, page -> {
+                previousTags.clear();
+                previousTags.putAll(inputTags);
+                inputTags.clear();
+                //blobs are taken in listing order, so an input's tags are computed before its output files are reached
+                report.merge(async.execute(Flux.fromIterable(page), BlobRecord::getName, blob -> {
+                    String blobName = blob.getName();
+                    String extension = blobName.substring(blobName.lastIndexOf('.') + 1).toLowerCase();
 
-            //process extension files after input files have been assigned tags
-            if (extension.equals(ocrOutputType))
-            {
-                outputFiles.add(blob);
-                continue;
-            }    
+                    if (extension.equals(ocrOutputType))
+                    {
+                        return migrateOutputFromInbox(blob, language, inputTags, previousTags, journal);
+                    }
+                    return migrateInputFromInbox(blob, tags, language, inputTags, journal);
+                }, copyConcurrency()).block());
+            });
+        }
+        finally
+        {
+            timer.close();
+        }
+        tagsChanged("inbox");
+        report.printSummary();
+        return report;
+    }
+
+    /** Tags an input blob in 'inbox' and copies it to the container for its document type
+     * @param blob BlobRecord of input blob in 'inbox'
+     * @param tags Map representing the tags to be applied to all documents
+     * @param language String representing the language code to be used as the container's prefix
+     * @param inputTags Map recording tags computed for input blob
+     * @param journal MigrationJournal recording completed copies
+     * @return Mono completing once the copy has finished
+     */
+    private Mono<Void> migrateInputFromInbox(BlobRecord blob, Map<String,String> tags, String language,
+        Map<String,Map<String,String>> inputTags, MigrationJournal journal)
+    {
+        String blobName = blob.getName();
+        System.out.println("Adding tags for " +blobName);
+        String extension = blobName.substring(blobName.lastIndexOf('.') + 1).toLowerCase();
+        String fileName = blobName.substring(blobName.lastIndexOf('/')+1);
+
+        Map<String,String> newtags = inboxRules.derive(blobName, tags);
+        assignIngestSet(newtags, fileName);
+
+        inputTags.put(blobName, newtags);
+        String containerName = inboxRules.container(language, newtags);
+        String etag = blob.getProperties().getETag();
+        if (journal.isDone(MigrationJournal.Step.COPY, "inbox/" + blobName, etag))
+        {
+            return Mono.empty();
+        }
+
+        //source keeps its tags too, unless the listing shows it already has them;
+        //destination receives them with the copy request
+        Mono<Void> tagSource = newtags.equals(blob.getTags()) ? Mono.empty() : async.setTags("inbox", blobName, newtags);
+        return async.ensureContainer(containerName)
+            .then(tagSource)
+            .then(async.copy("inbox", blobName, containerName, String.format("%s/%s",extension,fileName), newtags))
+            .doOnSuccess(v -> {
+                journal.record(MigrationJournal.Step.COPY, "inbox/" + blobName, etag);
+                tagsChanged(containerName);
+            });
+    }
+
+    /** Copies an output blob in 'inbox' with the same tags as its input blob
+     * @param blob BlobRecord of output blob in 'inbox'
+     * @param language String representing the language code to be used as the container's prefix
+     * @param inputTags Map of tags computed for input blobs of current page
+     * @param previousTags Map of tags computed for input blobs of previous page
+     * @param journal MigrationJournal recording completed copies
+     * @return Mono completing once the copy has finished
+     */
+    private Mono<Void> migrateOutputFromInbox(BlobRecord blob, String language,
+        Map<String,Map<String,String>> inputTags, Map<String,Map<String,String>> previousTags, MigrationJournal journal)
+    {
+        String fileName = blob.getName().substring(0,blob.getName().lastIndexOf("."));
+        String blobName = fileName.substring(fileName.lastIndexOf("/")+1);
+        String extension = blob.getName().substring(blob.getName().lastIndexOf(".")+1);
+        System.out.println(fileName);
+        String etag = blob.getProperties().getETag();
+        if (journal.isDone(MigrationJournal.Step.COPY, "inbox/" + blob.getName(), etag))
+        {
+            return Mono.empty();
+        }
+        //tags from input file are read from the service only if it was not tagged in this run
+        Map<String,String> outputTags = inputTags.getOrDefault(fileName, previousTags.get(fileName));
+        Mono<Map<String,String>> source = outputTags != null ? Mono.just(outputTags) : async.getTags("inbox", fileName);
 
-            BlobClient blobClient = containerClient.getBlobClient(blobName);
-            
-            Map<String,String> newtags = new HashMap<>();
-            newtags.putAll(tags);
+        return source.flatMap(t -> {
+            String containerName = inboxRules.container(language, t);
+            return async.copy("inbox", blob.getName(), containerName,
+                String.format("%s/%s",extension,String.format("%s.%s",blobName,extension)), t)
+                .doOnSuccess(v -> {
+                    journal.record(MigrationJournal.Step.COPY, "inbox/" + blob.getName(), etag);
+                    tagsChanged(containerName);
+                });
+        });
+    }
+
+    /** Plans uploadFolder without writing anything. The folder is walked and the tags of every file derived,
+     * giving the containers, uploads and output files the job needs. Print the plan for a dry run, or run it
+     * with execute.
+     * @param path String representing local path of folder
+     * @param container String representing destination container's name
+     * @param tags Map of tag values to be applied on all documents in folder
+     * @param outputTypes List that stores all output types in container
+     * @return TransferPlan of job
+     */
+    public TransferPlan planUploadFolder(String path,String container, Map<String,String> tags,List<String> outputTypes)
+    {
+        TransferPlan plan = new TransferPlan("uploadFolder", container,
+            String.format("uploadFolder-%08x", Objects.hash(path, container, tags, outputTypes)));
+        planFolder(plan, path, tags, outputTypes, t -> container);
+        return plan;
+    }
+
+    /** Plans migrate without writing anything, sending every file to the container for its document type
+     * @param path String representing path to files on local desktop
+     * @param tags Map representing tags to be added to files
+     * @param language String representing language code to be used as container's prefix
+     * @param outputTypes List that stores all output types in container
+     * @return TransferPlan of job
+     */
+    public TransferPlan planMigrate(String path,Map<String,String> tags,String language,List<String> outputTypes)
+    {
+        TransferPlan plan = new TransferPlan("migrate", language,
+            String.format("migrate-%08x", Objects.hash(path, tags, language, outputTypes)));
+        planFolder(plan, path, tags, outputTypes, t -> tagRules.container(language, t));
+        return plan;
+    }
 
-            if (tags.get("DocType").equals("TBA"))
+    /** Adds uploads of a local folder to a plan: input files first, then output files carrying their input's tags
+     * @param plan TransferPlan to be added to
+     * @param path String representing local path of folder
+     * @param tags Map of tag values to be applied on all documents in folder
+     * @param outputTypes List that stores all output types in container
+     * @param destination Function naming destination container of a file from its derived tags
+     */
+    private void planFolder(TransferPlan plan, String path, Map<String,String> tags, List<String> outputTypes,
+        Function<Map<String,String>,String> destination)
+    {
+        Path root = Paths.get(path);
+        Path top = Files.isDirectory(root) ? root : root.getParent();
+        Path base = top == null ? null : top.getParent();
+        //tags of input files keyed by container/blob name, and output files with their container
+        Map<String,Map<String,String>> inputTags = new HashMap<>();
+        Map<Path,String> outputs = new LinkedHashMap<>();
+        TransferReport unreadable = new TransferReport();
+        try (MigrationJournal journal = readJournal(plan.getOperation()))
+        {
+            for (Path p : walker.files(root, unreadable).toIterable())
+            {
+                String name = base == null ? p.toString() : base.relativize(p).toString();
+                Map<String,String> fileTags = tagRules.derive(name, tags);
+                String container = destination.apply(fileTags);
+                plan.add(TransferPlan.Operation.createContainer(container));
+
+                String fileName = name.substring(name.lastIndexOf('/')+1);
+                if (outputTypes.contains(fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase()))
+                {
+                    outputs.put(p, container);
+                    continue;
+                }
+                assignIngestSet(fileTags, fileName);
+                inputTags.put(container + "/" + blobName(fileName), fileTags);
+                planUpload(plan, journal, TransferPlan.Phase.INPUTS, container, blobName(fileName), p, fileTags, null);
+            }
+            for (Map.Entry<Path,String> entry : outputs.entrySet())
             {
-                newtags.replace("DocType", docType);
+                String outputName = entry.getKey().getFileName().toString();
+                String inputBlobName = blobName(outputName.substring(0, outputName.lastIndexOf('.')));
+                String input = entry.getValue() + "/" + inputBlobName;
+                Map<String,String> outputTags = inputTags.get(input);
+                if (outputTags == null)
+                {
+                    //input uploaded by an earlier job
+                    plan.planned(1);
+                    outputTags = async.getTags(entry.getValue(), inputBlobName).onErrorResume(e -> Mono.empty()).block();
+                }
+                if (outputTags == null)
+                {
+                    plan.unresolved(entry.getKey().toString(), "input " + input + " not found");
+                    continue;
+                }
+                planUpload(plan, journal, TransferPlan.Phase.OUTPUTS, entry.getValue(), blobName(outputName),
+                    entry.getKey(), outputTags, plan.contains(input) ? input : null);
             }
-            if (tags.get("Project Name").equals("TBA"))
+        }
+        unreadable.getFailures().forEach((folder, e) -> plan.unresolved(folder, "cannot be read, " + e));
+    }
+
+    /** Adds upload of a local file to a plan, unless the journal shows an earlier run uploaded it unchanged
+     * @param plan TransferPlan to be added to
+     * @param journal MigrationJournal of job
+     * @param phase Phase of upload
+     * @param container String representing destination container's name
+     * @param blobName String representing name of blob to be written
+     * @param file Path of local file
+     * @param tags Map of tags sent with the upload
+     * @param input String key of the input's upload for an output file, null otherwise
+     */
+    private void planUpload(TransferPlan plan, MigrationJournal journal, TransferPlan.Phase phase, String container,
+        String blobName, Path file, Map<String,String> tags, String input)
+    {
+        String fingerprint = MigrationJournal.fingerprint(file);
+        if (fingerprint != null && journal.isDone(MigrationJournal.Step.UPLOAD, file.toString(), fingerprint))
+        {
+            plan.alreadyDone();
+            return;
+        }
+        long size = file.toFile().length();
+        plan.add(TransferPlan.Operation.upload(phase, container, blobName, file, tags, size,
+                async.getBackend().uploadRequests(size))
+            .after(input)
+            .journal(MigrationJournal.Step.UPLOAD, file.toString(), fingerprint));
+    }
+
+    /** Plans migrateFromInbox without writing anything. 'inbox' is listed once; input blobs are copied with their
+     * derived tags, which also go to their output files, so no tags are read back.
+     * @param tags Map representing the tags to be applied to all documents
+     * @param language String representing the language code to be used as the container's prefix
+     * @param ocrOutputType String representing the documents types that are produced from OCR (ie: "html"/"txt")
+     * @return TransferPlan of job
+     */
+    public TransferPlan planMigrateFromInbox(Map<String,String> tags,String language,String ocrOutputType)
+    {
+        TransferPlan plan = new TransferPlan("migrateFromInbox", "inbox",
+            String.format("migrateFromInbox-%08x", Objects.hash(tags, language, ocrOutputType)));
+        int copyRequests = async.getBackend().copyRequests();
+        Map<String,Map<String,String>> inputTags = new HashMap<>();
+        Map<String,String> inputs = new HashMap<>();
+        List<BlobRecord> outputs = new ArrayList<>();
+        try (MigrationJournal journal = readJournal(plan.getOperation()))
+        {
+            for (BlobBackend.Page page : async.scanPages("inbox", null).toIterable())
             {
-                String projName = blobName.substring(0,blobName.indexOf("/"));
-                newtags.replace("Project Name", projName);
+                plan.planned(1);
+                for (BlobRecord blob : page.getRecords())
+                {
+                    String blobName = blob.getName();
+                    String extension = blobName.substring(blobName.lastIndexOf('.') + 1).toLowerCase();
+                    if (extension.equals(ocrOutputType))
+                    {
+                        outputs.add(blob);
+                        continue;
+                    }
+                    String fileName = blobName.substring(blobName.lastIndexOf('/')+1);
+                    Map<String,String> newtags = inboxRules.derive(blobName, tags);
+                    assignIngestSet(newtags, fileName);
+                    String containerName = inboxRules.container(language, newtags);
+                    String target = String.format("%s/%s",extension,fileName);
+                    inputTags.put(blobName, newtags);
+                    inputs.put(blobName, containerName + "/" + target);
+
+                    plan.add(TransferPlan.Operation.createContainer(containerName));
+                    if (!newtags.equals(blob.getTags()))
+                    {
+                        plan.add(TransferPlan.Operation.setTags(TransferPlan.Phase.INPUTS, "inbox", blobName, newtags));
+                    }
+                    planCopy(plan, journal, TransferPlan.Phase.INPUTS, blob, containerName, target, newtags, null,
+                        copyRequests);
+                }
             }
-            if (blobName.contains("redacted"))
+            for (BlobRecord blob : outputs)
             {
-                newtags.replace("Redacted","True");
+                String fileName = blob.getName().substring(0,blob.getName().lastIndexOf("."));
+                Map<String,String> outputTags = inputTags.get(fileName);
+                if (outputTags == null)
+                {
+                    plan.unresolved("inbox/" + blob.getName(), "input " + fileName + " not in inbox");
+                    continue;
+                }
+                String blobName = fileName.substring(fileName.lastIndexOf("/")+1);
+                String extension = blob.getName().substring(blob.getName().lastIndexOf(".")+1);
+                String input = inputs.get(fileName);
+                planCopy(plan, journal, TransferPlan.Phase.OUTPUTS, blob, inboxRules.container(language, outputTags),
+                    String.format("%s/%s.%s",extension,blobName,extension), outputTags, plan.contains(input) ? input : null,
+                    copyRequests);
             }
+        }
+        return plan;
+    }
 
-            blobClient.setTags(newtags);
-            BlobContainerClient destContainerClient;
-            String containerName = String.format("%s-%s",language,containerFromDoc);
+    /** Adds copy of a blob in 'inbox' to a plan, unless the journal shows an earlier run copied it unchanged
+     * @param plan TransferPlan to be added to
+     * @param journal MigrationJournal of job
+     * @param phase Phase of copy
+     * @param blob BlobRecord of source blob in 'inbox'
+     * @param container String representing name of destination container
+     * @param blobName String representing name of destination blob
+     * @param tags Map of tags set on destination by the copy
+     * @param input String key of the input's copy for an output file, null otherwise
+     * @param requests number of requests a copy takes
+     */
+    private void planCopy(TransferPlan plan, MigrationJournal journal, TransferPlan.Phase phase, BlobRecord blob,
+        String container, String blobName, Map<String,String> tags, String input, int requests)
+    {
+        String etag = blob.getProperties().getETag();
+        if (journal.isDone(MigrationJournal.Step.COPY, "inbox/" + blob.getName(), etag))
+        {
+            plan.alreadyDone();
+            return;
+        }
+        Long size = blob.getProperties().getContentLength();
+        plan.add(TransferPlan.Operation.copy(phase, "inbox", blob.getName(), container, blobName, tags,
+                size == null ? 0 : size, requests)
+            .after(input)
+            .journal(MigrationJournal.Step.COPY, "inbox/" + blob.getName(), etag));
+    }
 
-            if (!blobServiceClient.getBlobContainerClient(containerName).exists())
+    /** Runs a plan one phase after the other: containers, then input documents, then output files, with the
+     * operations of a phase run in parallel. An output file is not written if its input failed.
+     * Completed operations are recorded in the job's journal, so a rerun of the job skips them.
+     * @param plan TransferPlan built by planUploadFolder, planMigrate or planMigrateFromInbox
+     * @return TransferReport listing operations that failed
+     */
+    public TransferReport execute(TransferPlan plan)
+    {
+        Metrics.Timer timer = metrics.time(plan.getJob(), plan.getScope());
+        try (MigrationJournal journal = openJournal(plan.getOperation()))
+        {
+            TransferReport report = new TransferReport();
+            for (TransferPlan.Phase phase : TransferPlan.Phase.values())
             {
-               destContainerClient = createContainer(containerName);
-            }
-            else{
-                destContainerClient = blobServiceClient.getBlobContainerClient(containerName);
+                List<TransferPlan.Operation> ops = plan.getOperations(phase);
+                boolean copies = ops.stream().anyMatch(op -> op.getKind() == TransferPlan.Kind.COPY);
+                report.merge(async.execute(Flux.fromIterable(ops), TransferPlan.Operation::getKey,
+                    op -> run(op, report, journal), copies ? copyConcurrency() : workerCount).block());
             }
-            BlobClient destblobClient = destContainerClient.getBlobClient(String.format("%s/%s",extension,fileName));
-            destblobClient.beginCopy(blobClient.getBlobUrl(), null);
-            destblobClient.setTags(blobClient.getTags());   
+            report.printSummary();
+            return report;
+        }
+        finally
+        {
+            timer.close();
+        }
+    }
+
+    /** Sends the request of a planned operation
+     * @param op TransferPlan.Operation to be run
+     * @param report TransferReport of earlier phases
+     * @param journal MigrationJournal recording completed operations
+     * @return Mono completing once the operation has succeeded
+     */
+    private Mono<Void> run(TransferPlan.Operation op, TransferReport report, MigrationJournal journal)
+    {
+        if (op.getInput() != null && report.getFailures().containsKey(op.getInput()))
+        {
+            return Mono.error(new IllegalStateException("Input " + op.getInput() + " failed"));
+        }
+        Mono<Void> request;
+        switch (op.getKind())
+        {
+            case CREATE_CONTAINER:
+                return async.ensureContainer(op.getContainer());
+            case UPLOAD:
+                request = async.upload(op.getContainer(), op.getBlobName(), op.getFile().toString(), op.getTags());
+                break;
+            case COPY:
+                request = async.copy(op.getSourceContainer(), op.getSourceBlob(), op.getContainer(), op.getBlobName(),
+                    op.getTags());
+                break;
+            default:
+                request = async.setTags(op.getContainer(), op.getBlobName(), op.getTags());
         }
+        return request.doOnSuccess(v -> {
+            if (op.getStep() != null && op.getFingerprint() != null)
+            {
+                journal.record(op.getStep(), op.getJournalKey(), op.getFingerprint());
+            }
+            tagsChanged(op.getContainer());
+        });
+    }
 
-        //adding same tags for output file
-        for (BlobItem blob : outputFiles)
+    /** Moves all blobs in a container to another container, keeping blob names and tags.
+     * Source blobs are deleted only once their copy has completed.
+     * @param container1 String representing name of container blobs are moved from
+     * @param container2 String representing name of container blobs are moved to, created if it does not exist
+     * @return TransferReport listing blobs that failed to move
+     * @throws IllegalArgumentException if both are the same container, whose blobs would be copied onto
+     * themselves and then deleted
+     */
+    public TransferReport relocate(String container1, String container2)
+    {
+        if (container1.equals(container2))
+        {
+            throw new IllegalArgumentException("Cannot relocate container " + container1 + " to itself");
+        }
+        Metrics.Timer timer = metrics.time("relocate", container2);
+        try
         {
-            String fileName = blob.getName().substring(0,blob.getName().lastIndexOf("."));
-            String blobName = fileName.substring(fileName.lastIndexOf("/")+1);
-            String extension = blob.getName().substring(blob.getName().lastIndexOf(".")+1);
-            System.out.println(fileName);
-            //original blob client to obtain tags from input file
-            BlobClient blobClient = containerClient.getBlobClient(fileName);
-            
-            //blob client to add tags for output file
-            String containerFromDoc = blobClient.getTags().get("DocType").toLowerCase().replaceAll(" ", "");
-            String containerName = String.format("%s-%s",language,containerFromDoc);
-            BlobContainerClient destContainerClient = blobServiceClient.getBlobContainerClient(containerName);
-            BlobClient blobClient2 = destContainerClient.getBlobClient(String.format("%s/%s",extension,String.format("%s.%s",blobName,extension)));
+            async.ensureContainer(container2).block();
 
-            blobClient2.beginCopy(blobClient.getBlobUrl(), null);
-            blobClient2.setTags(blobClient.getTags()); 
+            TransferReport report = new TransferReport();
+            scanPages(container1, "relocate-" + container2, page ->
+                //delete source of a completed copy only, unless it changed during the copy
+                report.merge(async.execute(Flux.fromIterable(page), BlobRecord::getName, blob ->
+                    async.copy(container1, blob.getName(), container2, blob.getName(), blob.getTags())
+                        .then(async.deleteIfMatch(container1, blob.getName(), blob.getProperties().getETag())),
+                    copyConcurrency()).block()));
+            tagsChanged(container2);
+            tagsChanged(container1);
+            report.printSummary();
+            return report;
+        }
+        finally
+        {
+            timer.close();
         }
+    }
 
+    /** Number of server-side copies kept in progress at once. Copies mostly wait on the service,
+     * so more of them run than uploads.
+     * @return int number of copies in flight
+     */
+    private int copyConcurrency()
+    {
+        return workerCount * 4;
     }
 
     /** Transferring blobs in container to test set to approximately 70 train: 30 test 
@@ -342,66 +1229,54 @@ public class StorageService {
      */
     public void transferToTest(String container,List<String> outputType)
     {
-        int counter = 0; //counts number of items transferred to test
-        BlobContainerClient containerClient = blobServiceClient.getBlobContainerClient(container);
-        PagedIterable<BlobItem> blobs = containerClient.listBlobs();
-        int num = (int) blobs.stream().count();
-        List<BlobItem> blobList = blobs.stream().collect(Collectors.toList());
-        List<BlobClient> transferredBlobs = new ArrayList<>();
-
-        if (num == 1)
-        {
-            System.out.println("No items transferred to test set");
-            return;
-        }
+        transferToTest(container, outputType, 0.3, 0);
+    }
 
-        //getting number of test documents to generate to maintain 70:30 ratio
-        HashMap<String,Integer> map = listSetFields(container);
-        int numTestFiles =(num/10)*3;
-        int addTest = numTestFiles - map.get("Test");
-        
-        for (int i = 0; i <= addTest; i++)
+    /** Moves train blobs in container to test set until every document type has the given share of input documents
+     * in test set. Test blobs and blobs with other Set values are not changed.
+     * Reads the container once; the blobs that move are picked by their hashed position for the seed, so the same
+     * seed gives the same split.
+     * @param container String representing container for function to be applied
+     * @param outputType List of strings representing output types, which follow the set of their input file
+     * @param testRatio fraction of input documents to be in test set
+     * @param seed long selecting a reproducible split
+     * @return TransferReport listing blobs whose tags failed to update
+     */
+    public TransferReport transferToTest(String container,List<String> outputType, double testRatio, long seed)
+    {
+        Metrics.Timer timer = metrics.time("transferToTest", container);
+        try
         {
-            int max = blobList.size();
-            Random random = new Random();
-            BlobItem updateBlob = blobList.get(random.nextInt(max-1));
-            String extension = updateBlob.getName().substring(updateBlob.getName()
-                    .lastIndexOf('.') + 1).toLowerCase();
-
-            //if item chosen is output file, ignore
-            while (outputType.contains(extension))
+            TagWriter writer = new TagWriter(async.getBackend(), container);
+            SetRebalancer rebalancer = new SetRebalancer(new SetSplit(testRatio, seed), outputType);
+            try (Stream<BlobRecord> records = scanTags(container))
             {
-                //get another blob randomly
-                updateBlob = blobList.get(random.nextInt(max - 1));
-                extension = updateBlob.getName().substring(updateBlob.getName()
-                        .lastIndexOf('.') + 1).toLowerCase();
+                records.forEach(rebalancer::add);
             }
 
-            BlobClient blobClient = containerClient.getBlobClient(updateBlob.getName());
-            transferredBlobs.add(blobClient);
-            Map<String, String> dic = blobClient.getTags();
-            dic.replace("Set","Test");
-            blobClient.setTags(dic);
-            counter++;
-
-            //removing blob and updating max parameters
-            blobList.remove(updateBlob);
-            System.out.println("tag value changed to 'test' for " + blobClient.getBlobName());
-        }
-        for (BlobClient blobClient : transferredBlobs){
-            String fullName = blobClient.getBlobName();
-            String blobName = fullName.substring(fullName.indexOf("/")+1);
-
-            //search for corresponding output files & update set values if it exists
-            for (String fileType : outputType){
-                BlobClient outputClient = containerClient.getBlobClient(String.format("%s/%s",fileType,String.format("%s.%s",blobName,fileType)));
-                System.out.println(String.format("%s/%s",fileType,String.format("%s.%s",blobName,fileType)));
-                if (outputClient.exists()){
-                    outputClient.setTags(blobClient.getTags());
-                }
+            //each input with its corresponding output files found in the same listing
+            List<Map.Entry<BlobRecord,Map<String,String>>> writes = new ArrayList<>();
+            for (SetRebalancer.Reassignment change : rebalancer.plan())
+            {
+                writes.add(new AbstractMap.SimpleImmutableEntry<>(change.getInput(), change.getTags()));
+                change.getOutputs().forEach(o -> writes.add(new AbstractMap.SimpleImmutableEntry<>(o, change.getTags())));
             }
+            TransferReport report = async.execute(Flux.fromIterable(writes), w -> w.getKey().getName(),
+                w -> writer.write(w.getKey(), w.getValue()).doOnNext(written -> {
+                    if (written)
+                    {
+                        System.out.println("tag value changed to '" + w.getValue().get("Set") + "' for " + w.getKey().getName());
+                    }
+                })).block();
+            tagsChanged(container);
+            writer.printSummary();
+            report.printSummary();
+            return report;
+        }
+        finally
+        {
+            timer.close();
         }
-        System.out.println(String.format("%d/%d input documents transferred to test set",counter,num));
     }
 
     /** Change value for specified tagged key for all blobs within container
@@ -411,17 +1286,8 @@ public class StorageService {
      */
     public void changeTags(String container,String field, String tagValue)
     {
-        BlobContainerClient containerClient = blobServiceClient.getBlobContainerClient(container);
-        List<BlobItem> blobs = containerClient.listBlobs().stream().collect(Collectors.toList());
-
-        for (BlobItem blob : blobs)
-        {
-            BlobClient blobClient = containerClient.getBlobClient(blob.getName());
-            Map<String, String> dic = blobClient.getTags();
-            dic.replace(field,tagValue);
-            blobClient.setTags(dic);
-            System.out.println("Setting tags");
-        }
+        changeTags(container, field, tagValue, blob -> true,
+            String.format("changeTags-%08x", Objects.hash(field, tagValue)));
     }
 
     /** Change particular field in tags for items with specified sequence in file names
@@ -432,19 +1298,41 @@ public class StorageService {
      */
     public void changeTags(String container,String field, String tagValue,String sequence)
     {
-        BlobContainerClient containerClient = blobServiceClient.getBlobContainerClient(container);
-        List<BlobItem> blobs = containerClient.listBlobs().stream().collect(Collectors.toList());
+        changeTags(container, field, tagValue, blob -> blob.getName().contains(sequence),
+            String.format("changeTags-%08x", Objects.hash(field, tagValue, sequence)));
+    }
 
-        for (BlobItem blob : blobs)
+    /** Change value for specified tagged key for selected blobs within container, page by page.
+     * The key is added if a blob does not have it yet. Blobs already holding the value are not written, and
+     * writes only apply if the blob's tags are unchanged since they were listed.
+     * @param container String representing container to be searched
+     * @param field String representing key in map of tags to be changed
+     * @param tagValue String representing value of key to be changed
+     * @param filter Predicate selecting blobs whose tags are to be changed
+     * @param operation String identifying the call, used for its checkpoint
+     */
+    private void changeTags(String container, String field, String tagValue, Predicate<BlobRecord> filter,
+        String operation)
+    {
+        Metrics.Timer timer = metrics.time("changeTags", container);
+        try
         {
-            if (blob.getName().contains(sequence))
-            {
-                BlobClient blobClient = containerClient.getBlobClient(blob.getName());
-                Map<String, String> dic = blobClient.getTags();
-                dic.replace(field,tagValue);
-                blobClient.setTags(dic);
-                System.out.println("Setting tags");
-            }        
+            TagWriter writer = new TagWriter(async.getBackend(), container);
+            TransferReport report = new TransferReport();
+
+            scanPages(container, operation, page ->
+                report.merge(async.execute(Flux.fromIterable(page).filter(filter), BlobRecord::getName, blob -> {
+                    Map<String, String> dic = new HashMap<>(blob.getTags());
+                    dic.put(field,tagValue);
+                    return writer.write(blob, dic);
+                }).block()));
+            tagsChanged(container);
+            writer.printSummary();
+            report.getFailures().forEach((key, e) -> System.out.println("Failed: " + key + " : " + e));
+        }
+        finally
+        {
+            timer.close();
         }
     }
 
@@ -454,30 +1342,76 @@ public class StorageService {
      */
     public void addTags(String container,Map<String,String> tags, String blobName)
     {
-        BlobContainerClient containerClient = blobServiceClient.getBlobContainerClient(container);
-        BlobClient blobClient = containerClient.getBlobClient(blobName);
-        blobClient.setTags(tags);
+        async.setTags(container, blobName, tags).block();
+        tagsChanged(container);
         System.out.println("Setting tags");
     }
 
-    /** Creates a container with specified name
+    /** Creates a container with specified name, unless it already exists
      * @param destContainerName String representing name of container to be created
-     * @return BlobContainerClient to perform actions on containers
+     * @return BlobContainerClient to perform actions on containers, whether or not it was just created
+     * @throws IllegalStateException if blobs are not in an Azure storage account, use ensureContainer instead
      */
     public BlobContainerClient createContainer(String destContainerName)
     {
-        try
+        if (blobServiceClient == null)
         {
-            //Create the container in storage account. Fails if container already exist
-            BlobContainerClient container = blobServiceClient.createBlobContainer(destContainerName);
-            System.out.println("Created container " + container.getBlobContainerName());
-            return container;
+            throw new IllegalStateException("No Azure container client for " + destContainerName + ", use ensureContainer");
         }
-        catch (BlobStorageException e)
+        ensureContainer(destContainerName);
+        return getContainerClient(destContainerName);
+    }
+
+    /** Creates a container with specified name unless it already exists, in whichever backend holds the blobs
+     * @param destContainerName String representing name of container to be created
+     */
+    public void ensureContainer(String destContainerName)
+    {
+        async.ensureContainer(destContainerName).block();
+    }
+
+    /** Gets client of container, built once per container
+     * @param container String representing container name
+     * @return BlobContainerClient sharing this service's pipeline
+     */
+    private BlobContainerClient getContainerClient(String container)
+    {
+        return containerClients.computeIfAbsent(container, blobServiceClient::getBlobContainerClient);
+    }
+
+    /** Counts blobs in container by DocType, Set, Project Name, Redacted and extension, with their bytes
+     * @param container String representing container to be counted
+     * @return TagFacets of container, to be queried, merged or exported as CSV/JSON
+     */
+    public TagFacets facets(String container)
+    {
+        try (Stream<BlobRecord> blobs = readTags(container))
         {
-            System.out.println("Container already exists.");
+            return TagFacets.of(container, blobs);
         }
-        return null;
+    }
+
+    /** Counts blobs in all containers within storage account
+     * @return TagFacets of all containers merged, with container as one of the dimensions
+     */
+    public TagFacets facetsAll()
+    {
+        return facetsAll(null);
+    }
+
+    /** Counts blobs in containers whose name starts with prefix. Containers are scanned in parallel,
+     * scanParallelism at a time, and their facets merged as each finishes.
+     * @param prefix String representing start of container names, ie: a language code "en", null for all containers
+     * @return TagFacets of matching containers merged, with container as one of the dimensions
+     */
+    public TagFacets facetsAll(String prefix)
+    {
+        return async.listContainers(prefix)
+            //listings are read through blocking streams, so each scan holds a thread meant for blocking work
+            .flatMap(c -> Mono.fromCallable(() -> facets(c)).subscribeOn(Schedulers.boundedElastic()),
+                scanParallelism)
+            .reduce(new TagFacets(), TagFacets::merge)
+            .block();
     }
 
      /** Lists all document types found in all containers within storage account
@@ -485,13 +1419,16 @@ public class StorageService {
      */
     public void listDocTypesAll()
     {
-        List<BlobContainerItem> containers =blobServiceClient
-                .listBlobContainers().stream().collect(Collectors.toList());
+        printDocTypes(facetsAll());
+    }
 
-        for (BlobContainerItem containerItem : containers)
-        {
-            listDocTypes(containerItem.getName());
-        }
+    /** Lists all document types found in containers whose name starts with prefix
+     * Can be converted to table using Word, separating words at ","
+     * @param prefix String representing start of container names, ie: a language code "en"
+     */
+    public void listDocTypesAll(String prefix)
+    {
+        printDocTypes(facetsAll(prefix));
     }
 
     /** Lists all document types found in specified container
@@ -500,24 +1437,22 @@ public class StorageService {
      */
     public void listDocTypes(String container)
     {
-        List<String> names = new ArrayList<>();
-        BlobContainerClient containerClient = blobServiceClient.getBlobContainerClient(container);
-        List<BlobItem> blobs = containerClient.listBlobs().stream().collect(Collectors.toList());
+        printDocTypes(facets(container));
+    }
 
-        for (BlobItem b : blobs)
-        {
-            BlobClient blobClient = containerClient.getBlobClient(b.getName());
-            Map<String, String> dic = blobClient.getTags();
-            if (!names.contains(dic.get("DocType")))
-            {
-                names.add(dic.get("DocType"));
-            }
-        }
-        names.forEach(x -> System.out.println(container + " , " + x));
+    /** Prints every container and document type pair found
+     * @param facets TagFacets of containers
+     */
+    private void printDocTypes(TagFacets facets)
+    {
+        facets.counts(TagFacets.Dimension.CONTAINER, TagFacets.Dimension.DOC_TYPE)
+            .forEach((container, names) -> names.keySet().forEach(x -> System.out.println(container + " , " + x)));
     }
 
-    /** Lists number of items assigned to train and test within container
-     * @param container
+    /** Lists number of items assigned to train and test within container.
+     * Blobs without a Set tag are counted as Unassigned.
+     * @param container String representing container to be searched
+     * @return Map of set name (Train/Test) to number of blobs assigned to it
      */
     public HashMap<String,Integer> listSetFields(String container)
     {
@@ -525,23 +1460,8 @@ public class StorageService {
             put("Train",0);
             put("Test",0);
         }};
-
-        BlobContainerClient containerClient = blobServiceClient.getBlobContainerClient(container);
-        List<BlobItem> blobs = containerClient.listBlobs().stream().collect(Collectors.toList());
-
-        for (BlobItem b : blobs)
-        {
-            BlobClient blobClient = containerClient.getBlobClient(b.getName());
-            Map<String, String> dic = blobClient.getTags();
-            if ((dic.get("Set").equals("Train")))
-            {
-                names.replace("Train",names.get("Train")+1);
-            }
-            else if ((dic.get("Set").equals("Test")))
-            {
-                names.replace("Test",names.get("Test")+1);
-            }
-        }
+        facets(container).counts(TagFacets.Dimension.SET).forEach((set, count) ->
+            names.put(TagFacets.MISSING.equals(set) ? "Unassigned" : set, count.intValue()));
         names.forEach((x,y) -> System.out.println( x +" : " +y));
         return names;
     }
@@ -0,0 +1,260 @@
+package TaggingApplication;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/** Counts of blobs and their bytes for every combination of container, DocType, Set, Project Name, Redacted
+ * and file extension seen in a listing. Blobs are added one at a time as a listing streams past, so memory grows
+ * with the number of distinct combinations rather than the number of blobs. Facets of different containers
+ * can be built separately and merged. A missing tag is counted as its own value.
+ * @author Charlene Pang
+ */
+public class TagFacets
+{
+    /** Dimension blobs are counted by */
+    public enum Dimension
+    {
+        CONTAINER("Container"),
+        DOC_TYPE("DocType"),
+        SET("Set"),
+        PROJECT_NAME("Project Name"),
+        REDACTED("Redacted"),
+        EXTENSION("Extension");
+
+        private final String label;
+
+        Dimension(String label)
+        {
+            this.label = label;
+        }
+
+        public String getLabel()
+        {
+            return label;
+        }
+    }
+
+    /** Value written for a blob without the tag */
+    public static final String MISSING = "";
+
+    /** Values of all dimensions of a blob, in the order of Dimension */
+    private static final class Key
+    {
+        final String[] values;
+        final int hash;
+
+        Key(String[] values)
+        {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof Key && Arrays.equals(values, ((Key) o).values);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+    /** Number of blobs and their total size */
+    private static final class Totals
+    {
+        long count;
+        long bytes;
+    }
+
+    //first-seen order, so reports list values in listing order
+    private final Map<Key,Totals> facets = new LinkedHashMap<>();
+
+    /** Counts all blobs of a listing
+     * @param container String representing name of container listed
+     * @param listing Stream of blobs with their properties and tags
+     * @return TagFacets of container
+     */
+    public static TagFacets of(String container, Stream<BlobRecord> listing)
+    {
+        TagFacets facets = new TagFacets();
+        listing.forEach(b -> facets.add(container, b));
+        return facets;
+    }
+
+    /** Counts a blob
+     * @param container String representing name of container holding blob
+     * @param blob BlobRecord with properties and tags
+     */
+    public void add(String container, BlobRecord blob)
+    {
+        Map<String,String> tags = blob.getTags();
+        String name = blob.getName();
+        int dot = name.lastIndexOf('.');
+        String extension = dot < name.lastIndexOf('/') + 1 ? MISSING : name.substring(dot + 1).toLowerCase();
+        Long length = blob.getProperties() == null ? null : blob.getProperties().getContentLength();
+        add(new Key(new String[] {
+            container,
+            tags.getOrDefault("DocType", MISSING),
+            tags.getOrDefault("Set", MISSING),
+            tags.getOrDefault("Project Name", MISSING),
+            tags.getOrDefault("Redacted", MISSING),
+            extension}), 1, length == null ? 0 : length);
+    }
+
+    private void add(Key key, long count, long bytes)
+    {
+        Totals totals = facets.computeIfAbsent(key, k -> new Totals());
+        totals.count += count;
+        totals.bytes += bytes;
+    }
+
+    /** Adds counts of other facets to these, ie: to combine the facets of containers counted separately
+     * @param other TagFacets to be added
+     * @return these TagFacets
+     */
+    public TagFacets merge(TagFacets other)
+    {
+        other.facets.forEach((key, totals) -> add(key, totals.count, totals.bytes));
+        return this;
+    }
+
+    /** Counts blobs by the values of one dimension
+     * @param dimension Dimension to be counted by
+     * @return Map of value to number of blobs having it, in first-seen order
+     */
+    public Map<String,Long> counts(Dimension dimension)
+    {
+        Map<String,Long> counts = new LinkedHashMap<>();
+        facets.forEach((key, totals) -> counts.merge(key.values[dimension.ordinal()], totals.count, Long::sum));
+        return counts;
+    }
+
+    /** Counts blobs by the values of one dimension within each value of another
+     * @param outer Dimension grouped by first, ie: CONTAINER
+     * @param inner Dimension counted by within each group, ie: DOC_TYPE
+     * @return Map of outer value to Map of inner value to number of blobs, in first-seen order
+     */
+    public Map<String,Map<String,Long>> counts(Dimension outer, Dimension inner)
+    {
+        Map<String,Map<String,Long>> counts = new LinkedHashMap<>();
+        facets.forEach((key, totals) -> counts.computeIfAbsent(key.values[outer.ordinal()], v -> new LinkedHashMap<>())
+            .merge(key.values[inner.ordinal()], totals.count, Long::sum));
+        return counts;
+    }
+
+    /** Sums sizes of blobs by the values of one dimension
+     * @param dimension Dimension to be summed by
+     * @return Map of value to total bytes of blobs having it, in first-seen order
+     */
+    public Map<String,Long> bytes(Dimension dimension)
+    {
+        Map<String,Long> bytes = new LinkedHashMap<>();
+        facets.forEach((key, totals) -> bytes.merge(key.values[dimension.ordinal()], totals.bytes, Long::sum));
+        return bytes;
+    }
+
+    /** @return total number of blobs counted
+     */
+    public long getCount()
+    {
+        return facets.values().stream().mapToLong(t -> t.count).sum();
+    }
+
+    /** @return total bytes of blobs counted
+     */
+    public long getBytes()
+    {
+        return facets.values().stream().mapToLong(t -> t.bytes).sum();
+    }
+
+    /** Writes one row per combination of values, with its number of blobs and bytes
+     * @param file Path of CSV file to be written
+     * @throws IOException if file cannot be written
+     */
+    public void writeCsv(Path file) throws IOException
+    {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8))
+        {
+            for (Dimension d : Dimension.values())
+            {
+                out.write(csv(d.getLabel()));
+                out.write(',');
+            }
+            out.write("Count,Bytes\n");
+            for (Map.Entry<Key,Totals> e : facets.entrySet())
+            {
+                for (String value : e.getKey().values)
+                {
+                    out.write(csv(value));
+                    out.write(',');
+                }
+                out.write(e.getValue().count + "," + e.getValue().bytes + "\n");
+            }
+        }
+    }
+
+    /** Writes an array with one object per combination of values, with its number of blobs and bytes
+     * @param file Path of JSON file to be written
+     * @throws IOException if file cannot be written
+     */
+    public void writeJson(Path file) throws IOException
+    {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8))
+        {
+            out.write('[');
+            String separator = "\n";
+            for (Map.Entry<Key,Totals> e : facets.entrySet())
+            {
+                out.write(separator);
+                out.write("  {");
+                for (Dimension d : Dimension.values())
+                {
+                    out.write(json(d.getLabel()) + ": " + json(e.getKey().values[d.ordinal()]) + ", ");
+                }
+                out.write("\"Count\": " + e.getValue().count + ", \"Bytes\": " + e.getValue().bytes + "}");
+                separator = ",\n";
+            }
+            out.write("\n]\n");
+        }
+    }
+
+    private static String csv(String value)
+    {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+        {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String json(String value)
+    {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (char c : value.toCharArray())
+        {
+            if (c == '"' || c == '\\')
+            {
+                sb.append('\\').append(c);
+            }
+            else if (c < 0x20)
+            {
+                sb.append(String.format("\\u%04x", (int) c));
+            }
+            else
+            {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,268 @@
+package TaggingApplication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import com.azure.storage.blob.models.BlobItemProperties;
+
+/** Local on-disk copy of blob names, ETags, last-modified times and tags, one file per container.
+ * Lets reporting methods answer without listing the container again while the copy is younger than maxAge.
+ * @author Charlene Pang
+ */
+public class TagIndex
+{
+    private static final int MAGIC = 0x54414749;
+    private static final int VERSION = 1;
+
+    private final Path directory;
+    private final Duration maxAge;
+    private final Map<String,ContainerIndex> containers = new ConcurrentHashMap<>();
+
+    /** Indexed state of a single blob */
+    private static class Entry
+    {
+        String etag;
+        long lastModified;
+        long length;
+        Map<String,String> tags;
+
+        boolean sameAs(BlobRecord record)
+        {
+            BlobItemProperties p = record.getProperties();
+            return Objects.equals(etag, p.getETag())
+                && lastModified == toMillis(p.getLastModified())
+                && tags.equals(record.getTags());
+        }
+    }
+
+    /** Indexed state of a container */
+    private static class ContainerIndex
+    {
+        long refreshedAt;
+        Map<String,Entry> entries = new HashMap<>();
+    }
+
+    /** Constructor
+     * @param directory Path of folder holding index files, created if it does not exist
+     * @param maxAge Duration after which a container's index is refreshed from storage before use
+     */
+    public TagIndex(Path directory, Duration maxAge)
+    {
+        this.directory = directory;
+        this.maxAge = maxAge;
+    }
+
+    /** Checks whether container's index was refreshed within maxAge
+     * @param container String representing container name
+     * @return true if index can be used without refreshing
+     */
+    public boolean isFresh(String container)
+    {
+        ContainerIndex index = load(container);
+        synchronized (index)
+        {
+            return index.refreshedAt != 0 && System.currentTimeMillis() - index.refreshedAt <= maxAge.toMillis();
+        }
+    }
+
+    /** Marks container's index as stale, so it is refreshed on next use, also by a later run reading the
+     * index file. Called after tags are written.
+     * @param container String representing container name
+     */
+    public void invalidate(String container)
+    {
+        ContainerIndex index = load(container);
+        synchronized (index)
+        {
+            index.refreshedAt = 0;
+            if (Files.exists(directory.resolve(container + ".idx")))
+            {
+                save(container, index, false);
+            }
+        }
+    }
+
+    /** Updates container's index from a full listing. Only entries whose ETag, last-modified time or tags
+     * differ from the index are replaced, and the index file is rewritten only if something changed.
+     * @param container String representing container name
+     * @param listing Stream of blobs in container with their tags
+     * @return number of entries added, changed or removed
+     */
+    public int refresh(String container, Stream<BlobRecord> listing)
+    {
+        ContainerIndex index = load(container);
+        synchronized (index)
+        {
+            Map<String,Entry> previous = index.entries;
+            Map<String,Entry> current = new HashMap<>(previous.size() * 4 / 3 + 1);
+            int[] changed = {0};
+
+            listing.forEach(record -> {
+                Entry entry = previous.get(record.getName());
+                if (entry == null || !entry.sameAs(record))
+                {
+                    entry = new Entry();
+                    entry.etag = record.getProperties().getETag();
+                    entry.lastModified = toMillis(record.getProperties().getLastModified());
+                    Long length = record.getProperties().getContentLength();
+                    entry.length = length == null ? 0 : length;
+                    entry.tags = new HashMap<>(record.getTags());
+                    changed[0]++;
+                }
+                current.put(record.getName(), entry);
+            });
+            int removed = (int) previous.keySet().stream().filter(name -> !current.containsKey(name)).count();
+
+            index.entries = current;
+            index.refreshedAt = System.currentTimeMillis();
+            save(container, index, changed[0] + removed > 0);
+            System.out.println(String.format("Index for %s refreshed: %d changed, %d removed",
+                container, changed[0], removed));
+            return changed[0] + removed;
+        }
+    }
+
+    /** Gets all blobs recorded in container's index
+     * @param container String representing container name
+     * @return List of blobs with their indexed properties and tags
+     */
+    public List<BlobRecord> records(String container)
+    {
+        ContainerIndex index = load(container);
+        synchronized (index)
+        {
+            List<BlobRecord> records = new ArrayList<>(index.entries.size());
+            index.entries.forEach((name, entry) -> records.add(new BlobRecord(name, new BlobItemProperties()
+                .setETag(entry.etag)
+                .setLastModified(OffsetDateTime.ofInstant(Instant.ofEpochMilli(entry.lastModified), ZoneOffset.UTC))
+                .setContentLength(entry.length), entry.tags)));
+            return records;
+        }
+    }
+
+    /** Gets container's index, reading it from disk the first time it is used
+     * @param container String representing container name
+     * @return ContainerIndex, empty if no index file exists
+     */
+    private ContainerIndex load(String container)
+    {
+        return containers.computeIfAbsent(container, name -> {
+            ContainerIndex index = new ContainerIndex();
+            Path file = directory.resolve(name + ".idx");
+            if (!Files.exists(file))
+            {
+                return index;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+            {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                {
+                    System.out.println("Ignoring index file in unknown format: " + file);
+                    return index;
+                }
+                long refreshedAt = in.readLong();
+                int count = in.readInt();
+                Map<String,Entry> entries = new HashMap<>(count * 4 / 3 + 1);
+                for (int i = 0; i < count; i++)
+                {
+                    String blobName = in.readUTF();
+                    Entry entry = new Entry();
+                    entry.etag = in.readUTF();
+                    entry.lastModified = in.readLong();
+                    entry.length = in.readLong();
+                    int tagCount = in.readUnsignedByte();
+                    entry.tags = new HashMap<>(tagCount * 4 / 3 + 1);
+                    for (int t = 0; t < tagCount; t++)
+                    {
+                        entry.tags.put(in.readUTF(), in.readUTF());
+                    }
+                    entries.put(blobName, entry);
+                }
+                index.entries = entries;
+                index.refreshedAt = refreshedAt;
+            }
+            catch (IOException e)
+            {
+                System.out.println("Could not read index file " + file + " : " + e);
+            }
+            return index;
+        });
+    }
+
+    /** Writes container's index to disk, replacing the previous file in one step
+     * @param container String representing container name
+     * @param index ContainerIndex to be written
+     * @param entriesChanged false if only the refresh time needs to be updated
+     */
+    private void save(String container, ContainerIndex index, boolean entriesChanged)
+    {
+        Path file = directory.resolve(container + ".idx");
+        try
+        {
+            if (!entriesChanged && Files.exists(file))
+            {
+                //entries unchanged, only refresh time in header needs rewriting
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+                {
+                    ByteBuffer header = ByteBuffer.allocate(Long.BYTES);
+                    header.putLong(0, index.refreshedAt);
+                    channel.write(header, 2 * Integer.BYTES);
+                }
+                return;
+            }
+            Files.createDirectories(directory);
+            Path temp = directory.resolve(container + ".idx.tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp))))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(index.refreshedAt);
+                out.writeInt(index.entries.size());
+                for (Map.Entry<String,Entry> e : index.entries.entrySet())
+                {
+                    Entry entry = e.getValue();
+                    out.writeUTF(e.getKey());
+                    out.writeUTF(entry.etag == null ? "" : entry.etag);
+                    out.writeLong(entry.lastModified);
+                    out.writeLong(entry.length);
+                    //blob index allows at most 10 tags per blob
+                    out.writeByte(entry.tags.size());
+                    for (Map.Entry<String,String> tag : entry.tags.entrySet())
+                    {
+                        out.writeUTF(tag.getKey());
+                        out.writeUTF(tag.getValue());
+                    }
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            System.out.println("Could not write index file " + file + " : " + e);
+        }
+    }
+
+    private static long toMillis(OffsetDateTime time)
+    {
+        return time == null ? 0 : time.toInstant().toEpochMilli();
+    }
+}
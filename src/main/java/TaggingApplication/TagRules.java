@@ -0,0 +1,306 @@
+package TaggingApplication;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Rules deriving tags and destination container of a document from its name, shared by uploadFolder, migrate
+ * and migrateFromInbox. Names are taken from the uploaded folder or 'inbox' down, ie: Project/Batch 1/Invoice/scan.pdf.
+ * Rules are written one per line, and compiled once into a matcher that only scans the name for the values it needs:
+ * <pre>
+ * # tag derived from a folder of the name, counted from the first (0) or back from the one holding the file (-1)
+ * DocType = folder -1
+ * # tag set when the whole name (path) or the file name (file) contains a marker
+ * Redacted = True if file contains redacted
+ * # destination container, from tags and the language code, lower-cased without spaces
+ * container = {language}-{DocType}
+ * </pre>
+ * Folder rules only fill in tags entered as TBA, or left out; marker rules override the tag entered.
+ * @author Charlene Pang
+ */
+public class TagRules
+{
+    /** Value of a tag to be derived from the document's name */
+    public static final String TBA = "TBA";
+
+    private static final String[] DEFAULT_RULES = {
+        "DocType = folder -1",
+        "Project Name = folder 0",
+        "Redacted = True if file contains redacted",
+        "container = {language}-{DocType}"
+    };
+
+    //blobs in 'inbox' have always been marked redacted by their whole name
+    private static final String[] INBOX_RULES = {
+        "DocType = folder -1",
+        "Project Name = folder 0",
+        "Redacted = True if path contains redacted",
+        "container = {language}-{DocType}"
+    };
+
+    private static class FolderRule
+    {
+        final String tag;
+        final int index;
+
+        FolderRule(String tag, int index)
+        {
+            this.tag = tag;
+            this.index = index;
+        }
+    }
+
+    private static class MarkerRule
+    {
+        final String tag;
+        final String value;
+        final String marker;
+        final boolean fileOnly;
+
+        MarkerRule(String tag, String value, String marker, boolean fileOnly)
+        {
+            this.tag = tag;
+            this.value = value;
+            this.marker = marker;
+            this.fileOnly = fileOnly;
+        }
+    }
+
+    private final FolderRule[] folderRules;
+    private final MarkerRule[] markerRules;
+    //literal text at even positions, names of placeholders at odd positions
+    private final String[] container;
+
+    private TagRules(List<FolderRule> folderRules, List<MarkerRule> markerRules, String[] container)
+    {
+        this.folderRules = folderRules.toArray(new FolderRule[0]);
+        this.markerRules = markerRules.toArray(new MarkerRule[0]);
+        this.container = container;
+    }
+
+    /** Gets the rules this application has always applied to local files: document type from the folder holding
+     * the file, project from the first folder, redacted if the file name says so, and container {language}-{DocType}
+     * @return TagRules with default rules
+     */
+    public static TagRules defaults()
+    {
+        return compile(Arrays.asList(DEFAULT_RULES));
+    }
+
+    /** Gets the rules this application has always applied to blobs in 'inbox', the defaults except that a blob
+     * is redacted if any part of its name says so
+     * @return TagRules with default rules for 'inbox'
+     */
+    public static TagRules inboxDefaults()
+    {
+        return compile(Arrays.asList(INBOX_RULES));
+    }
+
+    /** Reads rules from a file, one per line. Blank lines and lines starting with # are skipped.
+     * @param file Path of rules file
+     * @return compiled TagRules
+     * @throws IOException if the file cannot be read
+     */
+    public static TagRules load(Path file) throws IOException
+    {
+        return compile(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    /** Compiles rules
+     * @param lines List of rules, one per string
+     * @return compiled TagRules
+     * @throws IllegalArgumentException naming the line of a rule that cannot be read
+     */
+    public static TagRules compile(List<String> lines)
+    {
+        List<FolderRule> folderRules = new ArrayList<>();
+        List<MarkerRule> markerRules = new ArrayList<>();
+        String[] container = null;
+        for (int i = 0; i < lines.size(); i++)
+        {
+            String line = lines.get(i).trim();
+            int equals = line.indexOf('=');
+            if (line.isEmpty() || line.startsWith("#"))
+            {
+                continue;
+            }
+            if (equals <= 0)
+            {
+                throw invalid(i, line, "expected <tag> = <rule>");
+            }
+            String tag = line.substring(0, equals).trim();
+            String rule = line.substring(equals + 1).trim();
+            if (tag.equals("container"))
+            {
+                container = template(i, rule);
+            }
+            else if (rule.startsWith("folder "))
+            {
+                try
+                {
+                    folderRules.add(new FolderRule(tag, Integer.parseInt(rule.substring("folder ".length()).trim())));
+                }
+                catch (NumberFormatException e)
+                {
+                    throw invalid(i, line, "folder takes a number, ie: folder -1");
+                }
+            }
+            else if (rule.contains(" if path contains ") || rule.contains(" if file contains "))
+            {
+                boolean fileOnly = !rule.contains(" if path contains ");
+                String condition = fileOnly ? " if file contains " : " if path contains ";
+                String value = rule.substring(0, rule.indexOf(condition)).trim();
+                String marker = rule.substring(rule.indexOf(condition) + condition.length()).trim();
+                if (marker.isEmpty())
+                {
+                    throw invalid(i, line, "marker is empty");
+                }
+                markerRules.add(new MarkerRule(tag, value, marker, fileOnly));
+            }
+            else
+            {
+                throw invalid(i, line, "expected folder <n>, <value> if path contains <marker> or <value> if file contains <marker>");
+            }
+        }
+        return new TagRules(folderRules, markerRules, container);
+    }
+
+    private static String[] template(int line, String rule)
+    {
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        int open;
+        while ((open = rule.indexOf('{', start)) >= 0)
+        {
+            int close = rule.indexOf('}', open);
+            if (close < 0)
+            {
+                throw invalid(line, rule, "unclosed {");
+            }
+            parts.add(rule.substring(start, open));
+            parts.add(rule.substring(open + 1, close));
+            start = close + 1;
+        }
+        parts.add(rule.substring(start));
+        return parts.toArray(new String[0]);
+    }
+
+    private static IllegalArgumentException invalid(int line, String rule, String reason)
+    {
+        return new IllegalArgumentException(String.format("Tag rule on line %d cannot be read, %s: %s", line + 1, reason, rule));
+    }
+
+    /** Derives tags of a document from its name
+     * @param name String representing name of document from the uploaded folder or 'inbox' down, separated by /
+     * @param tags Map of tag values applied to all documents, TBA where they are to be derived
+     * @return Map of tags of document, a new map
+     */
+    public Map<String,String> derive(String name, Map<String,String> tags)
+    {
+        Map<String,String> derived = new HashMap<>(tags);
+        //folders end at the last separator, the file name follows it
+        int fileStart = name.lastIndexOf('/') + 1;
+        for (FolderRule rule : folderRules)
+        {
+            String value = tags.get(rule.tag);
+            if (value == null || value.equals(TBA))
+            {
+                String folder = folder(name, fileStart, rule.index);
+                if (folder != null)
+                {
+                    derived.put(rule.tag, folder);
+                }
+            }
+        }
+        for (MarkerRule rule : markerRules)
+        {
+            if (name.indexOf(rule.marker, rule.fileOnly ? fileStart : 0) >= 0)
+            {
+                derived.put(rule.tag, rule.value);
+            }
+        }
+        return derived;
+    }
+
+    /** Finds a folder of a name without splitting the whole name
+     * @param name String representing name of document
+     * @param fileStart index at which the file name starts
+     * @param index position of folder, from 0 for the first or from -1 for the one holding the file
+     * @return String representing folder name, null if the name has no such folder
+     */
+    private static String folder(String name, int fileStart, int index)
+    {
+        if (fileStart == 0)
+        {
+            return null;
+        }
+        if (index >= 0)
+        {
+            int start = 0;
+            for (int i = 0; i < index; i++)
+            {
+                int slash = name.indexOf('/', start);
+                if (slash >= fileStart - 1)
+                {
+                    return null;
+                }
+                start = slash + 1;
+            }
+            return name.substring(start, name.indexOf('/', start));
+        }
+        int end = fileStart - 1;
+        for (int i = -1; i > index; i--)
+        {
+            end = name.lastIndexOf('/', end - 1);
+            if (end < 0)
+            {
+                return null;
+            }
+        }
+        return name.substring(name.lastIndexOf('/', end - 1) + 1, end);
+    }
+
+    /** Names destination container of a document. Tags and language are lower-cased and spaces removed,
+     * ie: "Purchase Order" in en gives en-purchaseorder.
+     * @param language String representing the language code to be used as the container's prefix
+     * @param tags Map of tags of document, as derived
+     * @return String representing container name
+     * @throws IllegalStateException if no container rule is set
+     */
+    public String container(String language, Map<String,String> tags)
+    {
+        if (container == null)
+        {
+            throw new IllegalStateException("No container rule, add one such as container = {language}-{DocType}");
+        }
+        StringBuilder name = new StringBuilder(32);
+        for (int i = 0; i < container.length; i++)
+        {
+            if (i % 2 == 0)
+            {
+                name.append(container[i]);
+                continue;
+            }
+            String value = container[i].equals("language") ? language : tags.get(container[i]);
+            if (value == null)
+            {
+                throw new IllegalArgumentException("Tag " + container[i] + " of container rule is missing");
+            }
+            for (int c = 0; c < value.length(); c++)
+            {
+                char ch = value.charAt(c);
+                if (ch != ' ')
+                {
+                    name.append(Character.toLowerCase(ch));
+                }
+            }
+        }
+        return name.toString();
+    }
+}
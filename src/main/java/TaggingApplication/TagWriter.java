@@ -0,0 +1,122 @@
+package TaggingApplication;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.azure.storage.blob.models.BlobStorageException;
+import reactor.core.publisher.Mono;
+
+/** Writes tags of blobs in a container only when they differ from the tags observed in a listing.
+ * Writes are conditional on the blob still carrying the observed tags, so a blob re-tagged by another job
+ * since the listing is left alone and counted as a conflict. Safe to share between concurrent writes.
+ * @author Charlene Pang
+ */
+public class TagWriter
+{
+    private final BlobBackend backend;
+    private final String container;
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger conflicts = new AtomicInteger();
+
+    /** Constructor
+     * @param backend BlobBackend tags are written through
+     * @param container String representing name of container whose blobs are written
+     */
+    public TagWriter(BlobBackend backend, String container)
+    {
+        this.backend = backend;
+        this.container = container;
+    }
+
+    /** Replaces tags of blob, unless they already equal the desired tags. A blob listed without tags
+     * cannot be matched by a tag condition, so its tags are read again just before writing
+     * and it is only written if it is still untagged.
+     * @param observed BlobRecord with the blob's tags as listed
+     * @param desired Map of tags the blob should have
+     * @return Mono emitting true if tags were written
+     */
+    public Mono<Boolean> write(BlobRecord observed, Map<String,String> desired)
+    {
+        if (desired.equals(observed.getTags()))
+        {
+            skipped.incrementAndGet();
+            return Mono.just(false);
+        }
+        if (observed.getTags().isEmpty())
+        {
+            return backend.getTags(container, observed.getName())
+                .flatMap(current -> current.isEmpty() ? send(observed, desired, null) : conflict(observed));
+        }
+        return send(observed, desired, matching(observed.getTags()));
+    }
+
+    /** Sends tags of blob
+     * @param observed BlobRecord with the blob's tags as listed
+     * @param desired Map of tags the blob should have
+     * @param condition String tag condition blob has to meet, null to write regardless
+     * @return Mono emitting true if tags were written, false if the condition did not hold
+     */
+    private Mono<Boolean> send(BlobRecord observed, Map<String,String> desired, String condition)
+    {
+        return backend.setTags(container, observed.getName(), desired, condition)
+            .then(Mono.fromCallable(() -> {
+                written.incrementAndGet();
+                return true;
+            }))
+            .onErrorResume(e -> e instanceof BlobStorageException && ((BlobStorageException) e).getStatusCode() == 412,
+                e -> conflict(observed));
+    }
+
+    /** Counts a blob whose tags changed since listing; the other job's tags are left in place
+     * @param observed BlobRecord with the blob's tags as listed
+     * @return Mono emitting false
+     */
+    private Mono<Boolean> conflict(BlobRecord observed)
+    {
+        conflicts.incrementAndGet();
+        System.out.println("Tags of " + observed.getName() + " changed since listing, not overwritten");
+        return Mono.just(false);
+    }
+
+    /** Builds tag condition matching every tag in map, values quoted by tagEquals so that ones holding a single
+     * quote, ie: a Project Name such as O'Brien, still give a valid x-ms-if-tags header
+     * @param tags Map of tags to be matched
+     * @return String tag condition expression
+     */
+    private static String matching(Map<String,String> tags)
+    {
+        StringBuilder condition = new StringBuilder();
+        for (Map.Entry<String,String> tag : tags.entrySet())
+        {
+            if (condition.length() > 0)
+            {
+                condition.append(" AND ");
+            }
+            condition.append(StorageService.tagEquals(tag.getKey(), tag.getValue()));
+        }
+        return condition.toString();
+    }
+
+    public int getWritten()
+    {
+        return written.get();
+    }
+
+    public int getSkipped()
+    {
+        return skipped.get();
+    }
+
+    public int getConflicts()
+    {
+        return conflicts.get();
+    }
+
+    /** Prints number of tag writes sent, skipped as unchanged and refused because of concurrent changes
+     */
+    public void printSummary()
+    {
+        System.out.println(String.format("%d tag writes sent, %d skipped as unchanged, %d conflicts",
+            getWritten(), getSkipped(), getConflicts()));
+    }
+}
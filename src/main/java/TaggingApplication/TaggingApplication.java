@@ -39,6 +39,11 @@ public class TaggingApplication
         String connectStr = "";
 
         StorageService storage = new StorageService(connectStr);
+        //or, to size the shared connection pool for high worker counts:
+        //StorageService storage = new StorageService(connectStr, new ConnectionSettings().setMaxConnections(256));
+        //or, to try settings offline against an in-memory account that answers in 20-30 ms and throttles above 500 requests/s:
+        //StorageService storage = new StorageService(new InMemoryBlobBackend(seed)
+        //    .setLatency(Duration.ofMillis(20), Duration.ofMillis(10)).setRequestRateLimit(500));
         //default tag values. modify tag values if required
 
         //input the path to sourceFolder for uploading from Google Drive/from local device
@@ -50,21 +55,65 @@ public class TaggingApplication
         //Language codes: cn-chinese, en-english, jp-japanese, ru-russian
         String language = "en";
 
+        //number of requests kept in flight by bulk operations, ie: uploadFolder/migrate/changeTags
+        //storage.setWorkerCount(workerCount);
+
+        //cap request rate and upload bandwidth of all functions, ie: to leave room for other jobs on the account
+        //storage.setRequestRateLimit(requestsPerSecond);
+        //storage.setBandwidthLimit(bytesPerSecond);
+
+        //files above 32 MB are uploaded as 8 MB memory-mapped blocks, up to 8 blocks of a file at once
+        //storage.setLargeFileTransfer(16L * 1024 * 1024, 16, 64L * 1024 * 1024);
+
+        //walk 8 subfolders at once when uploading from a network drive
+        //storage.setWalkParallelism(8);
+
+        //number of containers scanned at once by listDocTypesAll/facetsAll
+        //storage.setScanParallelism(16);
+
+        //write request counts and latencies every minute, ie: for a Prometheus textfile collector
+        //Disposable dumps = storage.dumpMetrics("storage.prom", Duration.ofMinutes(1)); dispose it once jobs are done
+
+        //answer reporting functions from a local tag index refreshed at most every 10 minutes
+        //storage.useTagIndex(".tagindex", Duration.ofMinutes(10));
+
+        //let changeTags, migrateFromInbox and relocate resume from the last completed listing page
+        //storage.useCheckpoints(".checkpoints");
+
+        //let uploadFolder, migrate and migrateFromInbox skip work completed by an interrupted earlier run
+        //storage.useJournal(".journal");
+
+        //assign Set tag while uploading, 30% of input documents to test set
+        //storage.assignSetOnIngest(0.3, seed);
+
+        //derive DocType, Project Name, Redacted and containers from folder names with rules read from a file
+        //storage.useTagRules(TagRules.load(Paths.get("tag-rules.txt")));
+
         //uncomment functions to run.
         //storage.addTags(container, tags, blobName);
         //storage.changeTags(container, field, tagValue);
         //storage.changeTags(container, field, tagValue, sequence);
         //storage.createContainer(destContainerName)
+        //storage.findBlobsByTags(query, containerName);
         //storage.findDocType(value, containerName);
+        //storage.facets(container).writeCsv(Paths.get("facets.csv"));
+        //storage.facetsAll().writeJson(Paths.get("facets.json"));
         //storage.listDocTypes(container);
         //storage.listDocTypesAll();
+        //storage.listDocTypesAll(language);
         //storage.listSetFields(container);
         //storage.migrate(path, tags, language);
         //storage.migrateFromInbox(tags, language, ocrOutputType);
         //storage.regroup(value, destContainerName, sourceContainerName);
         //storage.relocate(container1, container2);
         //storage.transferToTest(container, outputType);
+        //storage.transferToTest(container, outputType, testRatio, seed);
         //storage.uploadFolder(path, container, tags, outputTypes);
+        //storage.uploadFolder(path, container, tags, outputTypes, true);
+        //plan a job without writing anything, print it as a dry run, then run it
+        //TransferPlan plan = storage.planMigrateFromInbox(tags, language, ocrOutputType);
+        //plan.printSummary();
+        //storage.execute(plan);
 
         System.out.println("Done"); 
     }
@@ -0,0 +1,426 @@
+package TaggingApplication;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/** Every request a job will send, worked out before any is sent: containers to create, files to upload,
+ * blobs to copy and tags to write. Operations are kept once per target blob, so a blob planned twice is written
+ * once, and a tag write on a blob that is also uploaded or copied is sent along with that request.
+ * Work is grouped in phases run one after the other: containers, then input documents, then output files,
+ * each phase in parallel. Built by the plan methods of StorageService and run by StorageService.execute.
+ * @author Charlene Pang
+ */
+public class TransferPlan
+{
+    /** Kind of request an operation sends */
+    public enum Kind
+    {
+        CREATE_CONTAINER, UPLOAD, COPY, SET_TAGS
+    }
+
+    /** Group of operations that only start once the previous group is done */
+    public enum Phase
+    {
+        CONTAINERS, INPUTS, OUTPUTS
+    }
+
+    /** One planned write, to a container or a blob */
+    public static class Operation
+    {
+        private final Kind kind;
+        private final Phase phase;
+        private final String container;
+        private final String blobName;
+        private final Path file;
+        private final String sourceContainer;
+        private final String sourceBlob;
+        private final Map<String,String> tags;
+        private final long bytes;
+        private final int requests;
+        private String input;
+        private MigrationJournal.Step step;
+        private String journalKey;
+        private String fingerprint;
+
+        private Operation(Kind kind, Phase phase, String container, String blobName, Path file, String sourceContainer,
+            String sourceBlob, Map<String,String> tags, long bytes, int requests)
+        {
+            this.kind = kind;
+            this.phase = phase;
+            this.container = container;
+            this.blobName = blobName;
+            this.file = file;
+            this.sourceContainer = sourceContainer;
+            this.sourceBlob = sourceBlob;
+            this.tags = tags;
+            this.bytes = bytes;
+            this.requests = requests;
+        }
+
+        /** Plans creation of a container
+         * @param container String representing container name
+         * @return Operation creating container
+         */
+        public static Operation createContainer(String container)
+        {
+            return new Operation(Kind.CREATE_CONTAINER, Phase.CONTAINERS, container, null, null, null, null, null, 0, 1);
+        }
+
+        /** Plans upload of a local file with its tags
+         * @param phase Phase of upload, INPUTS or OUTPUTS
+         * @param container String representing destination container's name
+         * @param blobName String representing name of blob to be written
+         * @param file Path of local file
+         * @param tags Map of tags sent with the upload
+         * @param bytes long size of file
+         * @param requests number of requests the upload is expected to take
+         * @return Operation uploading file
+         */
+        public static Operation upload(Phase phase, String container, String blobName, Path file, Map<String,String> tags,
+            long bytes, int requests)
+        {
+            return new Operation(Kind.UPLOAD, phase, container, blobName, file, null, null, tags, bytes, requests);
+        }
+
+        /** Plans a server-side copy with tags set on the destination
+         * @param phase Phase of copy, INPUTS or OUTPUTS
+         * @param sourceContainer String representing name of container holding source blob
+         * @param sourceBlob String representing name of source blob
+         * @param container String representing name of destination container
+         * @param blobName String representing name of destination blob
+         * @param tags Map of tags set on destination by the copy
+         * @param bytes long size of source blob
+         * @param requests number of requests the copy is expected to take
+         * @return Operation copying blob
+         */
+        public static Operation copy(Phase phase, String sourceContainer, String sourceBlob, String container,
+            String blobName, Map<String,String> tags, long bytes, int requests)
+        {
+            return new Operation(Kind.COPY, phase, container, blobName, null, sourceContainer, sourceBlob, tags, bytes,
+                requests);
+        }
+
+        /** Plans replacement of a blob's tags
+         * @param phase Phase of tag write
+         * @param container String representing container name
+         * @param blobName String representing blob name
+         * @param tags Map of tags to be set
+         * @return Operation writing tags
+         */
+        public static Operation setTags(Phase phase, String container, String blobName, Map<String,String> tags)
+        {
+            return new Operation(Kind.SET_TAGS, phase, container, blobName, null, null, null, tags, 0, 1);
+        }
+
+        /** Sets the input document an output file follows; the output is not written if its input failed
+         * @param input String key of the input's operation
+         * @return this Operation
+         */
+        public Operation after(String input)
+        {
+            this.input = input;
+            return this;
+        }
+
+        /** Sets the journal record written once this operation succeeds
+         * @param step MigrationJournal.Step completed
+         * @param journalKey String identifying source
+         * @param fingerprint String identifying state of source, null to record nothing
+         * @return this Operation
+         */
+        public Operation journal(MigrationJournal.Step step, String journalKey, String fingerprint)
+        {
+            this.step = step;
+            this.journalKey = journalKey;
+            this.fingerprint = fingerprint;
+            return this;
+        }
+
+        /** @return String identifying the target, container for container creation or container/blob name
+         */
+        public String getKey()
+        {
+            return blobName == null ? container : container + "/" + blobName;
+        }
+
+        public Kind getKind()
+        {
+            return kind;
+        }
+
+        public Phase getPhase()
+        {
+            return phase;
+        }
+
+        public String getContainer()
+        {
+            return container;
+        }
+
+        public String getBlobName()
+        {
+            return blobName;
+        }
+
+        public Path getFile()
+        {
+            return file;
+        }
+
+        public String getSourceContainer()
+        {
+            return sourceContainer;
+        }
+
+        public String getSourceBlob()
+        {
+            return sourceBlob;
+        }
+
+        public Map<String,String> getTags()
+        {
+            return tags;
+        }
+
+        public long getBytes()
+        {
+            return bytes;
+        }
+
+        public int getRequests()
+        {
+            return requests;
+        }
+
+        /** @return String key of the input's operation, null unless this is an output file
+         */
+        public String getInput()
+        {
+            return input;
+        }
+
+        public MigrationJournal.Step getStep()
+        {
+            return step;
+        }
+
+        public String getJournalKey()
+        {
+            return journalKey;
+        }
+
+        public String getFingerprint()
+        {
+            return fingerprint;
+        }
+
+        /** Tells whether operation writes the same content from the same source as another
+         * @param other Operation on the same target
+         * @return true if sending both would change nothing
+         */
+        private boolean sameAs(Operation other)
+        {
+            return kind == other.kind && Objects.equals(file, other.file) && Objects.equals(sourceContainer, other.sourceContainer)
+                && Objects.equals(sourceBlob, other.sourceBlob) && Objects.equals(tags, other.tags);
+        }
+
+        /** Copy of operation sending other tags
+         * @param tags Map of tags
+         * @return Operation with the same target and source
+         */
+        private Operation withTags(Map<String,String> tags)
+        {
+            Operation op = new Operation(kind, phase, container, blobName, file, sourceContainer, sourceBlob, tags, bytes,
+                requests);
+            op.input = input;
+            op.step = step;
+            op.journalKey = journalKey;
+            op.fingerprint = fingerprint;
+            return op;
+        }
+    }
+
+    private final String job;
+    private final String scope;
+    private final String operation;
+    private final Map<String,Operation> operations = new LinkedHashMap<>();
+    private final List<String> unresolved = new ArrayList<>();
+    private int duplicates;
+    private int folded;
+    private int superseded;
+    private int alreadyDone;
+    private int planningRequests;
+
+    /** Constructor
+     * @param job String naming job planned, ie: migrateFromInbox
+     * @param scope String representing container or language code the job works on, for its metrics
+     * @param operation String identifying the job and its arguments, shared with its journal
+     */
+    public TransferPlan(String job, String scope, String operation)
+    {
+        this.job = job;
+        this.scope = scope;
+        this.operation = operation;
+    }
+
+    /** Adds an operation, unless an operation already planned on the same target makes it unnecessary.
+     * A tag write on a blob that is uploaded or copied is merged into that request; a different write on the
+     * same blob replaces the earlier one, as it would have overwritten it.
+     * @param op Operation to be added
+     */
+    public void add(Operation op)
+    {
+        String key = op.getKey();
+        Operation planned = operations.get(key);
+        if (planned == null)
+        {
+            operations.put(key, op);
+        }
+        else if (planned.sameAs(op))
+        {
+            //containers are met once per file, only repeated writes of a blob are worth reporting
+            if (op.kind != Kind.CREATE_CONTAINER)
+            {
+                duplicates++;
+            }
+        }
+        else if (op.kind == Kind.SET_TAGS && planned.kind != Kind.SET_TAGS)
+        {
+            operations.put(key, planned.withTags(op.tags));
+            folded++;
+        }
+        else if (planned.kind == Kind.SET_TAGS)
+        {
+            operations.put(key, op);
+            folded++;
+        }
+        else
+        {
+            System.out.println(key + " is written twice, " + describe(op) + " replaces " + describe(planned));
+            operations.put(key, op);
+            superseded++;
+        }
+    }
+
+    private static String describe(Operation op)
+    {
+        return op.file != null ? op.file.toString() : op.sourceContainer + "/" + op.sourceBlob;
+    }
+
+    /** Tells whether an operation on a target is planned
+     * @param key String identifying target, as given by Operation.getKey
+     * @return true if planned
+     */
+    public boolean contains(String key)
+    {
+        return operations.containsKey(key);
+    }
+
+    /** Counts work left out because the job's journal shows an earlier run completed it
+     */
+    public void alreadyDone()
+    {
+        alreadyDone++;
+    }
+
+    /** Records an item that cannot be planned, ie: an output file whose input is not found
+     * @param item String identifying file/blob
+     * @param reason String explaining why it is left out
+     */
+    public void unresolved(String item, String reason)
+    {
+        unresolved.add(item + " : " + reason);
+    }
+
+    /** Counts requests sent while planning, ie: listing pages and tag reads
+     * @param requests number of requests
+     */
+    public void planned(int requests)
+    {
+        planningRequests += requests;
+    }
+
+    public String getJob()
+    {
+        return job;
+    }
+
+    public String getScope()
+    {
+        return scope;
+    }
+
+    public String getOperation()
+    {
+        return operation;
+    }
+
+    /** Gets operations of a phase in the order they were planned
+     * @param phase Phase of operations
+     * @return List of operations
+     */
+    public List<Operation> getOperations(Phase phase)
+    {
+        List<Operation> ops = new ArrayList<>();
+        for (Operation op : operations.values())
+        {
+            if (op.phase == phase)
+            {
+                ops.add(op);
+            }
+        }
+        return ops;
+    }
+
+    /** @return number of operations planned
+     */
+    public int size()
+    {
+        return operations.size();
+    }
+
+    /** @return estimated number of requests executing the plan takes, without retries
+     */
+    public long getEstimatedRequests()
+    {
+        long requests = 0;
+        for (Operation op : operations.values())
+        {
+            requests += op.requests;
+        }
+        return requests;
+    }
+
+    /** Prints what executing the plan would do, per phase, with the number of requests it is expected to send.
+     * Nothing is written by planning, so this is the dry run of the job.
+     */
+    public void printSummary()
+    {
+        System.out.println(String.format("Plan %s : %d operations, about %d requests (%d sent while planning)",
+            operation, size(), getEstimatedRequests(), planningRequests));
+        for (Phase phase : Phase.values())
+        {
+            Map<Kind,long[]> kinds = new EnumMap<>(Kind.class);
+            for (Operation op : getOperations(phase))
+            {
+                long[] totals = kinds.computeIfAbsent(op.kind, k -> new long[3]);
+                totals[0]++;
+                totals[1] += op.requests;
+                totals[2] += op.bytes;
+            }
+            kinds.forEach((kind, totals) -> System.out.println(String.format(Locale.ROOT,
+                "  %s : %d %s, %d requests, %.1f MB", phase.name().toLowerCase(Locale.ROOT), totals[0],
+                kind.name().toLowerCase(Locale.ROOT), totals[1], totals[2] / (1024.0 * 1024.0))));
+        }
+        System.out.println(String.format("  %d duplicates dropped, %d tag writes merged, %d writes replaced, %d already done, %d unresolved",
+            duplicates, folded, superseded, alreadyDone, unresolved.size()));
+        unresolved.forEach(item -> System.out.println("  Unresolved: " + item));
+    }
+}
@@ -0,0 +1,63 @@
+package TaggingApplication;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Outcome of a batch of transfers: number of successes and the exception raised for every failed file/blob
+ * @author Charlene Pang
+ */
+public class TransferReport
+{
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final Map<String,Exception> failures = new ConcurrentHashMap<>();
+
+    /** Records a successful transfer
+     * @param key String identifying the file/blob transferred
+     */
+    public void success(String key)
+    {
+        succeeded.incrementAndGet();
+    }
+
+    /** Records a failed transfer
+     * @param key String identifying the file/blob transferred
+     * @param e Exception that caused the failure
+     */
+    public void failure(String key, Exception e)
+    {
+        failures.put(key, e);
+    }
+
+    /** Adds the results of another report to this one
+     * @param other TransferReport to be merged
+     * @return this report
+     */
+    public TransferReport merge(TransferReport other)
+    {
+        succeeded.addAndGet(other.getSucceeded());
+        failures.putAll(other.getFailures());
+        return this;
+    }
+
+    public int getSucceeded()
+    {
+        return succeeded.get();
+    }
+
+    /** @return Map of failed file/blob to the exception raised for it
+     */
+    public Map<String,Exception> getFailures()
+    {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /** Prints number of transfers completed and every failed file/blob
+     */
+    public void printSummary()
+    {
+        System.out.println(String.format("%d transferred, %d failed", getSucceeded(), failures.size()));
+        failures.forEach((key, e) -> System.out.println("Failed: " + key + " : " + e));
+    }
+}
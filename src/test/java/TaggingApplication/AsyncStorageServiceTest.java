@@ -0,0 +1,116 @@
+package TaggingApplication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import reactor.core.publisher.Flux;
+
+/** Tests of running a batch against the in-memory account: how many requests are in flight, and which
+ * failed items are run again
+ * @author Charlene Pang
+ */
+public class AsyncStorageServiceTest
+{
+    private static final int ITEMS = 60;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+
+    @Before
+    public void writeFile() throws IOException
+    {
+        file = folder.newFile("scan.pdf").toPath();
+        Files.write(file, new byte[100]);
+    }
+
+    private static Flux<Integer> items()
+    {
+        return Flux.range(0, ITEMS);
+    }
+
+    @Test
+    public void requestsInFlightAreBoundedByMaxInFlight()
+    {
+        InMemoryBlobBackend backend = new InMemoryBlobBackend(1).setLatency(Duration.ofMillis(3), Duration.ofMillis(2));
+        backend.createContainer("invoice").block();
+        AsyncStorageService async = new AsyncStorageService(backend, 16, 32);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        TransferReport report = async.execute(items(), i -> "scan" + i, i ->
+            async.upload("invoice", "scan" + i + ".pdf", file.toString(), Collections.emptyMap())
+                .doOnSubscribe(s -> maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max))
+                .doOnTerminate(inFlight::decrementAndGet), 4).block();
+
+        assertEquals(ITEMS, report.getSucceeded());
+        assertEquals(ITEMS, backend.size("invoice"));
+        assertEquals(4, maxInFlight.get());
+    }
+
+    @Test
+    public void transientFailuresAreRetriedWithinThreeRounds()
+    {
+        InMemoryBlobBackend backend = new InMemoryBlobBackend(7);
+        backend.createContainer("invoice").block();
+        //half of all requests from now on fail with 500 Internal Error
+        backend.setFailureRate(0.5);
+        AsyncStorageService async = new AsyncStorageService(backend, 8, 16);
+        async.setRetryDelay(Duration.ofMillis(1));
+        Map<Integer,AtomicInteger> attempts = new ConcurrentHashMap<>();
+
+        TransferReport report = async.execute(items(), i -> "scan" + i, i -> {
+            attempts.computeIfAbsent(i, k -> new AtomicInteger()).incrementAndGet();
+            return async.upload("invoice", "scan" + i + ".pdf", file.toString(), Collections.emptyMap());
+        }).block();
+
+        assertEquals(ITEMS, report.getSucceeded() + report.getFailures().size());
+        assertEquals(report.getSucceeded(), backend.size("invoice"));
+        int retried = 0;
+        for (Map.Entry<Integer,AtomicInteger> e : attempts.entrySet())
+        {
+            int n = e.getValue().get();
+            //the first run and at most 3 retry rounds
+            assertTrue("scan" + e.getKey() + " run " + n + " times", n >= 1 && n <= 4);
+            if (report.getFailures().containsKey("scan" + e.getKey()))
+            {
+                assertEquals(4, n);
+            }
+            retried += n > 1 ? 1 : 0;
+        }
+        assertTrue(retried > 0);
+        assertTrue(report.getSucceeded() > ITEMS / 2);
+    }
+
+    @Test
+    public void otherFailuresAreNotRetried()
+    {
+        InMemoryBlobBackend backend = new InMemoryBlobBackend();
+        backend.createContainer("invoice").block();
+        AsyncStorageService async = new AsyncStorageService(backend, 8, 16);
+        async.setRetryDelay(Duration.ofMillis(1));
+        AtomicInteger attempts = new AtomicInteger();
+
+        //tags of blobs that do not exist: 404 Not Found
+        TransferReport report = async.execute(items(), i -> "scan" + i, i -> {
+            attempts.incrementAndGet();
+            return async.getBackend().getTags("invoice", "scan" + i + ".pdf");
+        }).block();
+
+        assertEquals(ITEMS, report.getFailures().size());
+        assertEquals(ITEMS, attempts.get());
+    }
+}
@@ -0,0 +1,262 @@
+package TaggingApplication;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.azure.core.http.HttpHeaders;
+import com.azure.core.http.HttpMethod;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.http.HttpResponse;
+import com.azure.storage.blob.BlobServiceClientBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/** Tests of polling server-side copies and of uploading large files as blocks, against a stand-in for the
+ * Blob service
+ * @author Charlene Pang
+ */
+public class AzureBlobBackendTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Answers Put Block and Put Block List, keeping the bytes of each block and the MD5 sent with the list */
+    private static final class UploadService
+    {
+        private final AtomicInteger blocks = new AtomicInteger();
+        private final AtomicInteger bytes = new AtomicInteger();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+        private final Map<String,String> contentMd5s = new ConcurrentHashMap<>();
+        private volatile String contentMd5;
+
+        Mono<HttpResponse> respond(HttpRequest request)
+        {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set("x-ms-request-id", "test");
+            headers.set("x-ms-version", "2020-06-12");
+            headers.set("ETag", "\"0x1\"");
+            headers.set("Last-Modified", "Sat, 17 Oct 2026 00:00:00 GMT");
+            headers.set("Date", "Sat, 17 Oct 2026 00:00:00 GMT");
+            headers.set("x-ms-request-server-encrypted", "true");
+            if (request.getUrl().getQuery().contains("comp=blocklist"))
+            {
+                contentMd5 = request.getHeaders().getValue("x-ms-blob-content-md5");
+                contentMd5s.put(request.getUrl().getPath(), contentMd5);
+                return Mono.just(new Response(request, 201, headers));
+            }
+            blocks.incrementAndGet();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return request.getBody().map(ByteBuffer::remaining).reduce(0, Integer::sum)
+                .delayElement(Duration.ofMillis(5))
+                .map(length -> {
+                    bytes.addAndGet(length);
+                    inFlight.decrementAndGet();
+                    return new Response(request, 201, headers);
+                });
+        }
+    }
+    /** Answers Copy Blob with a pending copy, then reports it pending on the first polls */
+    private static final class CopyService
+    {
+        private final int pendingPolls;
+        private final String finalStatus;
+        private final AtomicInteger polls = new AtomicInteger();
+        private final List<Long> pollTimes = Collections.synchronizedList(new ArrayList<>());
+
+        CopyService(int pendingPolls, String finalStatus)
+        {
+            this.pendingPolls = pendingPolls;
+            this.finalStatus = finalStatus;
+        }
+
+        Mono<HttpResponse> respond(HttpRequest request)
+        {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set("x-ms-request-id", "test");
+            headers.set("x-ms-version", "2020-06-12");
+            if (request.getHttpMethod() == HttpMethod.PUT)
+            {
+                headers.set("x-ms-copy-id", "copy-1");
+                headers.set("x-ms-copy-status", "pending");
+                headers.set("ETag", "\"0x1\"");
+                return Mono.just(new Response(request, 202, headers));
+            }
+            pollTimes.add(System.nanoTime());
+            String status = polls.incrementAndGet() <= pendingPolls ? "pending" : finalStatus;
+            headers.set("x-ms-copy-id", "copy-1");
+            headers.set("x-ms-copy-status", status);
+            headers.set("x-ms-copy-source", "https://account.blob.core.windows.net/inbox/scan.pdf");
+            headers.set("x-ms-copy-progress", "0/1");
+            headers.set("x-ms-blob-type", "BlockBlob");
+            headers.set("Content-Length", "0");
+            headers.set("ETag", "\"0x1\"");
+            headers.set("Last-Modified", "Sat, 17 Oct 2026 00:00:00 GMT");
+            headers.set("Date", "Sat, 17 Oct 2026 00:00:00 GMT");
+            return Mono.just(new Response(request, 200, headers));
+        }
+    }
+
+    private static final class Response extends HttpResponse
+    {
+        private final int status;
+        private final HttpHeaders headers;
+
+        Response(HttpRequest request, int status, HttpHeaders headers)
+        {
+            super(request);
+            this.status = status;
+            this.headers = headers;
+        }
+
+        @Override
+        public int getStatusCode()
+        {
+            return status;
+        }
+
+        @Override
+        public String getHeaderValue(String name)
+        {
+            return headers.getValue(name);
+        }
+
+        @Override
+        public HttpHeaders getHeaders()
+        {
+            return headers;
+        }
+
+        @Override
+        public Flux<ByteBuffer> getBody()
+        {
+            return Flux.empty();
+        }
+
+        @Override
+        public Mono<byte[]> getBodyAsByteArray()
+        {
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<String> getBodyAsString()
+        {
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<String> getBodyAsString(Charset charset)
+        {
+            return Mono.empty();
+        }
+    }
+
+    private static AzureBlobBackend backend(CopyService service)
+    {
+        return new AzureBlobBackend(new BlobServiceClientBuilder()
+            .endpoint("https://account.blob.core.windows.net")
+            .httpClient(service::respond)
+            .buildAsyncClient(), 16);
+    }
+
+    private static AzureBlobBackend backend(UploadService service)
+    {
+        return new AzureBlobBackend(new BlobServiceClientBuilder()
+            .endpoint("https://account.blob.core.windows.net")
+            .httpClient(service::respond)
+            .buildAsyncClient(), 16);
+    }
+
+    @Test
+    public void largeFileIsStagedAsBlocksAndCommittedWithItsMd5() throws IOException
+    {
+        byte[] content = new byte[10 * 1024 + 100];
+        new Random(1).nextBytes(content);
+        Path file = folder.newFile("scan.pdf").toPath();
+        Files.write(file, content);
+        UploadService service = new UploadService();
+        AzureBlobBackend backend = backend(service);
+        backend.setLargeFileTransfer(1024, 4, 2048);
+
+        backend.upload("invoice", "scan.pdf", file, Collections.emptyMap(), null).block();
+
+        assertEquals(11, service.blocks.get());
+        assertEquals(content.length, service.bytes.get());
+        assertArrayEquals(DeltaSync.md5(file), Base64.getDecoder().decode(service.contentMd5));
+    }
+
+    @Test
+    public void largeFilesInFlightTogetherStayWithinConnectionBudget() throws IOException
+    {
+        byte[] content = new byte[20 * 1024];
+        new Random(2).nextBytes(content);
+        Path file = folder.newFile("scan.pdf").toPath();
+        Files.write(file, content);
+        UploadService service = new UploadService();
+        AzureBlobBackend backend = backend(service);
+        backend.setLargeFileTransfer(1024, 4, 2048);
+        backend.setConnectionBudget(6);
+
+        Flux.range(0, 8)
+            .flatMap(i -> backend.upload("invoice", "scan" + i + ".pdf", file, Collections.emptyMap(), null))
+            .blockLast();
+
+        assertEquals(8 * 20, service.blocks.get());
+        assertEquals(8 * content.length, service.bytes.get());
+        //one upload alone is held to 4 blocks at once, all of them together to the budget of 6
+        assertTrue("max in flight " + service.maxInFlight.get(), service.maxInFlight.get() <= 6);
+        assertEquals(6, service.maxInFlight.get());
+        assertEquals(8, service.contentMd5s.size());
+    }
+
+    @Test
+    public void pendingCopyIsPolledLessOftenUntilItSucceeds()
+    {
+        CopyService service = new CopyService(3, "success");
+
+        backend(service).copy("inbox", "scan.pdf", "invoice", "scan.pdf", null).block();
+
+        assertEquals(4, service.polls.get());
+        List<Long> times = service.pollTimes;
+        long first = times.get(1) - times.get(0);
+        long last = times.get(3) - times.get(2);
+        assertTrue("intervals " + first / 1_000_000 + " ms then " + last / 1_000_000 + " ms", last > first * 3);
+    }
+
+    @Test
+    public void failedCopyIsReported()
+    {
+        CopyService service = new CopyService(1, "failed");
+
+        try
+        {
+            backend(service).copy("inbox", "scan.pdf", "invoice", "scan.pdf", null).block();
+            fail("copy should fail");
+        }
+        catch (IllegalStateException e)
+        {
+            assertTrue(e.getMessage(), e.getMessage().contains("FAILED") || e.getMessage().contains("failed"));
+        }
+        assertEquals(2, service.polls.get());
+    }
+}
@@ -0,0 +1,65 @@
+package TaggingApplication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/** Tests of sharing a fixed number of connections between requests, and of getting them back
+ * @author Charlene Pang
+ */
+public class ConnectionBudgetTest
+{
+    @Test
+    public void requestWaitsForFreeConnection()
+    {
+        ConnectionBudget budget = new ConnectionBudget(1);
+        Sinks.One<String> first = Sinks.one();
+        AtomicBoolean secondSent = new AtomicBoolean();
+
+        budget.use(first::asMono).subscribe();
+        budget.use(() -> {
+            secondSent.set(true);
+            return Mono.just("second");
+        }).subscribe();
+
+        assertFalse(secondSent.get());
+        first.tryEmitValue("first");
+        assertTrue(secondSent.get());
+        assertEquals(1, budget.getAvailable());
+    }
+
+    @Test
+    public void failedAndCancelledRequestsGiveBackConnections()
+    {
+        ConnectionBudget budget = new ConnectionBudget(2);
+
+        budget.use(() -> Mono.error(new IllegalStateException("failed"))).onErrorResume(e -> Mono.empty()).block();
+        budget.use(() -> {
+            throw new IllegalStateException("not sent");
+        }).onErrorResume(e -> Mono.empty()).block();
+        Disposable sending = budget.use(Mono::never).subscribe();
+        Disposable held = budget.use(Mono::never).subscribe();
+        Disposable queued = budget.use(Mono::never).subscribe();
+        assertEquals(0, budget.getAvailable());
+
+        queued.dispose();
+        sending.dispose();
+        held.dispose();
+
+        assertEquals(2, budget.getAvailable());
+        assertEquals("sent", budget.use(() -> Mono.just("sent")).block(Duration.ofSeconds(1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyBudgetIsRejected()
+    {
+        new ConnectionBudget(0);
+    }
+}
@@ -0,0 +1,97 @@
+package TaggingApplication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.stream.Stream;
+import com.azure.storage.blob.models.BlobItemProperties;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests of deciding which local files differ from their blobs
+ * @author Charlene Pang
+ */
+public class DeltaSyncTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final Instant WRITTEN = Instant.parse("2026-01-01T00:00:00Z");
+
+    private Path file(String content, Instant modified) throws IOException
+    {
+        Path file = folder.newFile().toPath();
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.from(modified));
+        return file;
+    }
+
+    private static BlobRecord blob(long length, byte[] md5)
+    {
+        BlobItemProperties properties = new BlobItemProperties()
+            .setContentLength(length)
+            .setLastModified(OffsetDateTime.ofInstant(WRITTEN, ZoneOffset.UTC))
+            .setContentMd5(md5);
+        return new BlobRecord("Invoice/scan.pdf", properties, Collections.emptyMap());
+    }
+
+    @Test
+    public void missingBlobIsUploaded() throws IOException
+    {
+        DeltaSync sync = new DeltaSync(Stream.empty());
+        Path file = file("scan", WRITTEN);
+
+        assertNull(sync.get("Invoice/scan.pdf"));
+        assertEquals(DeltaSync.Decision.UPLOAD, sync.compare(file, null));
+    }
+
+    @Test
+    public void blobOfOtherSizeIsUploaded() throws IOException
+    {
+        Path file = file("scan", WRITTEN.minusSeconds(60));
+
+        assertEquals(DeltaSync.Decision.UPLOAD, new DeltaSync(Stream.empty()).compare(file, blob(5, null)));
+    }
+
+    @Test
+    public void fileUnchangedSinceBlobWasWrittenIsLeft() throws IOException
+    {
+        BlobRecord blob = blob(4, null);
+        DeltaSync sync = new DeltaSync(Stream.of(blob));
+        Path file = file("scan", WRITTEN.minusSeconds(60));
+
+        assertEquals(DeltaSync.Decision.UNCHANGED, sync.compare(file, sync.get("Invoice/scan.pdf")));
+    }
+
+    @Test
+    public void fileChangedSinceBlobWasWrittenComparesContent() throws IOException
+    {
+        Path file = file("scan", WRITTEN.plusSeconds(60));
+        BlobRecord blob = blob(4, DeltaSync.md5(file));
+        DeltaSync sync = new DeltaSync(Stream.of(blob));
+
+        assertEquals(DeltaSync.Decision.CHECK_CONTENT, sync.compare(file, blob));
+        assertTrue(sync.sameContent(DeltaSync.md5(file), blob));
+        assertFalse(sync.sameContent(DeltaSync.md5(file("SCAN", WRITTEN)), blob));
+    }
+
+    @Test
+    public void changedFileOfBlobWithoutMd5IsUploaded() throws IOException
+    {
+        Path file = file("scan", WRITTEN.plusSeconds(60));
+
+        assertEquals(DeltaSync.Decision.UPLOAD, new DeltaSync(Stream.empty()).compare(file, blob(4, null)));
+    }
+}
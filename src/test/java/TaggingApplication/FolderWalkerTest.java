@@ -0,0 +1,130 @@
+package TaggingApplication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests of walking folder trees, including folders that cannot be read
+ * @author Charlene Pang
+ */
+public class FolderWalkerTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Writes Acme/Invoice n/scan m.pdf, with a hidden file in each folder */
+    private Path tree(int folders, int files) throws IOException
+    {
+        Path root = folder.newFolder("Acme").toPath();
+        for (int i = 0; i < folders; i++)
+        {
+            Path docType = Files.createDirectory(root.resolve("Invoice " + i));
+            Files.createFile(docType.resolve(".hidden"));
+            for (int j = 0; j < files; j++)
+            {
+                Files.createFile(docType.resolve("scan " + j + ".pdf"));
+            }
+        }
+        return root;
+    }
+
+    private static Set<String> names(Path root, List<Path> files)
+    {
+        Set<String> names = new TreeSet<>();
+        files.forEach(p -> names.add(root.relativize(p).toString()));
+        return names;
+    }
+
+    @Test
+    public void walkFindsEveryFileButHiddenOnes() throws IOException
+    {
+        Path root = tree(3, 4);
+        TransferReport report = new TransferReport();
+
+        List<Path> files = new FolderWalker().files(root, report).collectList().block();
+
+        assertEquals(12, names(root, files).size());
+        assertTrue(names(root, files).contains("Invoice 2/scan 3.pdf"));
+        assertTrue(report.getFailures().isEmpty());
+    }
+
+    @Test
+    public void parallelWalkFindsTheSameFiles() throws IOException
+    {
+        Path root = tree(5, 3);
+        Files.createFile(root.resolve("top.pdf"));
+
+        List<Path> sequential = new FolderWalker().files(root, new TransferReport()).collectList().block();
+        List<Path> parallel = new FolderWalker(4).files(root, new TransferReport()).collectList().block();
+
+        assertEquals(16, parallel.size());
+        assertEquals(names(root, sequential), names(root, parallel));
+    }
+
+    @Test
+    public void singleFileIsWalkedAlone() throws IOException
+    {
+        Path root = tree(1, 2);
+
+        List<Path> files = new FolderWalker(4).files(root.resolve("Invoice 0/scan 1.pdf"), new TransferReport())
+            .collectList().block();
+
+        assertEquals(1, files.size());
+    }
+
+    @Test
+    public void walkStopsWhenNoMoreFilesAreWanted() throws IOException
+    {
+        Path root = tree(10, 10);
+
+        List<Path> files = new FolderWalker().files(root, new TransferReport()).take(3).collectList().block();
+
+        assertEquals(3, files.size());
+    }
+
+    @Test
+    public void missingFolderIsReportedNotThrown()
+    {
+        TransferReport report = new TransferReport();
+
+        List<Path> files = new FolderWalker().files(folder.getRoot().toPath().resolve("missing"), report)
+            .collectList().block();
+
+        assertTrue(files.isEmpty());
+        assertEquals(1, report.getFailures().size());
+    }
+
+    @Test
+    public void unreadableFolderIsReportedAndTheRestWalked() throws IOException
+    {
+        Path root = tree(3, 2);
+        Path locked = root.resolve("Invoice 1");
+        Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("---------"));
+        try
+        {
+            //permissions do not apply to root
+            assumeFalse(Files.isReadable(locked));
+            TransferReport report = new TransferReport();
+
+            List<Path> files = new FolderWalker().files(root, report).collectList().block();
+
+            assertEquals(4, files.size());
+            assertTrue(report.getFailures().containsKey(locked.toString()));
+        }
+        finally
+        {
+            Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("rwx------"));
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package TaggingApplication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import com.azure.storage.blob.models.BlobErrorCode;
+import com.azure.storage.blob.models.BlobStorageException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests of the in-memory account: its simulated clock, throttling responses and the policies requests pass through
+ * @author Charlene Pang
+ */
+public class InMemoryBlobBackendTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Sends requests one after the other, counting those throttled */
+    private static int throttledOf(InMemoryBlobBackend backend, int requests)
+    {
+        backend.createContainer("c").block();
+        int throttled = 0;
+        for (int i = 0; i < requests; i++)
+        {
+            try
+            {
+                backend.containerExists("c").block();
+            }
+            catch (BlobStorageException e)
+            {
+                throttled++;
+            }
+        }
+        return throttled;
+    }
+
+    @Test
+    public void throttlingIsReproducibleOnTheSimulatedClock()
+    {
+        int first = throttledOf(new InMemoryBlobBackend(3).setRequestRateLimit(100)
+            .setLatency(Duration.ofMillis(1), Duration.ofMillis(1)).setFailureRate(0.05), 400);
+        int second = throttledOf(new InMemoryBlobBackend(3).setRequestRateLimit(100)
+            .setLatency(Duration.ofMillis(1), Duration.ofMillis(1)).setFailureRate(0.05), 400);
+
+        assertTrue(first > 0);
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void clockMovesByTheTimeRequestsTake()
+    {
+        InMemoryBlobBackend backend = new InMemoryBlobBackend().setLatency(Duration.ofMillis(2), Duration.ZERO);
+
+        backend.createContainer("c").block();
+        backend.containerExists("c").block();
+
+        assertEquals(Duration.ofMillis(4), backend.getElapsed());
+    }
+
+    @Test
+    public void throttledRequestSaysWhenToRetry()
+    {
+        InMemoryBlobBackend backend = new InMemoryBlobBackend().setRequestRateLimit(2);
+        backend.createContainer("c").block();
+        backend.containerExists("c").block();
+        try
+        {
+            backend.containerExists("c").block();
+            fail("request accepted above rate");
+        }
+        catch (BlobStorageException e)
+        {
+            assertEquals(503, e.getStatusCode());
+            assertEquals(BlobErrorCode.SERVER_BUSY, e.getErrorCode());
+            assertEquals("500", e.getResponse().getHeaderValue("x-ms-retry-after-ms"));
+            assertEquals("1", e.getResponse().getHeaderValue("Retry-After"));
+        }
+        //the throttled client waited as asked, so the next request is let through
+        assertTrue(backend.containerExists("c").block());
+    }
+
+    @Test
+    public void governorWaitsOutRetryAfter()
+    {
+        RateGovernor governor = new RateGovernor(1000, 20);
+        InMemoryBlobBackend backend = new InMemoryBlobBackend().setRequestRateLimit(2).setPolicies(governor);
+        backend.createContainer("c").block();
+        backend.containerExists("c").block();
+        try
+        {
+            backend.containerExists("c").block();
+        }
+        catch (BlobStorageException e)
+        {
+            //expected, the governor learns the account's limit from it
+        }
+
+        long start = System.nanoTime();
+        assertTrue(backend.containerExists("c").block());
+
+        assertEquals(1, governor.getThrottled());
+        assertTrue(governor.getRequestRate() < 1000);
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(400).toNanos());
+    }
+
+    @Test
+    public void requestsAreRecordedByMetricsPolicy() throws IOException
+    {
+        Metrics metrics = new Metrics();
+        InMemoryBlobBackend backend = new InMemoryBlobBackend().setPolicies(new MetricsPolicy(metrics));
+        Path file = folder.newFile("scan 1.pdf").toPath();
+        Files.write(file, new byte[100]);
+        Map<String,String> tags = Collections.singletonMap("DocType", "Invoice");
+
+        backend.createContainer("en-invoice").block();
+        backend.upload("en-invoice", "pdf/scan 1.pdf", file, tags, null).block();
+        backend.copy("en-invoice", "pdf/scan 1.pdf", "en-invoice", "pdf/scan 2.pdf", tags).block();
+        backend.setTags("en-invoice", "pdf/scan 2.pdf", new HashMap<>(), "\"DocType\" = 'Invoice'").block();
+        backend.getTags("en-invoice", "pdf/scan 2.pdf").block();
+
+        assertEquals(1, metrics.request("createContainer", "en-invoice").getCount());
+        assertEquals(1, metrics.request("upload", "en-invoice").getCount());
+        assertEquals(1, metrics.request("copy", "en-invoice").getCount());
+        assertEquals(1, metrics.request("setTags", "en-invoice").getCount());
+        assertEquals(1, metrics.request("getTags", "en-invoice").getCount());
+    }
+
+    @Test
+    public void failedConditionKeepsItsStatusAndCode()
+    {
+        InMemoryBlobBackend backend = new InMemoryBlobBackend();
+        backend.createContainer("c").block();
+        try
+        {
+            backend.createContainer("c").block();
+            fail("container created twice");
+        }
+        catch (BlobStorageException e)
+        {
+            assertEquals(409, e.getStatusCode());
+            assertEquals(BlobErrorCode.CONTAINER_ALREADY_EXISTS, e.getErrorCode());
+        }
+        try
+        {
+            backend.getTags("c", "missing").block();
+            fail("tags read from missing blob");
+        }
+        catch (BlobStorageException e)
+        {
+            assertEquals(BlobErrorCode.BLOB_NOT_FOUND, e.getErrorCode());
+        }
+    }
+}
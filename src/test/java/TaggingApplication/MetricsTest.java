@@ -0,0 +1,112 @@
+package TaggingApplication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import com.azure.core.http.HttpMethod;
+import com.azure.core.http.HttpRequest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import reactor.core.Disposable;
+
+/** Tests of counting requests and dumping them for Prometheus
+ * @author Charlene Pang
+ */
+public class MetricsTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String LABELS = "operation=\"setTags\",container=\"invoice\"";
+
+    private String dump(Metrics metrics) throws IOException
+    {
+        Path file = folder.getRoot().toPath().resolve("storage.prom");
+        metrics.dump(file, Metrics.Format.PROMETHEUS);
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void summaryHasSumAndCountOfLatencies() throws IOException
+    {
+        Metrics metrics = new Metrics();
+        metrics.request("setTags", "invoice").response(204, 2_000_000, 0, 0, false);
+        metrics.request("setTags", "invoice").response(204, 6_000_000, 0, 0, false);
+
+        String dump = dump(metrics);
+
+        assertTrue(dump, dump.contains("storage_request_duration_seconds_sum{" + LABELS + "} 0.008000\n"));
+        assertTrue(dump, dump.contains("storage_request_duration_seconds_count{" + LABELS + "} 2\n"));
+        assertTrue(dump, dump.contains("storage_requests_total{" + LABELS + ",status=\"204\"} 2\n"));
+    }
+
+    @Test
+    public void closedTimerRecordsJob() throws IOException
+    {
+        Metrics metrics = new Metrics();
+        Metrics.Timer timer = metrics.time("regroup", "invoice");
+        timer.close();
+
+        String dump = dump(metrics);
+
+        assertTrue(dump, dump.contains("storage_job_duration_seconds_count{job=\"regroup\",container=\"invoice\"} 1\n"));
+        assertTrue(dump, dump.contains("storage_job_duration_seconds_sum{job=\"regroup\",container=\"invoice\"} "));
+    }
+
+    @Test
+    public void dumpGivesStartOfCumulativeCounts() throws IOException
+    {
+        long before = System.currentTimeMillis();
+        Metrics metrics = new Metrics();
+        metrics.time("regroup", "invoice").close();
+        metrics.time("migrate", "invoice").close();
+
+        String dump = dump(metrics);
+
+        String line = "\nstorage_metrics_start_time_seconds ";
+        int start = dump.indexOf(line) + line.length();
+        assertTrue(dump, Double.parseDouble(dump.substring(start, dump.indexOf('\n', start))) * 1000 >= before - 1);
+        assertTrue(dump, dump.contains("storage_job_duration_seconds_count{job=\"regroup\",container=\"invoice\"} 1\n"));
+    }
+
+    @Test
+    public void containerIsReadFromPathOfHostOrPathStyleUrl()
+    {
+        assertEquals("invoice", MetricsPolicy.container(
+            new HttpRequest(HttpMethod.PUT, "https://account.blob.core.windows.net/invoice/pdf/scan.pdf?comp=tags")));
+        assertEquals("invoice", MetricsPolicy.container(
+            new HttpRequest(HttpMethod.PUT, "http://127.0.0.1:10000/devstoreaccount1/invoice/pdf/scan.pdf")));
+        assertEquals("invoice", MetricsPolicy.container(
+            new HttpRequest(HttpMethod.GET, "http://localhost:10000/devstoreaccount1/invoice?restype=container")));
+        assertEquals("", MetricsPolicy.container(
+            new HttpRequest(HttpMethod.GET, "http://127.0.0.1:10000/devstoreaccount1?comp=list")));
+        assertEquals("", MetricsPolicy.container(
+            new HttpRequest(HttpMethod.GET, "https://account.blob.core.windows.net/?comp=list")));
+    }
+
+    @Test
+    public void disposedDumpsStopWriting() throws Exception
+    {
+        Metrics metrics = new Metrics();
+        Path file = folder.getRoot().toPath().resolve("storage.prom");
+        Disposable dumps = metrics.dumpEvery(file, Metrics.Format.PROMETHEUS, Duration.ofMillis(20));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!Files.exists(file) && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        dumps.dispose();
+        Thread.sleep(50);
+        Files.delete(file);
+        Thread.sleep(100);
+
+        assertTrue(dumps.isDisposed());
+        assertEquals(false, Files.exists(file));
+    }
+}
@@ -0,0 +1,142 @@
+package TaggingApplication;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests of replaying, compacting and repairing the journal of completed steps
+ * @author Charlene Pang
+ */
+public class MigrationJournalTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path journalFile()
+    {
+        return folder.getRoot().toPath().resolve("job.journal");
+    }
+
+    @Test
+    public void rerunSkipsStepsWithUnchangedSource()
+    {
+        try (MigrationJournal journal = new MigrationJournal(journalFile()))
+        {
+            journal.record(MigrationJournal.Step.UPLOAD, "Acme/scan.pdf", "10-1");
+            journal.record(MigrationJournal.Step.COPY, "inbox/scan.pdf", "0x1");
+        }
+
+        try (MigrationJournal journal = new MigrationJournal(journalFile()))
+        {
+            assertTrue(journal.isDone(MigrationJournal.Step.UPLOAD, "Acme/scan.pdf", "10-1"));
+            assertFalse(journal.isDone(MigrationJournal.Step.UPLOAD, "Acme/scan.pdf", "12-2"));
+            assertFalse(journal.isDone(MigrationJournal.Step.UPLOAD, "inbox/scan.pdf", "0x1"));
+            assertTrue(journal.isDone(MigrationJournal.Step.COPY, "inbox/scan.pdf", "0x1"));
+            assertEquals(2, journal.getSkipped());
+        }
+    }
+
+    @Test
+    public void laterRecordReplacesEarlierAndFileIsCompactedOnClose() throws IOException
+    {
+        try (MigrationJournal journal = new MigrationJournal(journalFile()))
+        {
+            for (int i = 0; i < 100; i++)
+            {
+                journal.record(MigrationJournal.Step.UPLOAD, "Acme/scan.pdf", "10-" + i);
+            }
+        }
+        long compacted = Files.size(journalFile());
+
+        try (MigrationJournal journal = new MigrationJournal(journalFile()))
+        {
+            assertFalse(journal.isDone(MigrationJournal.Step.UPLOAD, "Acme/scan.pdf", "10-0"));
+            assertTrue(journal.isDone(MigrationJournal.Step.UPLOAD, "Acme/scan.pdf", "10-99"));
+        }
+        assertTrue(compacted < 100);
+    }
+
+    @Test
+    public void recordCutShortIsDropped() throws IOException
+    {
+        try (MigrationJournal journal = new MigrationJournal(journalFile()))
+        {
+            journal.record(MigrationJournal.Step.UPLOAD, "Acme/scan.pdf", "10-1");
+        }
+        long whole = Files.size(journalFile());
+        Files.write(journalFile(), new byte[] {0, 0, 20, 'A'}, StandardOpenOption.APPEND);
+
+        try (MigrationJournal journal = new MigrationJournal(journalFile()))
+        {
+            assertTrue(journal.isDone(MigrationJournal.Step.UPLOAD, "Acme/scan.pdf", "10-1"));
+            assertEquals(whole, Files.size(journalFile()));
+            journal.record(MigrationJournal.Step.UPLOAD, "Acme/other.pdf", "20-1");
+        }
+
+        try (MigrationJournal journal = new MigrationJournal(journalFile()))
+        {
+            assertTrue(journal.isDone(MigrationJournal.Step.UPLOAD, "Acme/other.pdf", "20-1"));
+        }
+    }
+
+    @Test
+    public void readOnlyJournalLeavesFileAsItIs() throws IOException
+    {
+        try (MigrationJournal journal = new MigrationJournal(journalFile()))
+        {
+            journal.record(MigrationJournal.Step.UPLOAD, "Acme/scan.pdf", "10-1");
+        }
+        //superseded record and a record cut short, either of which a writable journal would rewrite
+        Files.write(journalFile(), new byte[] {0, 0, 13, 'A', 'c', 'm', 'e', '/', 's', 'c', 'a', 'n', '.', 'p', 'd', 'f',
+            0, 4, '1', '0', '-', '2', 0, 0, 20, 'A'}, StandardOpenOption.APPEND);
+        byte[] before = Files.readAllBytes(journalFile());
+
+        try (MigrationJournal journal = MigrationJournal.readOnly(journalFile()))
+        {
+            assertTrue(journal.isDone(MigrationJournal.Step.UPLOAD, "Acme/scan.pdf", "10-2"));
+            journal.record(MigrationJournal.Step.UPLOAD, "Acme/other.pdf", "20-1");
+        }
+
+        assertArrayEquals(before, Files.readAllBytes(journalFile()));
+    }
+
+    @Test
+    public void readOnlyJournalDoesNotCreateFile()
+    {
+        try (MigrationJournal journal = MigrationJournal.readOnly(journalFile()))
+        {
+            assertFalse(journal.isDone(MigrationJournal.Step.UPLOAD, "Acme/scan.pdf", "10-1"));
+        }
+
+        assertFalse(Files.exists(journalFile()));
+    }
+
+    @Test
+    public void unreadableSourceIsNeitherRecordedNorSkipped() throws IOException
+    {
+        Path deleted = folder.newFile("scan.pdf").toPath();
+        Files.delete(deleted);
+        String fingerprint = MigrationJournal.fingerprint(deleted);
+
+        try (MigrationJournal journal = new MigrationJournal(journalFile()))
+        {
+            journal.record(MigrationJournal.Step.UPLOAD, deleted.toString(), fingerprint);
+            assertFalse(journal.isDone(MigrationJournal.Step.UPLOAD, deleted.toString(), fingerprint));
+        }
+
+        try (MigrationJournal journal = new MigrationJournal(journalFile()))
+        {
+            assertFalse(journal.isDone(MigrationJournal.Step.UPLOAD, deleted.toString(), "10-1"));
+            assertEquals(0, journal.getSkipped());
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package TaggingApplication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import com.azure.core.http.HttpHeaders;
+import com.azure.core.http.HttpMethod;
+import com.azure.core.http.HttpPipeline;
+import com.azure.core.http.HttpPipelineBuilder;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.http.HttpResponse;
+import org.junit.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/** Tests of pacing requests by rate and bytes, and of backing off when the service throttles
+ * @author Charlene Pang
+ */
+public class RateGovernorTest
+{
+    /** Answers with the queued statuses, then 200 */
+    private static final class Service
+    {
+        private final Deque<Response> queued = new ArrayDeque<>();
+
+        synchronized Service then(int status, String retryAfterMillis)
+        {
+            Response response = new Response(status);
+            if (retryAfterMillis != null)
+            {
+                response.headers.set("x-ms-retry-after-ms", retryAfterMillis);
+            }
+            queued.add(response);
+            return this;
+        }
+
+        synchronized Mono<HttpResponse> respond(HttpRequest request)
+        {
+            Response response = queued.isEmpty() ? new Response(200) : queued.poll();
+            return Mono.just(response);
+        }
+    }
+
+    private static final class Response extends HttpResponse
+    {
+        private final int status;
+        private final HttpHeaders headers = new HttpHeaders();
+
+        Response(int status)
+        {
+            super(null);
+            this.status = status;
+        }
+
+        @Override
+        public int getStatusCode()
+        {
+            return status;
+        }
+
+        @Override
+        public String getHeaderValue(String name)
+        {
+            return headers.getValue(name);
+        }
+
+        @Override
+        public HttpHeaders getHeaders()
+        {
+            return headers;
+        }
+
+        @Override
+        public Flux<ByteBuffer> getBody()
+        {
+            return Flux.empty();
+        }
+
+        @Override
+        public Mono<byte[]> getBodyAsByteArray()
+        {
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<String> getBodyAsString()
+        {
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<String> getBodyAsString(Charset charset)
+        {
+            return Mono.empty();
+        }
+    }
+
+    private static HttpPipeline pipeline(RateGovernor governor, Service service)
+    {
+        return new HttpPipelineBuilder().httpClient(service::respond).policies(governor).build();
+    }
+
+    /** Sends requests one after the other
+     * @return elapsed milliseconds
+     */
+    private static long send(HttpPipeline pipeline, int requests, long bytes)
+    {
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++)
+        {
+            HttpRequest request = new HttpRequest(HttpMethod.PUT, "https://account.blob.core.windows.net/c/b");
+            request.setHeader("Content-Length", Long.toString(bytes));
+            pipeline.send(request).block();
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    @Test
+    public void requestsBeyondOneSecondOfTokensWait()
+    {
+        HttpPipeline pipeline = pipeline(new RateGovernor(50, 0), new Service());
+
+        //50 requests are let through at once, the other 25 at 50 per second
+        long elapsed = send(pipeline, 75, 0);
+
+        assertTrue(elapsed + " ms", elapsed >= 400);
+    }
+
+    @Test
+    public void uploadedBytesArePaced()
+    {
+        RateGovernor governor = new RateGovernor(1000, 0);
+        governor.setBandwidthLimit(100_000);
+        HttpPipeline pipeline = pipeline(governor, new Service());
+
+        long elapsed = send(pipeline, 3, 100_000);
+
+        assertTrue(elapsed + " ms", elapsed >= 1800);
+    }
+
+    @Test
+    public void throttlingHalvesRateWhichThenRecovers()
+    {
+        RateGovernor governor = new RateGovernor(1000, 1000);
+        HttpPipeline pipeline = pipeline(governor, new Service().then(503, null));
+
+        send(pipeline, 1, 0);
+
+        assertEquals(1, governor.getThrottled());
+        assertEquals(500, governor.getRequestRate(), 0.001);
+
+        send(pipeline, 200, 0);
+
+        assertTrue(governor.getRequestRate() > 500);
+        assertTrue(governor.getRequestRate() <= 1000);
+    }
+
+    @Test
+    public void retryAfterPausesEveryRequest()
+    {
+        RateGovernor governor = new RateGovernor(1000, 0);
+        HttpPipeline pipeline = pipeline(governor, new Service().then(429, "300"));
+
+        send(pipeline, 1, 0);
+        long elapsed = send(pipeline, 1, 0);
+
+        assertTrue(elapsed + " ms", elapsed >= 250);
+    }
+}
@@ -0,0 +1,214 @@
+package TaggingApplication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import com.azure.storage.blob.models.BlobItemProperties;
+import org.junit.Test;
+
+/** Tests of the deterministic Train/Test split and of rebalancing a container towards it
+ * @author Charlene Pang
+ */
+public class SetRebalancerTest
+{
+    private static final List<String> OUTPUT_TYPES = Collections.singletonList("json");
+
+    private static BlobRecord blob(String name, String docType, String set)
+    {
+        Map<String,String> tags = new HashMap<>();
+        tags.put("DocType", docType);
+        if (set != null)
+        {
+            tags.put("Set", set);
+        }
+        return new BlobRecord(name, new BlobItemProperties(), tags);
+    }
+
+    private static int moved(List<SetRebalancer.Reassignment> changes, String set)
+    {
+        int moved = 0;
+        for (SetRebalancer.Reassignment change : changes)
+        {
+            if (set.equals(change.getTags().get("Set")))
+            {
+                moved++;
+            }
+        }
+        return moved;
+    }
+
+    @Test
+    public void splitIsReproducibleForASeed()
+    {
+        SetSplit split = new SetSplit(0.3, 7);
+
+        for (int i = 0; i < 100; i++)
+        {
+            String name = "scan" + i + ".pdf";
+            assertEquals(split.assign(name), new SetSplit(0.3, 7).assign(name));
+            assertTrue(split.position(name) >= 0 && split.position(name) < 1);
+        }
+    }
+
+    @Test
+    public void splitIsCloseToItsRatio()
+    {
+        SetSplit split = new SetSplit(0.3, 1);
+        int tests = 0;
+        for (int i = 0; i < 10000; i++)
+        {
+            if (SetSplit.TEST.equals(split.assign("scan" + i + ".pdf")))
+            {
+                tests++;
+            }
+        }
+        assertEquals(3000, tests, 200);
+    }
+
+    @Test
+    public void seedsGiveDifferentSplits()
+    {
+        SetSplit first = new SetSplit(0.5, 1);
+        SetSplit second = new SetSplit(0.5, 2);
+        int differ = 0;
+        for (int i = 0; i < 100; i++)
+        {
+            if (!first.assign("scan" + i + ".pdf").equals(second.assign("scan" + i + ".pdf")))
+            {
+                differ++;
+            }
+        }
+        assertTrue(differ > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ratioAboveOneIsRejected()
+    {
+        new SetSplit(1.5, 0);
+    }
+
+    @Test
+    public void trainBlobsArePromotedUntilTestReachesRatio()
+    {
+        SetRebalancer rebalancer = new SetRebalancer(new SetSplit(0.3, 0), OUTPUT_TYPES);
+        for (int i = 0; i < 10; i++)
+        {
+            rebalancer.add(blob("pdf/invoice" + i + ".pdf", "Invoice", SetSplit.TRAIN));
+            rebalancer.add(blob("pdf/receipt" + i + ".pdf", "Receipt", i < 2 ? SetSplit.TEST : SetSplit.TRAIN));
+        }
+
+        List<SetRebalancer.Reassignment> changes = rebalancer.plan();
+
+        assertEquals(4, changes.size());
+        assertEquals(4, moved(changes, SetSplit.TEST));
+        int receipts = 0;
+        for (SetRebalancer.Reassignment change : changes)
+        {
+            assertEquals(SetSplit.TRAIN, change.getInput().getTags().get("Set"));
+            if (change.getInput().getName().startsWith("pdf/receipt"))
+            {
+                receipts++;
+            }
+        }
+        assertEquals(1, receipts);
+    }
+
+    @Test
+    public void blobsWithLowestPositionsArePromoted()
+    {
+        SetSplit split = new SetSplit(0.2, 3);
+        SetRebalancer rebalancer = new SetRebalancer(split, OUTPUT_TYPES);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+        {
+            names.add("invoice" + i + ".pdf");
+            rebalancer.add(blob("pdf/invoice" + i + ".pdf", "Invoice", SetSplit.TRAIN));
+        }
+        names.sort((a, b) -> Double.compare(split.position(a), split.position(b)));
+
+        Set<String> promoted = new HashSet<>();
+        rebalancer.plan().forEach(c -> promoted.add(c.getInput().getName()));
+
+        assertEquals(new HashSet<>(Arrays.asList("pdf/" + names.get(0), "pdf/" + names.get(1),
+            "pdf/" + names.get(2), "pdf/" + names.get(3))), promoted);
+    }
+
+    @Test
+    public void blobsWithLowestPositionsArePromotedFromLargeStratum()
+    {
+        SetSplit split = new SetSplit(0.3, 5);
+        SetRebalancer rebalancer = new SetRebalancer(split, OUTPUT_TYPES);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+        {
+            String name = "invoice" + i + ".pdf";
+            //a tenth already in test, at positions spread over the split
+            boolean test = i % 10 == 0;
+            if (!test)
+            {
+                names.add(name);
+            }
+            rebalancer.add(blob("pdf/" + name, "Invoice", test ? SetSplit.TEST : SetSplit.TRAIN));
+        }
+        names.sort((a, b) -> Double.compare(split.position(a), split.position(b)));
+
+        Set<String> promoted = new HashSet<>();
+        rebalancer.plan().forEach(c -> promoted.add(c.getInput().getName().substring("pdf/".length())));
+
+        assertEquals(new HashSet<>(names.subList(0, 200)), promoted);
+    }
+
+    @Test
+    public void surplusTestBlobsAreLeftInTest()
+    {
+        SetRebalancer rebalancer = new SetRebalancer(new SetSplit(0.3, 0), OUTPUT_TYPES);
+        for (int i = 0; i < 10; i++)
+        {
+            rebalancer.add(blob("pdf/invoice" + i + ".pdf", "Invoice", i < 6 ? SetSplit.TEST : SetSplit.TRAIN));
+        }
+
+        assertTrue(rebalancer.plan().isEmpty());
+    }
+
+    @Test
+    public void otherSetValuesAreLeftUnchanged()
+    {
+        SetRebalancer rebalancer = new SetRebalancer(new SetSplit(0.5, 0), OUTPUT_TYPES);
+        rebalancer.add(blob("pdf/a.pdf", "Invoice", "Validation"));
+        rebalancer.add(blob("pdf/b.pdf", "Invoice", null));
+        rebalancer.add(blob("pdf/c.pdf", "Invoice", SetSplit.TRAIN));
+        rebalancer.add(blob("pdf/d.pdf", "Invoice", SetSplit.TRAIN));
+
+        List<SetRebalancer.Reassignment> changes = rebalancer.plan();
+
+        assertEquals(2, changes.size());
+        for (SetRebalancer.Reassignment change : changes)
+        {
+            assertEquals(SetSplit.TRAIN, change.getInput().getTags().get("Set"));
+            assertEquals(SetSplit.TEST, change.getTags().get("Set"));
+        }
+    }
+
+    @Test
+    public void outputFilesFollowTheirInput()
+    {
+        SetRebalancer rebalancer = new SetRebalancer(new SetSplit(1, 0), OUTPUT_TYPES);
+        rebalancer.add(blob("pdf/scan.pdf", "Invoice", SetSplit.TRAIN));
+        rebalancer.add(blob("json/scan.pdf.json", "Invoice", SetSplit.TRAIN));
+
+        List<SetRebalancer.Reassignment> changes = rebalancer.plan();
+
+        assertEquals(1, changes.size());
+        assertEquals("pdf/scan.pdf", changes.get(0).getInput().getName());
+        assertEquals(1, changes.get(0).getOutputs().size());
+        assertEquals("json/scan.pdf.json", changes.get(0).getOutputs().get(0).getName());
+    }
+}
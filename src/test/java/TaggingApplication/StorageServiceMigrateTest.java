@@ -0,0 +1,186 @@
+package TaggingApplication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests of uploadFolder and migrate against an in-memory account that answers with latency
+ * @author Charlene Pang
+ */
+public class StorageServiceMigrateTest
+{
+    private static final int DOC_TYPES = 40;
+    private static final int SCANS = 5;
+    private static final int SCAN_BYTES = 16 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Map<String,String> tags()
+    {
+        Map<String,String> tags = new HashMap<>();
+        tags.put("DocType", TagRules.TBA);
+        tags.put("Project Name", TagRules.TBA);
+        tags.put("Redacted", "False");
+        tags.put("Set", "Train");
+        return tags;
+    }
+
+    /** Writes Acme/DocType n/scan m.pdf and its output scan m.pdf.json for each document type */
+    private Path project() throws IOException
+    {
+        Path project = folder.newFolder("Acme").toPath();
+        for (int i = 0; i < DOC_TYPES; i++)
+        {
+            Path docType = Files.createDirectory(project.resolve("DocType " + i));
+            for (int j = 0; j < SCANS; j++)
+            {
+                String scan = "scan" + i + "-" + j + ".pdf";
+                Files.write(docType.resolve(scan), new byte[SCAN_BYTES]);
+                Files.write(docType.resolve(scan + ".json"), "{}".getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return project;
+    }
+
+    @Test
+    public void migrateCreatesContainersWithoutBlockingResponses() throws IOException
+    {
+        //uploads finish on the timer threads that answer requests, which then ask the walk for the next files
+        InMemoryBlobBackend backend = new InMemoryBlobBackend(1).setLatency(Duration.ofMillis(5), Duration.ofMillis(2))
+            .setBandwidth(4L * 1024 * 1024);
+        StorageService service = new StorageService(backend);
+
+        TransferReport report = service.migrate(project().toString(), tags(), "en", Arrays.asList("json"));
+
+        assertTrue(report.getFailures().toString(), report.getFailures().isEmpty());
+        assertEquals(2 * DOC_TYPES * SCANS, report.getSucceeded());
+        for (int i = 0; i < DOC_TYPES; i++)
+        {
+            assertEquals(2 * SCANS, backend.size("en-doctype" + i));
+        }
+        Map<String,String> uploaded = backend.getTags("en-doctype7", "pdf/scan7-0.pdf").block();
+        assertEquals("DocType 7", uploaded.get("DocType"));
+        assertEquals("Acme", uploaded.get("Project Name"));
+        assertEquals(uploaded, backend.getTags("en-doctype7", "json/scan7-0.pdf.json").block());
+    }
+
+    @Test
+    public void syncListsContainerOnceAndSkipsUnchangedFiles() throws IOException
+    {
+        InMemoryBlobBackend backend = new InMemoryBlobBackend(1).setLatency(Duration.ofMillis(5), Duration.ZERO);
+        StorageService service = new StorageService(backend);
+        String path = project().toString();
+
+        service.uploadFolder(path, "acme", tags(), Arrays.asList("json"), true);
+        int requests = backend.getRequests();
+        TransferReport report = service.uploadFolder(path, "acme", tags(), Arrays.asList("json"), true);
+
+        assertTrue(report.getFailures().isEmpty());
+        assertEquals(2 * DOC_TYPES * SCANS, backend.size("acme"));
+        //one listing page and no writes, the tags of every blob are already right
+        assertEquals(1, backend.getRequests() - requests);
+    }
+
+    @Test
+    public void syncComparesContentOfFilesTouchedSinceUpload() throws IOException
+    {
+        InMemoryBlobBackend backend = new InMemoryBlobBackend(1);
+        StorageService service = new StorageService(backend);
+        Path project = project();
+
+        service.uploadFolder(project.toString(), "acme", tags(), Arrays.asList("json"), true);
+        //files copied or restored with a later time, but the same content
+        FileTime later = FileTime.from(Instant.now().plus(Duration.ofHours(1)));
+        try (Stream<Path> files = Files.walk(project))
+        {
+            files.filter(Files::isRegularFile).forEach(f -> {
+                try
+                {
+                    Files.setLastModifiedTime(f, later);
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        int requests = backend.getRequests();
+        TransferReport report = service.uploadFolder(project.toString(), "acme", tags(), Arrays.asList("json"), true);
+
+        assertTrue(report.getFailures().isEmpty());
+        //the MD5 stored with each upload matches, so nothing is sent again
+        assertEquals(1, backend.getRequests() - requests);
+    }
+
+    @Test
+    public void planningLeavesJournalAlone() throws IOException
+    {
+        InMemoryBlobBackend backend = new InMemoryBlobBackend(1);
+        StorageService service = new StorageService(backend);
+        Path journals = folder.newFolder("journals").toPath();
+        service.useJournal(journals.toString());
+        String path = project().toString();
+
+        TransferPlan first = service.planMigrate(path, tags(), "en", Arrays.asList("json"));
+
+        assertEquals(DOC_TYPES * SCANS, first.getOperations(TransferPlan.Phase.INPUTS).size());
+        assertEquals(0, journals.toFile().list().length);
+
+        service.migrate(path, tags(), "en", Arrays.asList("json"));
+        Path journal = journals.toFile().listFiles()[0].toPath();
+        byte[] recorded = Files.readAllBytes(journal);
+        TransferPlan second = service.planMigrate(path, tags(), "en", Arrays.asList("json"));
+
+        assertEquals(0, second.getOperations(TransferPlan.Phase.INPUTS).size());
+        assertTrue(Arrays.equals(recorded, Files.readAllBytes(journal)));
+    }
+
+    @Test
+    public void migrateRoutesByDerivedDocType() throws IOException
+    {
+        InMemoryBlobBackend backend = new InMemoryBlobBackend();
+        StorageService service = new StorageService(backend);
+        Path receipts = folder.newFolder("Acme", "Receipt").toPath();
+        Files.write(receipts.resolve("scan.pdf"), new byte[SCAN_BYTES]);
+
+        service.migrate(folder.getRoot().toPath().resolve("Acme").toString(), tags(), "en", Arrays.asList("json"));
+
+        assertEquals(1, backend.size("en-receipt"));
+        assertEquals("Receipt", backend.getTags("en-receipt", "pdf/scan.pdf").block().get("DocType"));
+    }
+
+    @Test
+    public void migrateRoutesByGivenDocTypeOverFolderName() throws IOException
+    {
+        InMemoryBlobBackend backend = new InMemoryBlobBackend();
+        StorageService service = new StorageService(backend);
+        Path receipts = folder.newFolder("Acme", "Receipt").toPath();
+        Files.write(receipts.resolve("scan.pdf"), new byte[SCAN_BYTES]);
+        Map<String,String> tags = tags();
+        tags.put("DocType", "Invoice");
+
+        service.migrate(folder.getRoot().toPath().resolve("Acme").toString(), tags, "en", Arrays.asList("json"));
+        TransferPlan plan = service.planMigrate(folder.getRoot().toPath().resolve("Acme").toString(), tags, "en",
+            Arrays.asList("json"));
+
+        assertEquals(1, backend.size("en-invoice"));
+        assertEquals(0, backend.size("en-receipt"));
+        assertEquals("en-invoice", plan.getOperations(TransferPlan.Phase.INPUTS).get(0).getContainer());
+    }
+}
@@ -0,0 +1,123 @@
+package TaggingApplication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests of regroup copying blobs with all their tags, reading tags only where the search did not return them,
+ * and of relocate moving whole containers
+ * @author Charlene Pang
+ */
+public class StorageServiceRegroupTest
+{
+    private static final int BLOBS = 6;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final InMemoryBlobBackend backend = new InMemoryBlobBackend();
+    private final StorageService service = new StorageService(backend);
+
+    private static Map<String,String> tags(String docType)
+    {
+        Map<String,String> tags = new HashMap<>();
+        tags.put("DocType", docType);
+        tags.put("Project Name", "Acme");
+        tags.put("Set", "Train");
+        return tags;
+    }
+
+    @Before
+    public void upload() throws IOException
+    {
+        Path file = folder.newFile("scan.pdf").toPath();
+        backend.createContainer("inbox").block();
+        backend.createContainer("invoice").block();
+        for (int i = 0; i < BLOBS; i++)
+        {
+            backend.upload("inbox", "scan" + i + ".pdf", file, tags(i % 2 == 0 ? "Invoice" : "Receipt"), null).block();
+        }
+    }
+
+    private long tagReads()
+    {
+        return service.getMetrics().request("getTags", "inbox").getCount();
+    }
+
+    @Test
+    public void blobsFoundThroughIndexHaveTheirTagsRead()
+    {
+        assertEquals(BLOBS / 2, service.regroup("Invoice", "invoice", "inbox").size());
+
+        assertEquals(BLOBS / 2, tagReads());
+        assertEquals(BLOBS / 2, backend.size("invoice"));
+        assertEquals(tags("Invoice"), backend.getTags("invoice", "scan0.pdf").block());
+    }
+
+    @Test
+    public void blobsFoundByListingReuseListedTags() throws IOException
+    {
+        service.useTagIndex(folder.newFolder("index").toString(), Duration.ofMinutes(10));
+
+        assertEquals(BLOBS / 2, service.regroup("Invoice", "invoice", "inbox").size());
+
+        assertEquals(0, tagReads());
+        assertEquals(BLOBS / 2, backend.size("invoice"));
+        assertEquals(tags("Invoice"), backend.getTags("invoice", "scan4.pdf").block());
+    }
+
+    @Test
+    public void valueWithQuoteIsFound() throws IOException
+    {
+        Path file = folder.newFile("licence.pdf").toPath();
+        backend.upload("inbox", "licence.pdf", file, tags("Driver's Licence"), null).block();
+
+        assertEquals("\"DocType\" = 'Driver''s Licence'", StorageService.tagEquals("DocType", "Driver's Licence"));
+        assertEquals(1, service.findDocType("Driver's Licence", "inbox").size());
+        assertEquals(1, service.regroup("Driver's Licence", "invoice", "inbox").size());
+        assertEquals(tags("Driver's Licence"), backend.getTags("invoice", "licence.pdf").block());
+    }
+
+    @Test
+    public void relocateMovesEveryBlobWithItsTags()
+    {
+        TransferReport report = service.relocate("inbox", "archive");
+
+        assertTrue(report.getFailures().isEmpty());
+        assertEquals(0, backend.size("inbox"));
+        assertEquals(BLOBS, backend.size("archive"));
+        assertEquals(tags("Receipt"), backend.getTags("archive", "scan1.pdf").block());
+    }
+
+    @Test
+    public void relocateToSameContainerIsRejected()
+    {
+        int requests = backend.getRequests();
+        try
+        {
+            service.relocate("inbox", "inbox");
+            fail("relocate should be rejected");
+        }
+        catch (IllegalArgumentException e)
+        {
+            assertEquals(BLOBS, backend.size("inbox"));
+            assertEquals(requests, backend.getRequests());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tagNameWithDoubleQuoteIsRejected()
+    {
+        StorageService.tagEquals("Doc\"Type", "Invoice");
+    }
+}
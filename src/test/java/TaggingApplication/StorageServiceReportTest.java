@@ -0,0 +1,91 @@
+package TaggingApplication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests of account-wide reports scanning containers in parallel and merging their counts
+ * @author Charlene Pang
+ */
+public class StorageServiceReportTest
+{
+    private static final int SCAN_BYTES = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final InMemoryBlobBackend backend = new InMemoryBlobBackend(5).setLatency(Duration.ofMillis(2), Duration.ofMillis(2));
+    private final StorageService service = new StorageService(backend);
+    //number of blobs uploaded to each container
+    private final Map<String,Long> uploaded = new LinkedHashMap<>();
+
+    private static Map<String,String> tags(String docType, String set)
+    {
+        Map<String,String> tags = new HashMap<>();
+        tags.put("DocType", docType);
+        tags.put("Set", set);
+        return tags;
+    }
+
+    @Before
+    public void upload() throws IOException
+    {
+        Path file = folder.newFile("scan.pdf").toPath();
+        Files.write(file, new byte[SCAN_BYTES]);
+        String[] containers = {"en-invoice", "en-receipt", "en-purchaseorder", "en-contract", "en-letter", "fr-invoice", "de-receipt"};
+        for (int c = 0; c < containers.length; c++)
+        {
+            backend.createContainer(containers[c]).block();
+            //containers of different sizes, so a count taken from the wrong container shows
+            int blobs = 10 + 7 * c;
+            for (int i = 0; i < blobs; i++)
+            {
+                backend.upload(containers[c], "pdf/scan" + i + ".pdf", file,
+                    tags(i % 3 == 0 ? "Invoice" : "Receipt", i % 5 == 0 ? "Test" : "Train"), null).block();
+            }
+            uploaded.put(containers[c], (long) blobs);
+        }
+        service.setScanParallelism(3);
+    }
+
+    @Test
+    public void prefixLeavesOutOtherContainers()
+    {
+        TagFacets facets = service.facetsAll("en");
+
+        Map<String,Long> byContainer = facets.counts(TagFacets.Dimension.CONTAINER);
+        assertEquals(5, byContainer.size());
+        assertFalse(byContainer.containsKey("fr-invoice"));
+        assertFalse(byContainer.containsKey("de-receipt"));
+        assertEquals(uploaded.get("en-letter"), byContainer.get("en-letter"));
+    }
+
+    @Test
+    public void containersScannedInParallelMergeEveryBlobOnce()
+    {
+        TagFacets facets = service.facetsAll(null);
+
+        Map<String,Long> byContainer = facets.counts(TagFacets.Dimension.CONTAINER);
+        assertEquals(uploaded, byContainer);
+        long total = uploaded.values().stream().mapToLong(Long::longValue).sum();
+        assertEquals(total, facets.getCount());
+        assertEquals(total * SCAN_BYTES, facets.getBytes());
+
+        //the same counts as scanning the containers one after the other
+        TagFacets sequential = new TagFacets();
+        uploaded.keySet().forEach(c -> sequential.merge(service.facets(c)));
+        assertEquals(sequential.counts(TagFacets.Dimension.DOC_TYPE), facets.counts(TagFacets.Dimension.DOC_TYPE));
+        assertEquals(sequential.counts(TagFacets.Dimension.SET), facets.counts(TagFacets.Dimension.SET));
+    }
+}
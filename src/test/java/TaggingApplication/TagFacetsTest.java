@@ -0,0 +1,120 @@
+package TaggingApplication;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import com.azure.storage.blob.models.BlobItemProperties;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests of counting blobs by their tags, merging the counts of containers and writing them as CSV and JSON
+ * @author Charlene Pang
+ */
+public class TagFacetsTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static BlobRecord blob(String name, long length, String docType, String projectName)
+    {
+        Map<String,String> tags = new HashMap<>();
+        tags.put("DocType", docType);
+        tags.put("Set", "Train");
+        if (projectName != null)
+        {
+            tags.put("Project Name", projectName);
+        }
+        return new BlobRecord(name, new BlobItemProperties().setContentLength(length), tags);
+    }
+
+    private static Map<String,Long> counts(Object... valueThenCount)
+    {
+        Map<String,Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < valueThenCount.length; i += 2)
+        {
+            counts.put((String) valueThenCount[i], ((Number) valueThenCount[i + 1]).longValue());
+        }
+        return counts;
+    }
+
+    @Test
+    public void blobsAreCountedByEachDimension()
+    {
+        TagFacets facets = TagFacets.of("invoice", Stream.of(
+            blob("pdf/scan1.pdf", 10, "Invoice", "Acme"),
+            blob("pdf/scan2.PDF", 20, "Invoice", "Acme"),
+            blob("json/scan1.pdf.json", 1, "Receipt", null),
+            blob("README", 5, "Receipt", "Acme")));
+
+        assertEquals(4, facets.getCount());
+        assertEquals(36, facets.getBytes());
+        assertEquals(counts("Invoice", 2, "Receipt", 2), facets.counts(TagFacets.Dimension.DOC_TYPE));
+        assertEquals(counts("Acme", 3, TagFacets.MISSING, 1), facets.counts(TagFacets.Dimension.PROJECT_NAME));
+        assertEquals(counts("pdf", 2, "json", 1, TagFacets.MISSING, 1), facets.counts(TagFacets.Dimension.EXTENSION));
+        assertEquals(counts("Invoice", 30, "Receipt", 6), facets.bytes(TagFacets.Dimension.DOC_TYPE));
+    }
+
+    @Test
+    public void facetsOfTwoContainersAreMerged()
+    {
+        TagFacets invoice = TagFacets.of("invoice", Stream.of(
+            blob("pdf/scan1.pdf", 10, "Invoice", "Acme"),
+            blob("pdf/scan2.pdf", 20, "Invoice", "Acme")));
+        TagFacets receipt = TagFacets.of("receipt", Stream.of(
+            blob("pdf/scan1.pdf", 5, "Receipt", "Acme"),
+            blob("pdf/scan3.pdf", 7, "Invoice", "Acme")));
+
+        TagFacets merged = new TagFacets().merge(invoice).merge(receipt);
+
+        assertEquals(4, merged.getCount());
+        assertEquals(42, merged.getBytes());
+        assertEquals(counts("invoice", 2, "receipt", 2), merged.counts(TagFacets.Dimension.CONTAINER));
+        assertEquals(counts("Invoice", 3, "Receipt", 1), merged.counts(TagFacets.Dimension.DOC_TYPE));
+        assertEquals(counts("Receipt", 1, "Invoice", 1),
+            merged.counts(TagFacets.Dimension.CONTAINER, TagFacets.Dimension.DOC_TYPE).get("receipt"));
+        //merging adds to the counts already there rather than replacing them
+        merged.merge(invoice);
+        assertEquals(counts("invoice", 4, "receipt", 2), merged.counts(TagFacets.Dimension.CONTAINER));
+    }
+
+    @Test
+    public void csvQuotesValuesWithCommasQuotesAndNewlines() throws IOException
+    {
+        TagFacets facets = TagFacets.of("invoice", Stream.of(
+            blob("pdf/scan1.pdf", 10, "Invoice, Tax", "O\"Brien \"Ltd\""),
+            blob("pdf/scan2.pdf", 20, "Receipt", "Line\nBreak"),
+            blob("pdf/scan3.pdf", 30, "Letter", "Carriage\rReturn")));
+        Path file = folder.getRoot().toPath().resolve("facets.csv");
+
+        facets.writeCsv(file);
+
+        assertEquals("Container,DocType,Set,Project Name,Redacted,Extension,Count,Bytes\n"
+            + "invoice,\"Invoice, Tax\",Train,\"O\"\"Brien \"\"Ltd\"\"\",,pdf,1,10\n"
+            + "invoice,Receipt,Train,\"Line\nBreak\",,pdf,1,20\n"
+            + "invoice,Letter,Train,\"Carriage\rReturn\",,pdf,1,30\n",
+            new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void jsonEscapesQuotesBackslashesAndNewlines() throws IOException
+    {
+        TagFacets facets = TagFacets.of("invoice", Stream.of(
+            blob("pdf/scan1.pdf", 10, "Invoice, Tax", "O\"Brien\\Ltd\nLine")));
+        Path file = folder.getRoot().toPath().resolve("facets.json");
+
+        facets.writeJson(file);
+
+        assertEquals("[\n  {\"Container\": \"invoice\", \"DocType\": \"Invoice, Tax\", \"Set\": \"Train\", "
+            + "\"Project Name\": \"O\\\"Brien\\\\Ltd\\u000aLine\", \"Redacted\": \"\", \"Extension\": \"pdf\", "
+            + "\"Count\": 1, \"Bytes\": 10}\n]\n",
+            new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+}
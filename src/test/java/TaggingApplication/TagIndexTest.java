@@ -0,0 +1,149 @@
+package TaggingApplication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import com.azure.storage.blob.models.BlobItemProperties;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests of keeping the index of a container on disk, refreshing it from listings and letting it expire
+ * @author Charlene Pang
+ */
+public class TagIndexTest
+{
+    private static final OffsetDateTime WRITTEN = OffsetDateTime.of(2026, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static BlobRecord blob(String name, String etag, String docType)
+    {
+        Map<String,String> tags = new HashMap<>();
+        tags.put("DocType", docType);
+        tags.put("Project Name", "Acme");
+        return new BlobRecord(name, new BlobItemProperties()
+            .setETag(etag)
+            .setLastModified(WRITTEN)
+            .setContentLength((long) name.length()), tags);
+    }
+
+    /** Index records by name, so they can be compared with the listing */
+    private static Map<String,BlobRecord> byName(List<BlobRecord> records)
+    {
+        Map<String,BlobRecord> byName = new TreeMap<>();
+        records.forEach(r -> byName.put(r.getName(), r));
+        return byName;
+    }
+
+    private Path directory()
+    {
+        return folder.getRoot().toPath().resolve("index");
+    }
+
+    @Test
+    public void indexIsReadBackFromDisk()
+    {
+        new TagIndex(directory(), Duration.ofMinutes(10)).refresh("invoice", Stream.of(
+            blob("pdf/scan1.pdf", "0x1", "Invoice"),
+            blob("pdf/scan2.pdf", "0x2", "Driver's Licence")));
+
+        TagIndex reread = new TagIndex(directory(), Duration.ofMinutes(10));
+
+        assertTrue(reread.isFresh("invoice"));
+        Map<String,BlobRecord> records = byName(reread.records("invoice"));
+        assertEquals(2, records.size());
+        BlobRecord scan2 = records.get("pdf/scan2.pdf");
+        assertEquals("0x2", scan2.getProperties().getETag());
+        assertEquals(WRITTEN, scan2.getProperties().getLastModified());
+        assertEquals(Long.valueOf("pdf/scan2.pdf".length()), scan2.getProperties().getContentLength());
+        assertEquals(blob("pdf/scan2.pdf", "0x2", "Driver's Licence").getTags(), scan2.getTags());
+    }
+
+    @Test
+    public void fileInUnknownFormatIsIgnored() throws IOException
+    {
+        Files.createDirectories(directory());
+        Files.write(directory().resolve("invoice.idx"), new byte[] {1, 2, 3, 4, 0, 0, 0, 1});
+
+        TagIndex index = new TagIndex(directory(), Duration.ofMinutes(10));
+
+        assertFalse(index.isFresh("invoice"));
+        assertTrue(index.records("invoice").isEmpty());
+    }
+
+    @Test
+    public void refreshCountsOnlyChangedEntries()
+    {
+        TagIndex index = new TagIndex(directory(), Duration.ofMinutes(10));
+        assertEquals(3, index.refresh("invoice", Stream.of(
+            blob("pdf/scan1.pdf", "0x1", "Invoice"),
+            blob("pdf/scan2.pdf", "0x2", "Invoice"),
+            blob("pdf/scan3.pdf", "0x3", "Invoice"))));
+
+        assertEquals(0, index.refresh("invoice", Stream.of(
+            blob("pdf/scan1.pdf", "0x1", "Invoice"),
+            blob("pdf/scan2.pdf", "0x2", "Invoice"),
+            blob("pdf/scan3.pdf", "0x3", "Invoice"))));
+
+        //scan2 retagged, scan3 deleted and scan4 added
+        assertEquals(3, index.refresh("invoice", Stream.of(
+            blob("pdf/scan1.pdf", "0x1", "Invoice"),
+            blob("pdf/scan2.pdf", "0x2", "Receipt"),
+            blob("pdf/scan4.pdf", "0x4", "Invoice"))));
+
+        Map<String,BlobRecord> records = byName(new TagIndex(directory(), Duration.ofMinutes(10)).records("invoice"));
+        assertEquals(3, records.size());
+        assertFalse(records.containsKey("pdf/scan3.pdf"));
+        assertEquals("Receipt", records.get("pdf/scan2.pdf").getTags().get("DocType"));
+    }
+
+    @Test
+    public void indexOlderThanMaxAgeIsNotFresh() throws InterruptedException
+    {
+        TagIndex index = new TagIndex(directory(), Duration.ofMillis(50));
+        index.refresh("invoice", Stream.of(blob("pdf/scan1.pdf", "0x1", "Invoice")));
+        assertTrue(index.isFresh("invoice"));
+
+        Thread.sleep(100);
+
+        assertFalse(index.isFresh("invoice"));
+        assertFalse(new TagIndex(directory(), Duration.ofMillis(50)).isFresh("invoice"));
+        assertEquals(1, index.records("invoice").size());
+    }
+
+    @Test
+    public void invalidatedIndexIsStaleOnDisk()
+    {
+        TagIndex index = new TagIndex(directory(), Duration.ofMinutes(10));
+        index.refresh("invoice", Stream.of(blob("pdf/scan1.pdf", "0x1", "Invoice")));
+
+        index.invalidate("invoice");
+
+        assertFalse(index.isFresh("invoice"));
+        TagIndex reread = new TagIndex(directory(), Duration.ofMinutes(10));
+        assertFalse(reread.isFresh("invoice"));
+        assertEquals(1, reread.records("invoice").size());
+    }
+
+    @Test
+    public void invalidatingUnindexedContainerWritesNothing()
+    {
+        new TagIndex(directory(), Duration.ofMinutes(10)).invalidate("invoice");
+
+        assertFalse(Files.exists(directory().resolve("invoice.idx")));
+    }
+}
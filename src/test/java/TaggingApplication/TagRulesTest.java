@@ -0,0 +1,128 @@
+package TaggingApplication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+/** Tests of compiling tag rules and deriving tags and containers from document names
+ * @author Charlene Pang
+ */
+public class TagRulesTest
+{
+    private static Map<String,String> tags()
+    {
+        Map<String,String> tags = new HashMap<>();
+        tags.put("DocType", TagRules.TBA);
+        tags.put("Project Name", TagRules.TBA);
+        tags.put("Redacted", "False");
+        return tags;
+    }
+
+    @Test
+    public void defaultsTakeDocTypeAndProjectFromFolders()
+    {
+        Map<String,String> tags = TagRules.defaults().derive("Acme/Batch 1/Purchase Order/scan.pdf", tags());
+
+        assertEquals("Purchase Order", tags.get("DocType"));
+        assertEquals("Acme", tags.get("Project Name"));
+        assertEquals("False", tags.get("Redacted"));
+    }
+
+    @Test
+    public void folderRulesOnlyFillInTagsToBeDerived()
+    {
+        Map<String,String> entered = tags();
+        entered.put("DocType", "Invoice");
+
+        Map<String,String> tags = TagRules.defaults().derive("Acme/Receipt/scan.pdf", entered);
+
+        assertEquals("Invoice", tags.get("DocType"));
+        assertEquals(TagRules.TBA, entered.get("Project Name"));
+    }
+
+    @Test
+    public void fileWithoutFolderKeepsTagsToBeDerived()
+    {
+        Map<String,String> tags = TagRules.defaults().derive("scan.pdf", tags());
+
+        assertEquals(TagRules.TBA, tags.get("DocType"));
+        assertEquals(TagRules.TBA, tags.get("Project Name"));
+    }
+
+    @Test
+    public void localFilesAreRedactedByFileNameOnly()
+    {
+        TagRules rules = TagRules.defaults();
+
+        assertEquals("True", rules.derive("Acme/Invoice/scan-redacted.pdf", tags()).get("Redacted"));
+        assertEquals("False", rules.derive("Acme redacted/Invoice/scan.pdf", tags()).get("Redacted"));
+    }
+
+    @Test
+    public void inboxBlobsAreRedactedByWholeName()
+    {
+        TagRules rules = TagRules.inboxDefaults();
+
+        assertEquals("True", rules.derive("Acme redacted/Invoice/scan.pdf", tags()).get("Redacted"));
+        assertEquals("True", rules.derive("Acme/Invoice/scan-redacted.pdf", tags()).get("Redacted"));
+    }
+
+    @Test
+    public void foldersAreCountedFromEitherEnd()
+    {
+        TagRules rules = TagRules.compile(Arrays.asList("# comment", "", "Batch = folder 1", "Parent = folder -2"));
+
+        Map<String,String> tags = rules.derive("Acme/Batch 1/Invoice/scan.pdf", new HashMap<>());
+        assertEquals("Batch 1", tags.get("Batch"));
+        assertEquals("Batch 1", tags.get("Parent"));
+        assertNull(rules.derive("Acme/scan.pdf", new HashMap<>()).get("Batch"));
+        assertNull(rules.derive("Acme/scan.pdf", new HashMap<>()).get("Parent"));
+    }
+
+    @Test
+    public void containerIsLowerCasedWithoutSpaces()
+    {
+        Map<String,String> tags = tags();
+        tags.put("DocType", "Purchase Order");
+
+        assertEquals("en-purchaseorder", TagRules.defaults().container("en", tags));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void containerNeedsItsTags()
+    {
+        TagRules.defaults().container("en", new HashMap<>());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void containerNeedsARule()
+    {
+        TagRules.compile(Arrays.asList("DocType = folder -1")).container("en", tags());
+    }
+
+    @Test
+    public void unreadableRuleNamesItsLine()
+    {
+        try
+        {
+            TagRules.compile(Arrays.asList("DocType = folder -1", "# comment", "Redacted = maybe"));
+            fail("rule compiled");
+        }
+        catch (IllegalArgumentException e)
+        {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Tag rule on line 3"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void folderRuleTakesANumber()
+    {
+        TagRules.compile(Arrays.asList("DocType = folder last"));
+    }
+}
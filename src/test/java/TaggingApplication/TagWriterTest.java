@@ -0,0 +1,102 @@
+package TaggingApplication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests of writing tags only where the listing says they differ, without overwriting another job's tags
+ * @author Charlene Pang
+ */
+public class TagWriterTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final InMemoryBlobBackend backend = new InMemoryBlobBackend();
+    private final TagWriter writer = new TagWriter(backend, "invoice");
+
+    private static Map<String,String> tags(String docType)
+    {
+        Map<String,String> tags = new HashMap<>();
+        tags.put("DocType", docType);
+        return tags;
+    }
+
+    private static BlobRecord listed(Map<String,String> tags)
+    {
+        return new BlobRecord("scan.pdf", null, tags);
+    }
+
+    @Before
+    public void upload() throws IOException
+    {
+        Path file = folder.newFile("scan.pdf").toPath();
+        backend.createContainer("invoice").block();
+        backend.upload("invoice", "scan.pdf", file, Collections.emptyMap(), null).block();
+    }
+
+    @Test
+    public void unchangedTagsAreNotWritten()
+    {
+        backend.setTags("invoice", "scan.pdf", tags("Invoice"), null).block();
+
+        assertFalse(writer.write(listed(tags("Invoice")), tags("Invoice")).block());
+        assertEquals(1, writer.getSkipped());
+        assertEquals(0, writer.getWritten());
+    }
+
+    @Test
+    public void untaggedBlobIsWritten()
+    {
+        assertTrue(writer.write(listed(Collections.emptyMap()), tags("Invoice")).block());
+        assertEquals(tags("Invoice"), backend.getTags("invoice", "scan.pdf").block());
+    }
+
+    @Test
+    public void blobTaggedSinceListedUntaggedIsLeftAlone()
+    {
+        backend.setTags("invoice", "scan.pdf", tags("Receipt"), null).block();
+
+        assertFalse(writer.write(listed(Collections.emptyMap()), tags("Invoice")).block());
+        assertEquals(1, writer.getConflicts());
+        assertEquals(tags("Receipt"), backend.getTags("invoice", "scan.pdf").block());
+    }
+
+    @Test
+    public void blobRetaggedSinceListingIsLeftAlone()
+    {
+        backend.setTags("invoice", "scan.pdf", tags("Receipt"), null).block();
+
+        assertFalse(writer.write(listed(tags("Purchase Order")), tags("Invoice")).block());
+        assertEquals(1, writer.getConflicts());
+        assertEquals(tags("Receipt"), backend.getTags("invoice", "scan.pdf").block());
+    }
+
+    @Test
+    public void blobWithQuoteInTagIsWrittenConditionally()
+    {
+        Map<String,String> listed = tags("Invoice");
+        listed.put("Project Name", "O'Brien");
+        backend.setTags("invoice", "scan.pdf", listed, null).block();
+        Map<String,String> desired = new HashMap<>(listed);
+        desired.put("DocType", "Receipt");
+
+        assertTrue(writer.write(listed(listed), desired).block());
+        assertEquals(desired, backend.getTags("invoice", "scan.pdf").block());
+
+        //listed again with the old tags, the condition with the quoted value no longer holds
+        assertFalse(writer.write(listed(listed), tags("Letter")).block());
+        assertEquals(1, writer.getConflicts());
+        assertEquals(desired, backend.getTags("invoice", "scan.pdf").block());
+    }
+}
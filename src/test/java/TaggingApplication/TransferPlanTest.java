@@ -0,0 +1,117 @@
+package TaggingApplication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+/** Tests of planning a job: repeated and overlapping writes of the same blob are merged before anything is sent
+ * @author Charlene Pang
+ */
+public class TransferPlanTest
+{
+    private static final Path SCAN = Paths.get("Acme", "Invoice", "scan.pdf");
+
+    private static Map<String,String> tags(String docType)
+    {
+        Map<String,String> tags = new HashMap<>();
+        tags.put("DocType", docType);
+        return tags;
+    }
+
+    private static TransferPlan plan()
+    {
+        return new TransferPlan("migrate", "en", "migrate-test");
+    }
+
+    private static TransferPlan.Operation upload(Map<String,String> tags)
+    {
+        return TransferPlan.Operation.upload(TransferPlan.Phase.INPUTS, "en-invoice", "pdf/scan.pdf", SCAN, tags, 100, 1);
+    }
+
+    @Test
+    public void containerMetForEveryFileIsCreatedOnce()
+    {
+        TransferPlan plan = plan();
+        for (int i = 0; i < 5; i++)
+        {
+            plan.add(TransferPlan.Operation.createContainer("en-invoice"));
+        }
+
+        assertEquals(1, plan.getOperations(TransferPlan.Phase.CONTAINERS).size());
+        assertEquals(1, plan.getEstimatedRequests());
+    }
+
+    @Test
+    public void repeatedUploadIsDropped()
+    {
+        TransferPlan plan = plan();
+        plan.add(upload(tags("Invoice")));
+        plan.add(upload(tags("Invoice")));
+
+        assertEquals(1, plan.size());
+        assertEquals(1, plan.getEstimatedRequests());
+    }
+
+    @Test
+    public void tagWriteIsMergedIntoUpload()
+    {
+        TransferPlan plan = plan();
+        plan.add(upload(tags("Invoice")));
+        plan.add(TransferPlan.Operation.setTags(TransferPlan.Phase.INPUTS, "en-invoice", "pdf/scan.pdf", tags("Receipt")));
+
+        List<TransferPlan.Operation> ops = plan.getOperations(TransferPlan.Phase.INPUTS);
+        assertEquals(1, ops.size());
+        assertEquals(TransferPlan.Kind.UPLOAD, ops.get(0).getKind());
+        assertEquals(tags("Receipt"), ops.get(0).getTags());
+        assertEquals(1, plan.getEstimatedRequests());
+    }
+
+    @Test
+    public void uploadReplacesEarlierTagWrite()
+    {
+        TransferPlan plan = plan();
+        plan.add(TransferPlan.Operation.setTags(TransferPlan.Phase.INPUTS, "en-invoice", "pdf/scan.pdf", tags("Receipt")));
+        plan.add(upload(tags("Invoice")));
+
+        List<TransferPlan.Operation> ops = plan.getOperations(TransferPlan.Phase.INPUTS);
+        assertEquals(1, ops.size());
+        assertEquals(TransferPlan.Kind.UPLOAD, ops.get(0).getKind());
+        assertEquals(tags("Invoice"), ops.get(0).getTags());
+    }
+
+    @Test
+    public void laterWriteOfBlobReplacesEarlierOne()
+    {
+        TransferPlan plan = plan();
+        plan.add(upload(tags("Invoice")));
+        plan.add(TransferPlan.Operation.copy(TransferPlan.Phase.INPUTS, "inbox", "scan.pdf", "en-invoice", "pdf/scan.pdf",
+            tags("Invoice"), 100, 2));
+
+        List<TransferPlan.Operation> ops = plan.getOperations(TransferPlan.Phase.INPUTS);
+        assertEquals(1, ops.size());
+        assertEquals(TransferPlan.Kind.COPY, ops.get(0).getKind());
+        assertEquals(2, plan.getEstimatedRequests());
+    }
+
+    @Test
+    public void operationsKeepPlannedOrderWithinPhase()
+    {
+        TransferPlan plan = plan();
+        plan.add(TransferPlan.Operation.upload(TransferPlan.Phase.OUTPUTS, "en-invoice", "json/scan.pdf.json",
+            Paths.get("Acme", "Invoice", "scan.pdf.json"), Collections.emptyMap(), 2, 1).after("en-invoice/pdf/scan.pdf"));
+        plan.add(upload(tags("Invoice")));
+        plan.add(TransferPlan.Operation.createContainer("en-invoice"));
+
+        assertTrue(plan.contains("en-invoice"));
+        assertEquals("en-invoice/pdf/scan.pdf", plan.getOperations(TransferPlan.Phase.INPUTS).get(0).getKey());
+        assertEquals("en-invoice/pdf/scan.pdf", plan.getOperations(TransferPlan.Phase.OUTPUTS).get(0).getInput());
+        assertEquals(3, plan.size());
+    }
+}